@@ -0,0 +1,113 @@
+package com.naiomi.payment.builder.xml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the chained {@code String.replace} escaping the generator used to do with
+ * {@link XmlEscaper} and with escaping straight into a {@link Utf8Sink}.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class XmlEscapeBenchmark {
+    
+    private static final String[] CLEAN_VALUES = {
+            "ACME Corporation Ltd", "GB29NWBK60161331926819", "Invoice 2024-000123 for consulting services",
+            "Müller & Söhne GmbH", "INSTR-0000123456", "42 Wallaby Way", "Zürich"
+    };
+    
+    /**
+     * Share of values containing a character that needs escaping
+     */
+    @Param({"0.0", "0.01", "0.5"})
+    public double specialRatio;
+    
+    private String[] values;
+    private Utf8Sink sink;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        values = new String[1024];
+        for (int i = 0; i < values.length; i++) {
+            String value = CLEAN_VALUES[random.nextInt(CLEAN_VALUES.length)];
+            values[i] = random.nextDouble() < specialRatio ? value + " <" + i + ">" : value.replace("&", "and");
+        }
+        sink = new Utf8Sink(ByteBuffer.allocate(64 * 1024), new DiscardingChannel());
+    }
+    
+    @Benchmark
+    public void chainedReplace(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(chainedReplace(value));
+        }
+    }
+    
+    @Benchmark
+    public void singlePassEscape(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(XmlEscaper.escape(value));
+        }
+    }
+    
+    /**
+     * Previous write path: escape to a String, then encode it
+     */
+    @Benchmark
+    public void chainedReplaceEncoded(Blackhole blackhole) {
+        for (String value : values) {
+            blackhole.consume(chainedReplace(value).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+    
+    @Benchmark
+    public long sinkEscaped() throws IOException {
+        for (String value : values) {
+            sink.writeEscaped(value);
+        }
+        return sink.position();
+    }
+    
+    private static String chainedReplace(String text) {
+        return text.replace("&", "&amp;")
+                   .replace("<", "&lt;")
+                   .replace(">", "&gt;")
+                   .replace("\"", "&quot;")
+                   .replace("'", "&apos;");
+    }
+    
+    private static final class DiscardingChannel implements WritableByteChannel {
+        
+        @Override
+        public int write(ByteBuffer source) {
+            int remaining = source.remaining();
+            source.position(source.limit());
+            return remaining;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.naiomi.payment.builder;
+
+import com.naiomi.payment.builder.service.InputTailService;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the application as a daemon converting records as they are appended to the
+ * input files, when {@code payment.builder.input.tail} is enabled. Tailing runs on the
+ * main thread until the application context is closed, e.g. on SIGTERM.
+ */
+@Component
+@ConditionalOnProperty(prefix = "payment.builder.input", name = "tail", havingValue = "true")
+public class InputTailRunner implements ApplicationRunner {
+    
+    private final InputTailService inputTailService;
+    
+    public InputTailRunner(InputTailService inputTailService) {
+        this.inputTailService = inputTailService;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        inputTailService.tail();
+    }
+}
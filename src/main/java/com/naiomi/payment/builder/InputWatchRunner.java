@@ -0,0 +1,35 @@
+package com.naiomi.payment.builder;
+
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.service.InputWatcherService;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the application as a daemon processing input files as they land, when
+ * {@code payment.builder.input.watch} is enabled. Watching runs on the main thread
+ * until the application context is closed, e.g. on SIGTERM. Tailing, when also enabled,
+ * replaces watching.
+ */
+@Component
+@ConditionalOnProperty(prefix = "payment.builder.input", name = "watch", havingValue = "true")
+public class InputWatchRunner implements ApplicationRunner {
+    
+    private final InputWatcherService inputWatcherService;
+    private final PaymentBuilderProperties properties;
+    
+    public InputWatchRunner(InputWatcherService inputWatcherService, PaymentBuilderProperties properties) {
+        this.inputWatcherService = inputWatcherService;
+        this.properties = properties;
+    }
+    
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (properties.getInput().isTail()) {
+            return;
+        }
+        inputWatcherService.watch();
+    }
+}
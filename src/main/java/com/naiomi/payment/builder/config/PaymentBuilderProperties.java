@@ -2,6 +2,12 @@ package com.naiomi.payment.builder.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import lombok.Data;
 import lombok.Getter;
@@ -19,10 +25,273 @@ public class PaymentBuilderProperties {
     @Data
     public static class Input {
         private String directory;
+
+        /**
+         * Accepted CSV header names per record field, keyed by canonical header name.
+         * Configured entries replace the default list for that field; the first alias
+         * with a non-blank value in a row wins.
+         */
+        private Map<String, List<String>> headerAliases = defaultHeaderAliases();
+
+        /**
+         * Files processed at the same time, each on its own virtual thread; 1 processes
+         * them one after another.
+         */
+        private int maxConcurrentFiles = 8;
+
+        /**
+         * Glob that names of input files must match, e.g. {@code payments-*.csv}, besides
+         * ending in {@code .csv} or {@code .csv.gz}. Unset matches all CSV files. Applies
+         * to one-shot runs, watching and tailing alike.
+         */
+        private String fileGlob;
+
+        /**
+         * Levels of subdirectories of the input directory read for files, e.g. 2 for
+         * {@code input/3f/a1/payments.csv}; 0 reads only the input directory itself.
+         * Watching and tailing only support 0.
+         */
+        private int shardLevels = 0;
+
+        /**
+         * Maximum files processed or failed in one run, leaving the rest for the next run;
+         * skipped unchanged files do not count. Needs {@code output.skip-unchanged}, or each
+         * run claims the same files again. 0 means no limit.
+         */
+        private int maxFilesPerRun = 0;
+
+        /**
+         * Worker threads used to parse a single large file; 1 disables parallel parsing.
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Files at least this large are split into record-aligned chunks parsed in parallel.
+         */
+        private DataSize parallelThreshold = DataSize.ofMegabytes(64);
+
+        /**
+         * Target size of each chunk when parsing in parallel.
+         */
+        private DataSize parallelChunkSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Canonical names of low-cardinality columns whose values share String instances
+         * across the records of a file. An empty list disables deduplication.
+         */
+        private List<String> internColumns = List.of(
+                "currency", "debtor_country", "creditor_country", "charge_bearer",
+                "purpose_code", "category_purpose_code", "creditor_bic",
+                "debtor_name", "debtor_iban", "debtor_account_other", "debtor_bic",
+                "debtor_address_line1", "debtor_address_line2");
+
+        /**
+         * Maximum number of distinct values cached per file for the interned columns.
+         */
+        private int internCacheSize = 4096;
+
+        /**
+         * Scan CSV bytes for delimiters and quotes with the incubating Vector API, using
+         * AVX2 or AVX-512 lanes where available. Requires starting the JVM with
+         * {@code --add-modules jdk.incubator.vector}; otherwise scalar scanning is used.
+         */
+        private boolean simdScanning = false;
+
+        /**
+         * Buffer for compressed bytes read from {@code .csv.gz} files, which are
+         * decompressed while they are parsed.
+         */
+        private DataSize gzipBufferSize = DataSize.ofKilobytes(64);
+
+        /**
+         * Keep running after startup and process each file as it lands in the input
+         * directory, instead of leaving processing to explicit calls.
+         */
+        private boolean watch = false;
+
+        /**
+         * How a watched file is known to be completely written.
+         */
+        private FileCompletion completion = FileCompletion.SIZE_STABLE;
+
+        /**
+         * Time a watched file's size and modification time must stay unchanged before it
+         * is processed, with {@link FileCompletion#SIZE_STABLE}.
+         */
+        private Duration stableTime = Duration.ofSeconds(2);
+
+        /**
+         * Keep running and treat each CSV file in the input directory as append-only,
+         * converting the complete lines appended since the last message into incremental
+         * messages instead of converting whole files. Replaces {@link #watch}.
+         */
+        private boolean tail = false;
+
+        /**
+         * Longest time records appended to a tailed file wait before they are written
+         * to a message that is not full.
+         */
+        private Duration tailWindow = Duration.ofMinutes(1);
+
+        /**
+         * Maximum transactions per incremental message; a message is written as soon as
+         * this many records are appended.
+         */
+        private int tailMaxRecords = 10000;
+
+        private static Map<String, List<String>> defaultHeaderAliases() {
+            Map<String, List<String>> aliases = new LinkedHashMap<>();
+            aliases.put("debtor_name", List.of("debtor_name", "debtorname", "payer_name"));
+            aliases.put("debtor_iban", List.of("debtor_iban", "debtor_account_iban", "payer_iban"));
+            aliases.put("debtor_account_other", List.of("debtor_account_other", "debtor_account"));
+            aliases.put("debtor_bic", List.of("debtor_bic", "payer_bic"));
+            aliases.put("debtor_address_line1", List.of("debtor_address_line1", "debtor_address1"));
+            aliases.put("debtor_address_line2", List.of("debtor_address_line2", "debtor_address2"));
+            aliases.put("debtor_country", List.of("debtor_country", "payer_country"));
+            aliases.put("creditor_name", List.of("creditor_name", "creditorname", "payee_name"));
+            aliases.put("creditor_iban", List.of("creditor_iban", "creditor_account_iban", "payee_iban"));
+            aliases.put("creditor_account_other", List.of("creditor_account_other", "creditor_account"));
+            aliases.put("creditor_bic", List.of("creditor_bic", "payee_bic"));
+            aliases.put("creditor_address_line1", List.of("creditor_address_line1", "creditor_address1"));
+            aliases.put("creditor_address_line2", List.of("creditor_address_line2", "creditor_address2"));
+            aliases.put("creditor_country", List.of("creditor_country", "payee_country"));
+            aliases.put("amount", List.of("amount", "instructed_amount", "payment_amount"));
+            aliases.put("currency", List.of("currency", "ccy"));
+            aliases.put("execution_date", List.of("execution_date", "requested_execution_date", "payment_date"));
+            aliases.put("end_to_end_id", List.of("end_to_end_id", "endtoendid", "reference"));
+            aliases.put("instruction_id", List.of("instruction_id", "instructionid"));
+            aliases.put("remittance_info", List.of("remittance_info", "remittance_information", "payment_reference"));
+            aliases.put("remittance_structured", List.of("remittance_structured", "structured_remittance"));
+            aliases.put("purpose_code", List.of("purpose_code", "purpose"));
+            aliases.put("category_purpose_code", List.of("category_purpose_code", "category_purpose"));
+            aliases.put("charge_bearer", List.of("charge_bearer", "charges"));
+            return aliases;
+        }
     }
 
     @Data
     public static class Output {
         private String directory;
+
+        /**
+         * Layout of generated XML: indented for humans, or without whitespace between elements.
+         */
+        private OutputFormat format = OutputFormat.PRETTY;
+
+        /**
+         * Record each processed input in a manifest in the output directory, and skip
+         * inputs whose size, modification time or contents and outputs are unchanged.
+         */
+        private boolean skipUnchanged = false;
+
+        /**
+         * Input read between checkpoints of a message written from an uncompressed file
+         * to a single uncompressed output. A checkpoint lets a run that was killed continue
+         * the file where it stopped, at the cost of forcing the output to disk at each one.
+         * Smaller files and unset, the default, disable checkpoints.
+         */
+        private DataSize checkpointInterval;
+
+        /**
+         * Levels of subdirectories, named after bytes of a hash of the input file name,
+         * that messages are written to, e.g. 2 for {@code output/3f/a1/payments_pain013.xml};
+         * keeps directories small when there are very many files. 0 to 4, 0 writes to the
+         * output directory itself.
+         */
+        private int shardLevels = 0;
+
+        /**
+         * Write messages gzip-compressed as {@code _pain013.xml.gz}.
+         */
+        private boolean gzip = false;
+
+        /**
+         * Deflate level of compressed output, from 1 (fastest) to 9 (smallest).
+         */
+        private int gzipLevel = 6;
+
+        /**
+         * Buffer for compressed bytes before they are written to the file.
+         */
+        private DataSize gzipBufferSize = DataSize.ofKilobytes(64);
+
+        /**
+         * How MsgId, PmtInfId and missing EndToEndId values are generated.
+         */
+        private IdGeneratorType idGenerator = IdGeneratorType.SEQUENTIAL;
+
+        /**
+         * Node id (0 to 1048575) embedded in sequential identifiers. Instances running at
+         * the same time need distinct node ids for identifiers to be unique across them;
+         * a random node id is used when unset.
+         */
+        private Integer nodeId;
+
+        /**
+         * Maximum transactions per message; larger outputs are split into numbered parts.
+         * 0 means no limit.
+         */
+        private int maxTransactionsPerMessage = 0;
+
+        /**
+         * Maximum size of one message; larger outputs are split into numbered parts.
+         * Unset means no limit.
+         */
+        private DataSize maxMessageSize;
+
+        /**
+         * Threads generating the transactions of one message in parallel fragments, and
+         * writing parts of a split output at the same time; 1 disables both. Parts are only
+         * written in parallel with a transaction limit, as each thread holds up to that many records.
+         */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Parse, generate and write messages streamed from the parser as concurrent
+         * stages connected by bounded queues, so each stage works on the next batch
+         * while later stages finish earlier ones. Off by default, which writes messages
+         * sequentially as before.
+         */
+        private boolean pipelined = false;
+
+        /**
+         * Batches of 1024 records each pipeline queue holds; bounds the memory of
+         * a pipelined message.
+         */
+        private int pipelineQueueCapacity = 4;
+    }
+
+    public enum FileCompletion {
+        /**
+         * Size and modification time unchanged for the stable time
+         */
+        SIZE_STABLE,
+        /**
+         * A marker file named after it with {@code .done} appended, e.g.
+         * {@code payments.csv.done}, exists; the marker is deleted once processed
+         */
+        DONE_MARKER
+    }
+
+    public enum IdGeneratorType {
+        /**
+         * Node id, start time and counter; unique and contention-free
+         */
+        SEQUENTIAL,
+        /**
+         * 8 hex digits of a random UUID
+         */
+        RANDOM
+    }
+
+    public enum OutputFormat {
+        /**
+         * One element per line, indented by nesting depth
+         */
+        PRETTY,
+        /**
+         * No whitespace between elements
+         */
+        COMPACT
     }
 }
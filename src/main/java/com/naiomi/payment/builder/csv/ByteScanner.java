@@ -0,0 +1,22 @@
+package com.naiomi.payment.builder.csv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the structural bytes of a CSV record. Implementations may keep state about the
+ * buffer they last scanned, so an instance belongs to one tokenizer or scan at a time.
+ * 
+ * @see ByteScanners
+ */
+public interface ByteScanner {
+    
+    /**
+     * Index of the first comma, LF or CR in [from, to), or {@code to} if there is none
+     */
+    int indexOfDelimiter(ByteBuffer buffer, int from, int to);
+    
+    /**
+     * Index of the first double quote or LF in [from, to), or {@code to} if there is none
+     */
+    int indexOfQuoteOrLineFeed(ByteBuffer buffer, int from, int to);
+}
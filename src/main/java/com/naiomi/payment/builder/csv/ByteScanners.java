@@ -0,0 +1,75 @@
+package com.naiomi.payment.builder.csv;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates {@link ByteScanner}s, choosing the vector implementation when it is requested
+ * and usable.
+ * <p>
+ * The vector scanner needs the incubating {@code jdk.incubator.vector} module, added with
+ * {@code --add-modules jdk.incubator.vector}, and hardware vectors of at least 16 bytes.
+ * Without either, the scalar scanner is used and a message is logged once.
+ */
+public final class ByteScanners {
+    
+    private static final Logger logger = LoggerFactory.getLogger(ByteScanners.class);
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final int MIN_VECTOR_BYTES = 16;
+    
+    private ByteScanners() {
+    }
+    
+    /**
+     * @param vectorized Whether to use the Vector API when available
+     * @return A new scanner for use by one tokenizer or scan
+     */
+    public static ByteScanner create(boolean vectorized) {
+        if (vectorized && VectorSupport.CONSTRUCTOR != null) {
+            try {
+                return VectorSupport.CONSTRUCTOR.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create vector CSV scanner", e);
+            }
+        }
+        return ScalarByteScanner.INSTANCE;
+    }
+    
+    /**
+     * Whether {@link #create(boolean)} returns vector scanners when asked to
+     */
+    public static boolean isVectorAvailable() {
+        return VectorSupport.CONSTRUCTOR != null;
+    }
+    
+    /**
+     * Probed on first request for a vector scanner, so scalar-only use never touches the Vector API
+     */
+    private static final class VectorSupport {
+        
+        static final Constructor<? extends ByteScanner> CONSTRUCTOR = probe();
+        
+        private static Constructor<? extends ByteScanner> probe() {
+            if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+                logger.info("Module {} not present; using scalar CSV scanning", VECTOR_MODULE);
+                return null;
+            }
+            try {
+                Class<? extends ByteScanner> type = Class.forName(ByteScanners.class.getPackageName() + ".VectorByteScanner")
+                        .asSubclass(ByteScanner.class);
+                int vectorBytes = (int) type.getDeclaredMethod("vectorByteSize").invoke(null);
+                if (vectorBytes < MIN_VECTOR_BYTES) {
+                    logger.info("Preferred vector size is {} bytes; using scalar CSV scanning", vectorBytes);
+                    return null;
+                }
+                logger.info("Using {}-byte vector CSV scanning", vectorBytes);
+                return type.getDeclaredConstructor();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.info("Vector API unavailable ({}); using scalar CSV scanning", e.toString());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.naiomi.payment.builder.csv;
+
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Header-to-field binding plan compiled once per CSV file.
+ * <p>
+ * Alias lookups happen only while compiling the header. Each bound field keeps the
+ * column indices of its matching headers in alias priority order, so mapping a row
+ * is plain array indexing: the first candidate column with a non-blank value wins and
+ * only that column is decoded.
+ */
+public final class CsvBinding {
+    
+    private static final int[] NO_COLUMNS = new int[0];
+    
+    private final CsvField[] fields;
+    private final int[][] columns;
+    private final StringCache[] caches;
+    
+    private CsvBinding(CsvField[] fields, int[][] columns, StringCache[] caches) {
+        this.fields = fields;
+        this.columns = columns;
+        this.caches = caches;
+    }
+    
+    /**
+     * Resolve header names against the configured aliases
+     * 
+     * @param headers Header row values
+     * @param headerAliases Accepted header names keyed by canonical field name
+     * @param internedFields Canonical names of fields whose values go through the cache
+     * @param cache Cache shared by the interned fields of this file
+     * @return Compiled binding plan
+     * @throws IllegalArgumentException if an alias key or interned field does not name a known field
+     */
+    public static CsvBinding compile(String[] headers, Map<String, List<String>> headerAliases,
+                                     Collection<String> internedFields, StringCache cache) {
+        Map<String, Integer> headerIndex = new HashMap<>();
+        for (int i = 0; i < headers.length; i++) {
+            headerIndex.put(normalize(headers[i]), i);
+        }
+        
+        int[][] candidates = new int[CsvField.values().length][];
+        for (Map.Entry<String, List<String>> entry : headerAliases.entrySet()) {
+            CsvField field = CsvField.forKey(entry.getKey());
+            candidates[field.ordinal()] = resolveColumns(entry.getValue(), headerIndex);
+        }
+        
+        Set<CsvField> interned = EnumSet.noneOf(CsvField.class);
+        for (String key : internedFields) {
+            interned.add(CsvField.forKey(key));
+        }
+        
+        List<CsvField> boundFields = new ArrayList<>();
+        List<int[]> boundColumns = new ArrayList<>();
+        for (CsvField field : CsvField.values()) {
+            int[] fieldColumns = candidates[field.ordinal()];
+            if (fieldColumns != null && fieldColumns.length > 0) {
+                boundFields.add(field);
+                boundColumns.add(fieldColumns);
+            }
+        }
+        
+        StringCache[] caches = new StringCache[boundFields.size()];
+        for (int f = 0; f < caches.length; f++) {
+            caches[f] = interned.contains(boundFields.get(f)) ? cache : null;
+        }
+        
+        return new CsvBinding(boundFields.toArray(new CsvField[0]), boundColumns.toArray(new int[0][]), caches);
+    }
+    
+    /**
+     * Map one tokenized row to a payment
+     * 
+     * @param builder Builder owned by the calling thread; it is reset before use
+     */
+    public CompactPaymentRecord bind(CsvRow row, CompactPaymentRecord.Builder builder) {
+        CompactPaymentRecord.Builder record = builder.reset();
+        for (int f = 0; f < fields.length; f++) {
+            int column = firstValueColumn(row, columns[f]);
+            if (column >= 0) {
+                fields[f].assign(record, row, column, caches[f]);
+            }
+        }
+        return record.build();
+    }
+    
+    private static int firstValueColumn(CsvRow row, int[] candidates) {
+        for (int index : candidates) {
+            if (index < row.size() && !row.isEmpty(index)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+    
+    private static int[] resolveColumns(List<String> aliases, Map<String, Integer> headerIndex) {
+        if (aliases == null || aliases.isEmpty()) {
+            return NO_COLUMNS;
+        }
+        int[] resolved = new int[aliases.size()];
+        int count = 0;
+        for (String alias : aliases) {
+            Integer index = headerIndex.get(normalize(alias));
+            if (index != null && !contains(resolved, count, index)) {
+                resolved[count++] = index;
+            }
+        }
+        return count == resolved.length ? resolved : Arrays.copyOf(resolved, count);
+    }
+    
+    private static boolean contains(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static String normalize(String header) {
+        return header.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,11 @@
+package com.naiomi.payment.builder.csv;
+
+/**
+ * Byte range of a CSV file that starts and ends on record boundaries
+ * 
+ * @param start Absolute offset of the first record in the chunk
+ * @param end Absolute offset just past the last record in the chunk
+ * @param firstLineNumber Line number of the first record in the chunk
+ */
+public record CsvChunk(long start, long end, long firstLineNumber) {
+}
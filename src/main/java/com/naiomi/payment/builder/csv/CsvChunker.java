@@ -0,0 +1,155 @@
+package com.naiomi.payment.builder.csv;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a CSV file into chunks aligned to record boundaries so they can be parsed
+ * independently.
+ * <p>
+ * Every byte range is scanned in parallel for its quote and line feed counts and for
+ * the first line feed under either quote parity. A prefix pass over those counts then
+ * knows whether each range starts inside a quoted field, which selects the first real
+ * record boundary of that range together with its line number. Boundaries rely on
+ * quotes only enclosing whole fields; callers should confirm that the record before
+ * each boundary actually ends there.
+ */
+public final class CsvChunker {
+    
+    private static final byte QUOTE = '"';
+    
+    private CsvChunker() {
+    }
+    
+    /**
+     * Split a region of a file into record-aligned chunks
+     * 
+     * @param channel Channel of the CSV file
+     * @param start Absolute offset of the first data record (just past the header)
+     * @param end Absolute offset of the end of the data
+     * @param firstLineNumber Line number of the first data record
+     * @param chunkSize Target chunk size in bytes
+     * @param executor Executor used to scan ranges in parallel
+     * @return Chunks in file order, covering the whole region
+     * @throws IOException if the file cannot be mapped
+     */
+    public static List<CsvChunk> split(FileChannel channel, long start, long end, long firstLineNumber,
+                                       long chunkSize, ExecutorService executor) throws IOException {
+        return split(channel, start, end, firstLineNumber, chunkSize, executor, false);
+    }
+    
+    /**
+     * Split a region of a file into record-aligned chunks
+     * 
+     * @param vectorized Whether ranges are scanned with vector scanners when available
+     * @see #split(FileChannel, long, long, long, long, ExecutorService)
+     */
+    public static List<CsvChunk> split(FileChannel channel, long start, long end, long firstLineNumber,
+                                       long chunkSize, ExecutorService executor, boolean vectorized) throws IOException {
+        long rangeSize = Math.max(1, Math.min(chunkSize, Integer.MAX_VALUE));
+        int rangeCount = (int) Math.max(1, (end - start + rangeSize - 1) / rangeSize);
+        if (rangeCount == 1) {
+            return List.of(new CsvChunk(start, end, firstLineNumber));
+        }
+        
+        List<Callable<RangeScan>> scans = new ArrayList<>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            long from = start + i * rangeSize;
+            long to = Math.min(end, from + rangeSize);
+            scans.add(() -> scan(channel, from, to, ByteScanners.create(vectorized)));
+        }
+        List<RangeScan> results = await(invokeAll(executor, scans));
+        
+        List<CsvChunk> chunks = new ArrayList<>();
+        long chunkStart = start;
+        long chunkLine = firstLineNumber;
+        long line = firstLineNumber;
+        int parity = 0;
+        for (int i = 0; i < rangeCount; i++) {
+            RangeScan scan = results.get(i);
+            long boundary = scan.boundary[parity];
+            if (i > 0 && boundary > chunkStart && boundary < end) {
+                chunks.add(new CsvChunk(chunkStart, boundary, chunkLine));
+                chunkStart = boundary;
+                chunkLine = line + scan.lineFeedsToBoundary[parity];
+            }
+            line += scan.lineFeeds;
+            parity ^= (int) (scan.quotes & 1);
+        }
+        chunks.add(new CsvChunk(chunkStart, end, chunkLine));
+        return chunks;
+    }
+    
+    /**
+     * Quote and line feed statistics of one byte range. Index 0 of the boundary arrays
+     * applies when the range starts outside a quoted field, index 1 when it starts inside.
+     */
+    private static final class RangeScan {
+        long quotes;
+        long lineFeeds;
+        final long[] boundary = {-1, -1};
+        final long[] lineFeedsToBoundary = new long[2];
+    }
+    
+    private static RangeScan scan(FileChannel channel, long from, long to, ByteScanner scanner) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        RangeScan scan = new RangeScan();
+        int length = buffer.limit();
+        int parity = 0;
+        long quotes = 0;
+        long lineFeeds = 0;
+        for (int i = scanner.indexOfQuoteOrLineFeed(buffer, 0, length); i < length;
+                i = scanner.indexOfQuoteOrLineFeed(buffer, i + 1, length)) {
+            if (buffer.get(i) == QUOTE) {
+                quotes++;
+                parity ^= 1;
+            } else {
+                lineFeeds++;
+                if (scan.boundary[parity] < 0) {
+                    scan.boundary[parity] = from + i + 1;
+                    scan.lineFeedsToBoundary[parity] = lineFeeds;
+                }
+            }
+        }
+        scan.quotes = quotes;
+        scan.lineFeeds = lineFeeds;
+        return scan;
+    }
+    
+    private static List<Future<RangeScan>> invokeAll(ExecutorService executor, List<Callable<RangeScan>> scans) {
+        try {
+            return executor.invokeAll(scans);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while splitting CSV file", e);
+        }
+    }
+    
+    private static List<RangeScan> await(List<Future<RangeScan>> futures) throws IOException {
+        List<RangeScan> results = new ArrayList<>(futures.size());
+        for (Future<RangeScan> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while splitting CSV file", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException("Error splitting CSV file", e.getCause());
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,143 @@
+package com.naiomi.payment.builder.csv;
+
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.function.BiConsumer;
+
+/**
+ * Payment fields that can be populated from a CSV column.
+ * Each field is identified by its canonical CSV header name.
+ */
+public enum CsvField {
+    
+    // Debtor fields
+    DEBTOR_NAME("debtor_name", text(CompactPaymentRecord.Builder::setDebtorName)),
+    DEBTOR_IBAN("debtor_iban", text(CompactPaymentRecord.Builder::setDebtorAccountIBAN)),
+    DEBTOR_ACCOUNT_OTHER("debtor_account_other", text(CompactPaymentRecord.Builder::setDebtorAccountOther)),
+    DEBTOR_BIC("debtor_bic", text(CompactPaymentRecord.Builder::setDebtorBIC)),
+    DEBTOR_ADDRESS_LINE1("debtor_address_line1", text(CompactPaymentRecord.Builder::setDebtorAddressLine1)),
+    DEBTOR_ADDRESS_LINE2("debtor_address_line2", text(CompactPaymentRecord.Builder::setDebtorAddressLine2)),
+    DEBTOR_COUNTRY("debtor_country", text(CompactPaymentRecord.Builder::setDebtorCountry)),
+    
+    // Creditor fields
+    CREDITOR_NAME("creditor_name", text(CompactPaymentRecord.Builder::setCreditorName)),
+    CREDITOR_IBAN("creditor_iban", text(CompactPaymentRecord.Builder::setCreditorAccountIBAN)),
+    CREDITOR_ACCOUNT_OTHER("creditor_account_other", text(CompactPaymentRecord.Builder::setCreditorAccountOther)),
+    CREDITOR_BIC("creditor_bic", text(CompactPaymentRecord.Builder::setCreditorBIC)),
+    CREDITOR_ADDRESS_LINE1("creditor_address_line1", text(CompactPaymentRecord.Builder::setCreditorAddressLine1)),
+    CREDITOR_ADDRESS_LINE2("creditor_address_line2", text(CompactPaymentRecord.Builder::setCreditorAddressLine2)),
+    CREDITOR_COUNTRY("creditor_country", text(CompactPaymentRecord.Builder::setCreditorCountry)),
+    
+    // Payment fields
+    AMOUNT("amount", CsvField::assignAmount),
+    CURRENCY("currency", text(CompactPaymentRecord.Builder::setCurrency)),
+    EXECUTION_DATE("execution_date", CsvField::assignExecutionDate),
+    END_TO_END_ID("end_to_end_id", text(CompactPaymentRecord.Builder::setEndToEndId)),
+    INSTRUCTION_ID("instruction_id", text(CompactPaymentRecord.Builder::setInstructionId)),
+    
+    // Remittance information
+    REMITTANCE_INFO("remittance_info", text(CompactPaymentRecord.Builder::setRemittanceInformationUnstructured)),
+    REMITTANCE_STRUCTURED("remittance_structured", text(CompactPaymentRecord.Builder::setRemittanceInformationStructured)),
+    
+    // Additional fields
+    PURPOSE_CODE("purpose_code", text(CompactPaymentRecord.Builder::setPurposeCode)),
+    CATEGORY_PURPOSE_CODE("category_purpose_code", text(CompactPaymentRecord.Builder::setCategoryPurposeCode)),
+    CHARGE_BEARER("charge_bearer", text(CompactPaymentRecord.Builder::setChargeBearer));
+    
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    
+    private final String key;
+    private final Assigner assigner;
+    
+    CsvField(String key, Assigner assigner) {
+        this.key = key;
+        this.assigner = assigner;
+    }
+    
+    /**
+     * Converts a non-empty column of a row and stores it in the record builder
+     */
+    @FunctionalInterface
+    private interface Assigner {
+        void assign(CompactPaymentRecord.Builder record, CsvRow row, int column, StringCache cache);
+    }
+    
+    /**
+     * Canonical CSV header name, also used as the key in the header alias configuration
+     */
+    public String getKey() {
+        return key;
+    }
+    
+    /**
+     * Convert a non-empty column of the row and assign it to the record
+     * 
+     * @param cache Cache for deduplicating text values, or null
+     */
+    public void assign(CompactPaymentRecord.Builder record, CsvRow row, int column, StringCache cache) {
+        assigner.assign(record, row, column, cache);
+    }
+    
+    /**
+     * Look up a field by its canonical header name
+     * 
+     * @throws IllegalArgumentException if no field has the given key
+     */
+    public static CsvField forKey(String key) {
+        for (CsvField field : values()) {
+            if (field.key.equals(key)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown CSV field: " + key);
+    }
+    
+    private static Assigner text(BiConsumer<CompactPaymentRecord.Builder, String> setter) {
+        return (record, row, column, cache) -> setter.accept(record, row.getString(column, cache));
+    }
+    
+    private static void assignAmount(CompactPaymentRecord.Builder record, CsvRow row, int column, StringCache cache) {
+        int status = row.parseDecimal(column);
+        if (status == DecimalParser.OK) {
+            record.setInstructedAmount(row.getDecimal().getUnscaled(), row.getDecimal().getScale());
+        } else if (status == DecimalParser.UNSUPPORTED) {
+            record.setInstructedAmount(parseDecimal(row.getString(column)));
+        } else {
+            throw new IllegalArgumentException("Invalid decimal value: " + row.getString(column));
+        }
+    }
+    
+    private static void assignExecutionDate(CompactPaymentRecord.Builder record, CsvRow row, int column, StringCache cache) {
+        int epochDay = row.parseEpochDay(column);
+        if (epochDay == DateParser.UNSUPPORTED) {
+            record.setRequestedExecutionDate(parseDate(row.getString(column)));
+        } else if (epochDay == DateParser.INVALID) {
+            throw invalidDate(row.getString(column));
+        } else {
+            record.setRequestedExecutionDate(epochDay);
+        }
+    }
+    
+    private static BigDecimal parseDecimal(String value) {
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid decimal value: " + value);
+        }
+    }
+    
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value, DATE_FORMATTER);
+        } catch (Exception e) {
+            throw invalidDate(value);
+        }
+    }
+    
+    private static IllegalArgumentException invalidDate(String value) {
+        return new IllegalArgumentException("Invalid date value: " + value + ". Expected format: yyyy-MM-dd");
+    }
+}
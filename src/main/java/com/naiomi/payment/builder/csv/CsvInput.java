@@ -0,0 +1,31 @@
+package com.naiomi.payment.builder.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Source of raw CSV bytes, exposed to {@link CsvTokenizer} as a sequence of windows.
+ * <p>
+ * Offsets are absolute positions in the input. Callers only ever move forward: a
+ * window is requested at or after the start of the previous one, and a buffer returned
+ * earlier must not be used once a new window has been requested.
+ */
+public interface CsvInput extends Closeable {
+    
+    /**
+     * Return the bytes starting at the given absolute offset. Index 0 of the returned
+     * buffer corresponds to {@code offset} and its limit is the number of bytes available.
+     * 
+     * @param offset Absolute offset of the first byte required
+     * @param minLength Minimum number of bytes wanted, unless the input ends sooner
+     * @return Buffer holding the window
+     * @throws IOException if the input cannot be read
+     */
+    ByteBuffer window(long offset, int minLength) throws IOException;
+    
+    /**
+     * Whether the most recently returned window extends to the end of the input
+     */
+    boolean isLastWindow();
+}
@@ -0,0 +1,186 @@
+package com.naiomi.payment.builder.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One CSV record as a set of byte slices over the tokenizer's current window.
+ * <p>
+ * Field bounds are already trimmed and exclude enclosing quotes. A row is reused for
+ * every record, so its contents are only valid until the next call to
+ * {@link CsvTokenizer#next(CsvRow)}.
+ */
+public final class CsvRow {
+    
+    private static final byte QUOTE = '"';
+    private static final byte QUOTED = 1;
+    private static final byte ESCAPED = 2;
+    
+    private ByteBuffer buffer;
+    private long offset;
+    private long lineNumber;
+    private int size;
+    private int[] starts = new int[32];
+    private int[] ends = new int[32];
+    private byte[] flags = new byte[32];
+    private byte[] scratch = new byte[256];
+    private final ScaledDecimal decimal = new ScaledDecimal();
+    
+    void reset(ByteBuffer buffer, long offset, long lineNumber) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+        this.size = 0;
+    }
+    
+    void addField(int start, int end, boolean quoted, boolean hasEscapedQuotes) {
+        while (start < end && isWhitespace(buffer.get(start))) {
+            start++;
+        }
+        while (end > start && isWhitespace(buffer.get(end - 1))) {
+            end--;
+        }
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            flags = Arrays.copyOf(flags, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        flags[size] = (byte) ((quoted ? QUOTED : 0) | (hasEscapedQuotes ? ESCAPED : 0));
+        size++;
+    }
+    
+    /**
+     * Number of fields in the record
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Line on which the record starts, counting the header as line 1
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+    
+    /**
+     * Absolute byte offset of the first byte of the record
+     */
+    public long getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Whether the field has no content after trimming
+     */
+    public boolean isEmpty(int index) {
+        return starts[index] == ends[index];
+    }
+    
+    /**
+     * Whether the record is an unquoted line holding only whitespace
+     */
+    public boolean isBlank() {
+        return size == 1 && isEmpty(0) && (flags[0] & QUOTED) == 0;
+    }
+    
+    /**
+     * Decode a field as UTF-8, collapsing escaped quotes
+     * 
+     * @return Field value, or an empty string for an empty field
+     */
+    public String getString(int index) {
+        int start = starts[index];
+        int length = ends[index] - start;
+        if (length == 0) {
+            return "";
+        }
+        byte[] bytes = copy(index);
+        if ((flags[index] & ESCAPED) != 0) {
+            length = unescapeQuotes(bytes, length);
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Parse a field as a plain decimal without allocating
+     * 
+     * @return Status from {@link DecimalParser}; on {@link DecimalParser#OK} the value is in {@link #getDecimal()}
+     */
+    public int parseDecimal(int index) {
+        if ((flags[index] & ESCAPED) != 0) {
+            return DecimalParser.UNSUPPORTED;
+        }
+        return DecimalParser.parse(buffer, starts[index], ends[index], decimal);
+    }
+    
+    /**
+     * Result of the last successful {@link #parseDecimal(int)}
+     */
+    public ScaledDecimal getDecimal() {
+        return decimal;
+    }
+    
+    /**
+     * Parse a field as a yyyy-MM-dd date without allocating
+     * 
+     * @return Epoch day, or a status code from {@link DateParser}
+     */
+    public int parseEpochDay(int index) {
+        if ((flags[index] & ESCAPED) != 0) {
+            return DateParser.UNSUPPORTED;
+        }
+        return DateParser.parseEpochDay(buffer, starts[index], ends[index]);
+    }
+    
+    /**
+     * Decode a field through a string cache so repeated values share one instance
+     * 
+     * @param cache Cache to consult, or null to decode directly
+     */
+    public String getString(int index, StringCache cache) {
+        if (cache == null || (flags[index] & ESCAPED) != 0 || starts[index] == ends[index]) {
+            return getString(index);
+        }
+        return cache.get(buffer, starts[index], ends[index]);
+    }
+    
+    /**
+     * Decode every field, e.g. for a header row
+     */
+    public String[] toStrings() {
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = getString(i);
+        }
+        return values;
+    }
+    
+    private byte[] copy(int index) {
+        int length = ends[index] - starts[index];
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(starts[index], scratch, 0, length);
+        return scratch;
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        // Same set as String.trim(); bytes of multi-byte UTF-8 sequences are negative
+        return b >= 0 && b <= ' ';
+    }
+    
+    private static int unescapeQuotes(byte[] bytes, int length) {
+        int out = 0;
+        for (int in = 0; in < length; in++) {
+            bytes[out++] = bytes[in];
+            if (bytes[in] == QUOTE && in + 1 < length && bytes[in + 1] == QUOTE) {
+                in++;
+            }
+        }
+        return out;
+    }
+}
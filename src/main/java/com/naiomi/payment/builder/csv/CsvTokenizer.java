@@ -0,0 +1,212 @@
+package com.naiomi.payment.builder.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * RFC 4180 CSV tokenizer working directly on UTF-8 bytes.
+ * <p>
+ * Records are scanned in place and exposed as field slices through {@link CsvRow};
+ * no String is created unless a field is actually decoded. Quoted fields may contain
+ * commas, escaped quotes ({@code ""}) and line breaks. Records end with LF, CRLF or CR.
+ */
+public final class CsvTokenizer implements Closeable {
+    
+    private static final byte COMMA = ',';
+    private static final byte QUOTE = '"';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+    private static final int NEED_MORE = -1;
+    
+    private final CsvInput input;
+    private final ByteScanner scanner;
+    private ByteBuffer buffer;
+    private long bufferOffset;
+    private int position;
+    private int limit;
+    private boolean lastWindow;
+    private long lineNumber;
+    private long recordLines;
+    
+    /**
+     * Tokenize an input from its first byte, skipping a UTF-8 byte order mark
+     */
+    public CsvTokenizer(CsvInput input) throws IOException {
+        this(input, ScalarByteScanner.INSTANCE);
+    }
+    
+    /**
+     * Tokenize an input from its first byte with the given scanner, skipping a UTF-8 byte order mark
+     */
+    public CsvTokenizer(CsvInput input, ByteScanner scanner) throws IOException {
+        this(input, 0, 1, scanner);
+        skipByteOrderMark();
+    }
+    
+    /**
+     * Tokenize an input starting at a record boundary
+     * 
+     * @param input Byte source
+     * @param startOffset Absolute offset of the first record to read
+     * @param firstLineNumber Line number of that record
+     */
+    public CsvTokenizer(CsvInput input, long startOffset, long firstLineNumber) throws IOException {
+        this(input, startOffset, firstLineNumber, ScalarByteScanner.INSTANCE);
+    }
+    
+    /**
+     * Tokenize an input starting at a record boundary
+     * 
+     * @param input Byte source
+     * @param startOffset Absolute offset of the first record to read
+     * @param firstLineNumber Line number of that record
+     * @param scanner Scanner finding delimiters and quotes, owned by this tokenizer
+     */
+    public CsvTokenizer(CsvInput input, long startOffset, long firstLineNumber, ByteScanner scanner) throws IOException {
+        this.input = input;
+        this.scanner = scanner;
+        this.lineNumber = firstLineNumber;
+        load(startOffset, 0);
+    }
+    
+    /**
+     * Read the next record into the given row
+     * 
+     * @param row Row to fill; its previous contents become invalid
+     * @return false when the input is exhausted
+     * @throws IOException if the input cannot be read
+     * @throws IncompleteRecordException if the input ends in a quoted field
+     * @throws IllegalArgumentException if the record is otherwise malformed
+     */
+    public boolean next(CsvRow row) throws IOException {
+        while (true) {
+            if (position >= limit && lastWindow) {
+                return false;
+            }
+            int recordEnd = scanRecord(row);
+            if (recordEnd != NEED_MORE) {
+                position = recordEnd;
+                lineNumber += recordLines;
+                return true;
+            }
+            // Record runs past the window: remap from its first byte, growing if it fills the window
+            int pending = limit - position;
+            load(bufferOffset + position, position == 0 ? Math.max(pending * 2, 1024) : pending + 1);
+        }
+    }
+    
+    /**
+     * Line number of the next record to be read
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+    
+    /**
+     * Absolute offset of the next record to be read
+     */
+    public long getOffset() {
+        return bufferOffset + position;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+    
+    private void load(long offset, int minLength) throws IOException {
+        buffer = input.window(offset, minLength);
+        bufferOffset = offset;
+        position = 0;
+        limit = buffer.limit();
+        lastWindow = input.isLastWindow();
+    }
+    
+    private void skipByteOrderMark() {
+        if (limit >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+    }
+    
+    /**
+     * Scan one record starting at the current position
+     * 
+     * @return Position just past the record terminator, or NEED_MORE if the window ends first
+     */
+    private int scanRecord(CsvRow row) {
+        ByteBuffer buf = buffer;
+        ByteScanner scan = scanner;
+        int end = limit;
+        int i = position;
+        long lines = 0;
+        row.reset(buf, bufferOffset + position, lineNumber);
+        
+        while (true) {
+            if (i < end && buf.get(i) == QUOTE) {
+                int contentStart = ++i;
+                boolean escaped = false;
+                while (true) {
+                    i = scan.indexOfQuoteOrLineFeed(buf, i, end);
+                    if (i >= end) {
+                        if (lastWindow) {
+                            throw new IncompleteRecordException("Unterminated quoted field");
+                        }
+                        return NEED_MORE;
+                    }
+                    if (buf.get(i) == QUOTE) {
+                        if (i + 1 < end && buf.get(i + 1) == QUOTE) {
+                            escaped = true;
+                            i += 2;
+                            continue;
+                        }
+                        if (i + 1 >= end && !lastWindow) {
+                            return NEED_MORE;
+                        }
+                        break;
+                    }
+                    lines++;
+                    i++;
+                }
+                int contentEnd = i++;
+                while (i < end && (buf.get(i) == ' ' || buf.get(i) == '\t')) {
+                    i++;
+                }
+                if (i >= end && !lastWindow) {
+                    return NEED_MORE;
+                }
+                if (i < end && buf.get(i) != COMMA && buf.get(i) != LF && buf.get(i) != CR) {
+                    throw new IllegalArgumentException("Unexpected character after closing quote");
+                }
+                row.addField(contentStart, contentEnd, true, escaped);
+            } else {
+                int fieldStart = i;
+                i = scan.indexOfDelimiter(buf, i, end);
+                if (i >= end && !lastWindow) {
+                    return NEED_MORE;
+                }
+                row.addField(fieldStart, i, false, false);
+            }
+            
+            if (i >= end) {
+                // Last record without a trailing line break
+                recordLines = lines;
+                return i;
+            }
+            byte delimiter = buf.get(i++);
+            if (delimiter == COMMA) {
+                continue;
+            }
+            if (delimiter == CR) {
+                if (i >= end && !lastWindow) {
+                    return NEED_MORE;
+                }
+                if (i < end && buf.get(i) == LF) {
+                    i++;
+                }
+            }
+            recordLines = lines + 1;
+            return i;
+        }
+    }
+}
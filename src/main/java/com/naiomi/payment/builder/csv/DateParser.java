@@ -0,0 +1,85 @@
+package com.naiomi.payment.builder.csv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses {@code yyyy-MM-dd} dates straight from bytes with fixed-width digit arithmetic.
+ * <p>
+ * Results are epoch days. Text outside the canonical ten-character form, year zero and
+ * day-of-month values beyond the month's length are reported as {@link #UNSUPPORTED}
+ * rather than decided here, because the formatter-based parser resolves them leniently.
+ */
+public final class DateParser {
+    
+    public static final int INVALID = Integer.MIN_VALUE;
+    public static final int UNSUPPORTED = Integer.MIN_VALUE + 1;
+    
+    private static final int DAYS_0000_TO_1970 = 719528;
+    
+    private DateParser() {
+    }
+    
+    /**
+     * Parse the bytes in [start, end)
+     * 
+     * @return Epoch day, {@link #INVALID} or {@link #UNSUPPORTED}
+     */
+    public static int parseEpochDay(ByteBuffer buffer, int start, int end) {
+        if (end - start != 10 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-') {
+            return UNSUPPORTED;
+        }
+        int year = digits(buffer, start, 4);
+        int month = digits(buffer, start + 5, 2);
+        int day = digits(buffer, start + 8, 2);
+        if (year <= 0 || month < 0 || day < 0) {
+            return UNSUPPORTED;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > 31) {
+            return INVALID;
+        }
+        if (day > 28 && day > lengthOfMonth(year, month)) {
+            return UNSUPPORTED;
+        }
+        return toEpochDay(year, month, day);
+    }
+    
+    /**
+     * Days since 1970-01-01 for a valid proleptic Gregorian date with a positive year
+     */
+    public static int toEpochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return (int) (total - DAYS_0000_TO_1970);
+    }
+    
+    private static int digits(ByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+    
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+    
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
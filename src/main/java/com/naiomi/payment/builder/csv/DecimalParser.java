@@ -0,0 +1,78 @@
+package com.naiomi.payment.builder.csv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses plain decimal numbers straight from UTF-8 bytes into an unscaled long and a scale.
+ * <p>
+ * The fast path accepts an optional sign, digits and an optional decimal point, with up
+ * to 18 significant digits. It yields exactly what {@code new BigDecimal(String)} would
+ * for the same text. Anything it cannot decide on its own (exponents, more digits,
+ * non-ASCII characters) is reported as {@link #UNSUPPORTED} so the caller can fall back.
+ */
+public final class DecimalParser {
+    
+    public static final int OK = 0;
+    public static final int INVALID = 1;
+    public static final int UNSUPPORTED = 2;
+    
+    private static final int MAX_SIGNIFICANT_DIGITS = 18;
+    
+    private DecimalParser() {
+    }
+    
+    /**
+     * Parse the bytes in [start, end)
+     * 
+     * @param buffer Buffer holding the text
+     * @param start Index of the first byte
+     * @param end Index just past the last byte
+     * @param result Receives the value when the status is {@link #OK}
+     * @return {@link #OK}, {@link #INVALID} or {@link #UNSUPPORTED}
+     */
+    public static int parse(ByteBuffer buffer, int start, int end, ScaledDecimal result) {
+        int i = start;
+        boolean negative = false;
+        if (i < end) {
+            byte sign = buffer.get(i);
+            if (sign == '-') {
+                negative = true;
+                i++;
+            } else if (sign == '+') {
+                i++;
+            }
+        }
+        
+        long value = 0;
+        int significantDigits = 0;
+        int scale = -1;
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (value != 0 || b != '0') {
+                    if (++significantDigits > MAX_SIGNIFICANT_DIGITS) {
+                        return UNSUPPORTED;
+                    }
+                }
+                value = value * 10 + (b - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (b == '.' && scale < 0) {
+                scale = 0;
+            } else if (b == 'e' || b == 'E' || b < 0) {
+                return UNSUPPORTED;
+            } else {
+                return INVALID;
+            }
+        }
+        if (!sawDigit) {
+            return INVALID;
+        }
+        
+        result.set(negative ? -value : value, Math.max(scale, 0));
+        return OK;
+    }
+}
@@ -0,0 +1,12 @@
+package com.naiomi.payment.builder.csv;
+
+/**
+ * The input ends inside a record, in a quoted field that is never closed. Reading a
+ * file that is still being appended to, the rest of the record may not be written yet.
+ */
+public class IncompleteRecordException extends IllegalArgumentException {
+    
+    public IncompleteRecordException(String message) {
+        super(message);
+    }
+}
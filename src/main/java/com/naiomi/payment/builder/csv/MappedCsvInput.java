@@ -0,0 +1,80 @@
+package com.naiomi.payment.builder.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CSV input backed by memory-mapped windows of a file region.
+ * <p>
+ * Pages are read lazily by the OS, so no bytes are copied onto the Java heap while
+ * tokenizing. Files larger than one window are mapped piece by piece.
+ */
+public final class MappedCsvInput implements CsvInput {
+    
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    
+    private final FileChannel channel;
+    private final long end;
+    private final int windowSize;
+    private final boolean ownsChannel;
+    private boolean lastWindow;
+    
+    /**
+     * Map a region of an already open channel. The channel is not closed by this input.
+     * 
+     * @param channel Channel to map from
+     * @param end Absolute offset just past the last byte of the region
+     * @param windowSize Preferred size of each mapped window
+     */
+    public MappedCsvInput(FileChannel channel, long end, int windowSize) {
+        this(channel, end, windowSize, false);
+    }
+    
+    private MappedCsvInput(FileChannel channel, long end, int windowSize, boolean ownsChannel) {
+        this.channel = channel;
+        this.end = end;
+        this.windowSize = windowSize;
+        this.ownsChannel = ownsChannel;
+    }
+    
+    /**
+     * Open a whole file for mapping
+     * 
+     * @param path Path to the CSV file
+     * @param windowSize Preferred size of each mapped window
+     * @return Input owning the underlying channel
+     * @throws IOException if the file cannot be opened
+     */
+    public static MappedCsvInput open(Path path, int windowSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedCsvInput(channel, channel.size(), windowSize, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public ByteBuffer window(long offset, int minLength) throws IOException {
+        long remaining = Math.max(0, end - offset);
+        int size = (int) Math.min(remaining, Math.max(windowSize, minLength));
+        lastWindow = size == remaining;
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+    
+    @Override
+    public boolean isLastWindow() {
+        return lastWindow;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (ownsChannel) {
+            channel.close();
+        }
+    }
+}
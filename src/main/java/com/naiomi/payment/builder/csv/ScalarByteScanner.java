@@ -0,0 +1,36 @@
+package com.naiomi.payment.builder.csv;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte-at-a-time scanner, used when vector scanning is disabled or unavailable
+ */
+final class ScalarByteScanner implements ByteScanner {
+    
+    static final ScalarByteScanner INSTANCE = new ScalarByteScanner();
+    
+    private ScalarByteScanner() {
+    }
+    
+    @Override
+    public int indexOfDelimiter(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == ',' || b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+    
+    @Override
+    public int indexOfQuoteOrLineFeed(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '"' || b == '\n') {
+                return i;
+            }
+        }
+        return to;
+    }
+}
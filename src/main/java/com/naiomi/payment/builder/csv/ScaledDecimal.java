@@ -0,0 +1,33 @@
+package com.naiomi.payment.builder.csv;
+
+import java.math.BigDecimal;
+
+/**
+ * Mutable decimal as an unscaled long and a scale, used as the result holder of
+ * {@link DecimalParser} so parsing does not allocate.
+ */
+public final class ScaledDecimal {
+    
+    private long unscaled;
+    private int scale;
+    
+    public long getUnscaled() {
+        return unscaled;
+    }
+    
+    public int getScale() {
+        return scale;
+    }
+    
+    void set(long unscaled, int scale) {
+        this.unscaled = unscaled;
+        this.scale = scale;
+    }
+    
+    /**
+     * Convert the current value to a BigDecimal with the same scale
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+}
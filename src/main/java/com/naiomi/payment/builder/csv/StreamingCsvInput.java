@@ -0,0 +1,73 @@
+package com.naiomi.payment.builder.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * CSV input read sequentially from a stream, e.g. a decompressing one.
+ * <p>
+ * Bytes are read into a heap array that holds one window. When the next window is
+ * requested, the bytes from its offset onwards are moved to the front of the array
+ * and the rest is refilled from the stream, so memory use is bounded by the window
+ * size unless a single record is larger. The stream is closed with this input.
+ */
+public final class StreamingCsvInput implements CsvInput {
+    
+    public static final int DEFAULT_WINDOW_SIZE = 1024 * 1024;
+    
+    private final InputStream in;
+    private final int windowSize;
+    private byte[] bytes;
+    private long start;
+    private int filled;
+    private boolean endOfInput;
+    
+    /**
+     * @param in Stream to read from, positioned at offset 0
+     * @param windowSize Preferred size of each window
+     */
+    public StreamingCsvInput(InputStream in, int windowSize) {
+        this.in = in;
+        this.windowSize = windowSize;
+        this.bytes = new byte[windowSize];
+    }
+    
+    @Override
+    public ByteBuffer window(long offset, int minLength) throws IOException {
+        if (offset < start) {
+            throw new IllegalArgumentException("Window at " + offset + " starts before the previous one at " + start);
+        }
+        // Keep the bytes from the offset onwards, skipping any not read yet
+        int kept = (int) Math.max(0, start + filled - offset);
+        System.arraycopy(bytes, filled - kept, bytes, 0, kept);
+        in.skipNBytes(Math.max(0, offset - start - filled));
+        start = offset;
+        filled = kept;
+        
+        int wanted = Math.max(windowSize, minLength);
+        if (wanted > bytes.length) {
+            bytes = Arrays.copyOf(bytes, wanted);
+        }
+        while (filled < wanted && !endOfInput) {
+            int read = in.read(bytes, filled, wanted - filled);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                filled += read;
+            }
+        }
+        return ByteBuffer.wrap(bytes, 0, filled);
+    }
+    
+    @Override
+    public boolean isLastWindow() {
+        return endOfInput;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,91 @@
+package com.naiomi.payment.builder.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache that maps UTF-8 byte slices to shared String instances.
+ * <p>
+ * Lookups hash and compare the raw bytes in place, so a value seen before costs no
+ * allocation and every record gets the same String instance. The table has a fixed
+ * size and uses short linear probing; once a neighbourhood is full, new values are
+ * simply decoded without being cached. Safe for concurrent use by parallel chunk parsers.
+ */
+public final class StringCache {
+    
+    private static final int MAX_PROBES = 8;
+    private static final int MAX_VALUE_LENGTH = 64;
+    
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    
+    /**
+     * @param maxEntries Approximate number of distinct values to keep
+     */
+    public StringCache(int maxEntries) {
+        int capacity = Integer.highestOneBit(Math.max(16, maxEntries * 2 - 1) << 1);
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+    
+    private record Entry(int hash, byte[] bytes, String value) {
+    }
+    
+    /**
+     * Return the String for the bytes in [start, end), reusing a cached instance when possible
+     */
+    public String get(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > MAX_VALUE_LENGTH) {
+            return decode(buffer, start, length).value();
+        }
+        int hash = hash(buffer, start, end);
+        int slot = hash & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            Entry entry = table.get(slot);
+            if (entry == null) {
+                Entry created = decode(buffer, start, length, hash);
+                if (table.compareAndSet(slot, null, created)) {
+                    return created.value();
+                }
+                entry = table.get(slot);
+            }
+            if (entry.hash() == hash && matches(entry.bytes(), buffer, start, length)) {
+                return entry.value();
+            }
+            slot = (slot + 1) & mask;
+        }
+        return decode(buffer, start, length).value();
+    }
+    
+    private static Entry decode(ByteBuffer buffer, int start, int length) {
+        return decode(buffer, start, length, 0);
+    }
+    
+    private static Entry decode(ByteBuffer buffer, int start, int length, int hash) {
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes, 0, length);
+        return new Entry(hash, bytes, new String(bytes, StandardCharsets.UTF_8));
+    }
+    
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int h = 1;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buffer.get(i);
+        }
+        return h ^ (h >>> 16);
+    }
+    
+    private static boolean matches(byte[] bytes, ByteBuffer buffer, int start, int length) {
+        if (bytes.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
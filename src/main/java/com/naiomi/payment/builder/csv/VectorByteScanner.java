@@ -0,0 +1,113 @@
+package com.naiomi.payment.builder.csv;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Scanner comparing a full vector of bytes per step using the incubating Vector API:
+ * 32 bytes with AVX2, 64 with AVX-512.
+ * <p>
+ * CSV fields are usually shorter than a vector, so the match bitmask of the last block
+ * compared is kept and consecutive fields in the same block are found with bit
+ * operations instead of another comparison. Bytes past the last full vector of a
+ * window are scanned one at a time.
+ * <p>
+ * Only loaded through {@link ByteScanners}, since the class cannot be linked unless the
+ * {@code jdk.incubator.vector} module is present.
+ */
+final class VectorByteScanner implements ByteScanner {
+    
+    static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    
+    private ByteBuffer lastBuffer;
+    private MemorySegment segment;
+    private final Block delimiters = new Block();
+    private final Block quotesOrLineFeeds = new Block();
+    
+    static int vectorByteSize() {
+        return SPECIES.vectorByteSize();
+    }
+    
+    @Override
+    public int indexOfDelimiter(ByteBuffer buffer, int from, int to) {
+        MemorySegment bytes = segment(buffer);
+        Block block = delimiters;
+        int i = from;
+        while (true) {
+            if (!block.covers(i)) {
+                if (i > to - LANES) {
+                    return ScalarByteScanner.INSTANCE.indexOfDelimiter(buffer, i, to);
+                }
+                ByteVector vector = ByteVector.fromMemorySegment(SPECIES, bytes, i, ByteOrder.nativeOrder());
+                block.load(i, vector.eq((byte) ',').or(vector.eq((byte) '\n')).or(vector.eq((byte) '\r')).toLong());
+            }
+            int found = block.next(i);
+            if (found >= 0) {
+                return Math.min(found, to);
+            }
+            i = block.start + LANES;
+        }
+    }
+    
+    @Override
+    public int indexOfQuoteOrLineFeed(ByteBuffer buffer, int from, int to) {
+        MemorySegment bytes = segment(buffer);
+        Block block = quotesOrLineFeeds;
+        int i = from;
+        while (true) {
+            if (!block.covers(i)) {
+                if (i > to - LANES) {
+                    return ScalarByteScanner.INSTANCE.indexOfQuoteOrLineFeed(buffer, i, to);
+                }
+                ByteVector vector = ByteVector.fromMemorySegment(SPECIES, bytes, i, ByteOrder.nativeOrder());
+                block.load(i, vector.eq((byte) '"').or(vector.eq((byte) '\n')).toLong());
+            }
+            int found = block.next(i);
+            if (found >= 0) {
+                return Math.min(found, to);
+            }
+            i = block.start + LANES;
+        }
+    }
+    
+    private MemorySegment segment(ByteBuffer buffer) {
+        if (buffer != lastBuffer) {
+            segment = MemorySegment.ofBuffer(buffer);
+            lastBuffer = buffer;
+            delimiters.start = -LANES;
+            quotesOrLineFeeds.start = -LANES;
+        }
+        return segment;
+    }
+    
+    /**
+     * Match bitmask of one vector-sized block: bit k is set if byte start + k matches
+     */
+    private static final class Block {
+        
+        int start = -LANES;
+        long matches;
+        
+        boolean covers(int index) {
+            return index >= start && index < start + LANES;
+        }
+        
+        void load(int start, long matches) {
+            this.start = start;
+            this.matches = matches;
+        }
+        
+        /**
+         * First match at or after index within the block, or -1
+         */
+        int next(int index) {
+            long remaining = matches >>> (index - start);
+            return remaining == 0 ? -1 : index + Long.numberOfTrailingZeros(remaining);
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.naiomi.payment.builder.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+
+import lombok.Value;
+
+/**
+ * Immutable, compact representation of a payment.
+ * <p>
+ * The amount is held as an unscaled long with its scale, currency and countries as
+ * packed IsoCodes and the execution date as an epoch day, so a record carries no
+ * BigDecimal, LocalDate or per-record code Strings. Values that are not codes of letters
+ * are kept as given in {@link RawCodes}, which is null for every other record.
+ * PaymentRecord remains the mutable bean; convert between the two with
+ * {@link #from(Payment)} and {@link #toPaymentRecord()}.
+ */
+@Value
+public class CompactPaymentRecord implements FixedPointPayment {
+    
+    /** Amount scale marking an absent amount */
+    public static final byte NO_AMOUNT = Byte.MIN_VALUE;
+    
+    /** Epoch day marking an absent execution date */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+    
+    // Debtor (Payer) Information
+    String debtorName;
+    String debtorAccountIBAN;
+    String debtorAccountOther;
+    String debtorBIC;
+    String debtorAddressLine1;
+    String debtorAddressLine2;
+    short debtorCountryCode;
+    
+    // Creditor (Payee) Information
+    String creditorName;
+    String creditorAccountIBAN;
+    String creditorAccountOther;
+    String creditorBIC;
+    String creditorAddressLine1;
+    String creditorAddressLine2;
+    short creditorCountryCode;
+    
+    // Payment Information
+    long amountUnscaled;
+    byte amountScale;
+    short currencyCode;
+    int executionEpochDay;
+    String endToEndId;
+    String instructionId;
+    
+    // Remittance Information
+    String remittanceInformationUnstructured;
+    String remittanceInformationStructured;
+    
+    // Additional Information
+    String purposeCode;
+    String categoryPurposeCode;
+    String chargeBearer;
+    
+    // Text of codes that are UNPACKED, or null if all codes were packed
+    RawCodes rawCodes;
+    
+    /**
+     * Currency and country values that could not be packed as IsoCodes, each null if it was
+     */
+    public record RawCodes(String debtorCountry, String creditorCountry, String currency) {
+    }
+    
+    @Override
+    public boolean hasInstructedAmount() {
+        return amountScale != NO_AMOUNT;
+    }
+    
+    @Override
+    public BigDecimal getInstructedAmount() {
+        return hasInstructedAmount() ? BigDecimal.valueOf(amountUnscaled, amountScale) : null;
+    }
+    
+    @Override
+    public String getCurrency() {
+        return currencyCode != IsoCodes.UNPACKED ? IsoCodes.currency(currencyCode) : rawCodes.currency();
+    }
+    
+    @Override
+    public LocalDate getRequestedExecutionDate() {
+        return executionEpochDay != NO_DATE ? LocalDate.ofEpochDay(executionEpochDay) : null;
+    }
+    
+    @Override
+    public String getDebtorCountry() {
+        return debtorCountryCode != IsoCodes.UNPACKED
+                ? IsoCodes.country(debtorCountryCode) : rawCodes.debtorCountry();
+    }
+    
+    @Override
+    public String getCreditorCountry() {
+        return creditorCountryCode != IsoCodes.UNPACKED
+                ? IsoCodes.country(creditorCountryCode) : rawCodes.creditorCountry();
+    }
+    
+    /**
+     * Copy any payment into the compact form
+     * 
+     * @throws IllegalArgumentException if the amount cannot be represented
+     */
+    public static CompactPaymentRecord from(Payment payment) {
+        Builder builder = new Builder();
+        builder.setDebtorName(payment.getDebtorName());
+        builder.setDebtorAccountIBAN(payment.getDebtorAccountIBAN());
+        builder.setDebtorAccountOther(payment.getDebtorAccountOther());
+        builder.setDebtorBIC(payment.getDebtorBIC());
+        builder.setDebtorAddressLine1(payment.getDebtorAddressLine1());
+        builder.setDebtorAddressLine2(payment.getDebtorAddressLine2());
+        builder.setDebtorCountry(payment.getDebtorCountry());
+        builder.setCreditorName(payment.getCreditorName());
+        builder.setCreditorAccountIBAN(payment.getCreditorAccountIBAN());
+        builder.setCreditorAccountOther(payment.getCreditorAccountOther());
+        builder.setCreditorBIC(payment.getCreditorBIC());
+        builder.setCreditorAddressLine1(payment.getCreditorAddressLine1());
+        builder.setCreditorAddressLine2(payment.getCreditorAddressLine2());
+        builder.setCreditorCountry(payment.getCreditorCountry());
+        builder.setInstructedAmount(payment.getInstructedAmount());
+        builder.setCurrency(payment.getCurrency());
+        builder.setRequestedExecutionDate(payment.getRequestedExecutionDate());
+        builder.setEndToEndId(payment.getEndToEndId());
+        builder.setInstructionId(payment.getInstructionId());
+        builder.setRemittanceInformationUnstructured(payment.getRemittanceInformationUnstructured());
+        builder.setRemittanceInformationStructured(payment.getRemittanceInformationStructured());
+        builder.setPurposeCode(payment.getPurposeCode());
+        builder.setCategoryPurposeCode(payment.getCategoryPurposeCode());
+        builder.setChargeBearer(payment.getChargeBearer());
+        return builder.build();
+    }
+    
+    /**
+     * Expand into a mutable PaymentRecord bean
+     */
+    public PaymentRecord toPaymentRecord() {
+        PaymentRecord record = new PaymentRecord();
+        record.setDebtorName(debtorName);
+        record.setDebtorAccountIBAN(debtorAccountIBAN);
+        record.setDebtorAccountOther(debtorAccountOther);
+        record.setDebtorBIC(debtorBIC);
+        record.setDebtorAddressLine1(debtorAddressLine1);
+        record.setDebtorAddressLine2(debtorAddressLine2);
+        record.setDebtorCountry(getDebtorCountry());
+        record.setCreditorName(creditorName);
+        record.setCreditorAccountIBAN(creditorAccountIBAN);
+        record.setCreditorAccountOther(creditorAccountOther);
+        record.setCreditorBIC(creditorBIC);
+        record.setCreditorAddressLine1(creditorAddressLine1);
+        record.setCreditorAddressLine2(creditorAddressLine2);
+        record.setCreditorCountry(getCreditorCountry());
+        record.setInstructedAmount(getInstructedAmount());
+        record.setCurrency(getCurrency());
+        record.setRequestedExecutionDate(getRequestedExecutionDate());
+        record.setEndToEndId(endToEndId);
+        record.setInstructionId(instructionId);
+        record.setRemittanceInformationUnstructured(remittanceInformationUnstructured);
+        record.setRemittanceInformationStructured(remittanceInformationStructured);
+        record.setPurposeCode(purposeCode);
+        record.setCategoryPurposeCode(categoryPurposeCode);
+        record.setChargeBearer(chargeBearer);
+        return record;
+    }
+    
+    /**
+     * Reusable builder. Setters take the same values as the PaymentRecord bean;
+     * {@link #reset()} clears every field so one builder can serve many rows.
+     */
+    public static class Builder {
+        
+        private String debtorName;
+        private String debtorAccountIBAN;
+        private String debtorAccountOther;
+        private String debtorBIC;
+        private String debtorAddressLine1;
+        private String debtorAddressLine2;
+        private short debtorCountryCode;
+        private String creditorName;
+        private String creditorAccountIBAN;
+        private String creditorAccountOther;
+        private String creditorBIC;
+        private String creditorAddressLine1;
+        private String creditorAddressLine2;
+        private short creditorCountryCode;
+        private long amountUnscaled;
+        private byte amountScale = NO_AMOUNT;
+        private short currencyCode;
+        private int executionEpochDay = NO_DATE;
+        private String endToEndId;
+        private String instructionId;
+        private String remittanceInformationUnstructured;
+        private String remittanceInformationStructured;
+        private String purposeCode;
+        private String categoryPurposeCode;
+        private String chargeBearer;
+        private String rawDebtorCountry;
+        private String rawCreditorCountry;
+        private String rawCurrency;
+        
+        public void setDebtorName(String debtorName) {
+            this.debtorName = debtorName;
+        }
+        
+        public void setDebtorAccountIBAN(String debtorAccountIBAN) {
+            this.debtorAccountIBAN = debtorAccountIBAN;
+        }
+        
+        public void setDebtorAccountOther(String debtorAccountOther) {
+            this.debtorAccountOther = debtorAccountOther;
+        }
+        
+        public void setDebtorBIC(String debtorBIC) {
+            this.debtorBIC = debtorBIC;
+        }
+        
+        public void setDebtorAddressLine1(String debtorAddressLine1) {
+            this.debtorAddressLine1 = debtorAddressLine1;
+        }
+        
+        public void setDebtorAddressLine2(String debtorAddressLine2) {
+            this.debtorAddressLine2 = debtorAddressLine2;
+        }
+        
+        public void setDebtorCountry(String debtorCountry) {
+            this.debtorCountryCode = IsoCodes.countryCode(debtorCountry);
+            this.rawDebtorCountry = debtorCountryCode == IsoCodes.UNPACKED ? debtorCountry : null;
+        }
+        
+        public void setCreditorName(String creditorName) {
+            this.creditorName = creditorName;
+        }
+        
+        public void setCreditorAccountIBAN(String creditorAccountIBAN) {
+            this.creditorAccountIBAN = creditorAccountIBAN;
+        }
+        
+        public void setCreditorAccountOther(String creditorAccountOther) {
+            this.creditorAccountOther = creditorAccountOther;
+        }
+        
+        public void setCreditorBIC(String creditorBIC) {
+            this.creditorBIC = creditorBIC;
+        }
+        
+        public void setCreditorAddressLine1(String creditorAddressLine1) {
+            this.creditorAddressLine1 = creditorAddressLine1;
+        }
+        
+        public void setCreditorAddressLine2(String creditorAddressLine2) {
+            this.creditorAddressLine2 = creditorAddressLine2;
+        }
+        
+        public void setCreditorCountry(String creditorCountry) {
+            this.creditorCountryCode = IsoCodes.countryCode(creditorCountry);
+            this.rawCreditorCountry = creditorCountryCode == IsoCodes.UNPACKED ? creditorCountry : null;
+        }
+        
+        /**
+         * @throws IllegalArgumentException if the scale is outside -127..127
+         */
+        public void setInstructedAmount(long unscaled, int scale) {
+            if (scale <= NO_AMOUNT || scale > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Amount scale out of range: " + scale);
+            }
+            this.amountUnscaled = unscaled;
+            this.amountScale = (byte) scale;
+        }
+        
+        /**
+         * @throws IllegalArgumentException if the amount needs more than 63 bits unscaled
+         */
+        public void setInstructedAmount(BigDecimal amount) {
+            if (amount == null) {
+                this.amountScale = NO_AMOUNT;
+                return;
+            }
+            BigInteger unscaled = amount.unscaledValue();
+            if (unscaled.bitLength() >= Long.SIZE) {
+                throw new IllegalArgumentException("Amount out of range: " + amount.toPlainString());
+            }
+            setInstructedAmount(unscaled.longValue(), amount.scale());
+        }
+        
+        public void setCurrency(String currency) {
+            this.currencyCode = IsoCodes.currencyCode(currency);
+            this.rawCurrency = currencyCode == IsoCodes.UNPACKED ? currency : null;
+        }
+        
+        public void setRequestedExecutionDate(int epochDay) {
+            this.executionEpochDay = epochDay;
+        }
+        
+        public void setRequestedExecutionDate(LocalDate requestedExecutionDate) {
+            this.executionEpochDay = requestedExecutionDate != null ? (int) requestedExecutionDate.toEpochDay() : NO_DATE;
+        }
+        
+        public void setEndToEndId(String endToEndId) {
+            this.endToEndId = endToEndId;
+        }
+        
+        public void setInstructionId(String instructionId) {
+            this.instructionId = instructionId;
+        }
+        
+        public void setRemittanceInformationUnstructured(String remittanceInformationUnstructured) {
+            this.remittanceInformationUnstructured = remittanceInformationUnstructured;
+        }
+        
+        public void setRemittanceInformationStructured(String remittanceInformationStructured) {
+            this.remittanceInformationStructured = remittanceInformationStructured;
+        }
+        
+        public void setPurposeCode(String purposeCode) {
+            this.purposeCode = purposeCode;
+        }
+        
+        public void setCategoryPurposeCode(String categoryPurposeCode) {
+            this.categoryPurposeCode = categoryPurposeCode;
+        }
+        
+        public void setChargeBearer(String chargeBearer) {
+            this.chargeBearer = chargeBearer;
+        }
+        
+        /**
+         * Clear every field
+         */
+        public Builder reset() {
+            debtorName = null;
+            debtorAccountIBAN = null;
+            debtorAccountOther = null;
+            debtorBIC = null;
+            debtorAddressLine1 = null;
+            debtorAddressLine2 = null;
+            debtorCountryCode = IsoCodes.NONE;
+            creditorName = null;
+            creditorAccountIBAN = null;
+            creditorAccountOther = null;
+            creditorBIC = null;
+            creditorAddressLine1 = null;
+            creditorAddressLine2 = null;
+            creditorCountryCode = IsoCodes.NONE;
+            amountUnscaled = 0;
+            amountScale = NO_AMOUNT;
+            currencyCode = IsoCodes.NONE;
+            executionEpochDay = NO_DATE;
+            endToEndId = null;
+            instructionId = null;
+            remittanceInformationUnstructured = null;
+            remittanceInformationStructured = null;
+            purposeCode = null;
+            categoryPurposeCode = null;
+            chargeBearer = null;
+            rawDebtorCountry = null;
+            rawCreditorCountry = null;
+            rawCurrency = null;
+            return this;
+        }
+        
+        public CompactPaymentRecord build() {
+            return new CompactPaymentRecord(debtorName, debtorAccountIBAN, debtorAccountOther, debtorBIC,
+                    debtorAddressLine1, debtorAddressLine2, debtorCountryCode,
+                    creditorName, creditorAccountIBAN, creditorAccountOther, creditorBIC,
+                    creditorAddressLine1, creditorAddressLine2, creditorCountryCode,
+                    amountUnscaled, amountScale, currencyCode, executionEpochDay, endToEndId, instructionId,
+                    remittanceInformationUnstructured, remittanceInformationStructured,
+                    purposeCode, categoryPurposeCode, chargeBearer,
+                    rawDebtorCountry != null || rawCreditorCountry != null || rawCurrency != null
+                            ? new RawCodes(rawDebtorCountry, rawCreditorCountry, rawCurrency) : null);
+        }
+    }
+}
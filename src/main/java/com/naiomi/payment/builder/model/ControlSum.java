@@ -0,0 +1,111 @@
+package com.naiomi.payment.builder.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Running sum of fixed-point amounts, as needed for the CtrlSum element.
+ * <p>
+ * The sum is kept as an unscaled long at the largest scale seen so far and only
+ * switches to BigDecimal if that overflows, so summing needs no allocation.
+ */
+public final class ControlSum {
+    
+    private static final long[] POWERS_OF_TEN = new long[19];
+    
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+    
+    private long unscaled;
+    private int scale;
+    private BigDecimal overflow;
+    
+    /**
+     * Add the amount of a payment; payments without an amount add nothing
+     */
+    public void add(Payment payment) {
+        if (payment instanceof FixedPointPayment fixed) {
+            if (fixed.hasInstructedAmount()) {
+                add(fixed.getAmountUnscaled(), fixed.getAmountScale());
+            }
+        } else if (payment.getInstructedAmount() != null) {
+            add(payment.getInstructedAmount());
+        }
+    }
+    
+    /**
+     * Add unscaled &times; 10<sup>-scale</sup>
+     */
+    public void add(long amountUnscaled, int amountScale) {
+        if (overflow == null) {
+            try {
+                if (amountScale > scale) {
+                    unscaled = Math.multiplyExact(unscaled, powerOfTen(amountScale - scale));
+                    scale = amountScale;
+                }
+                unscaled = Math.addExact(unscaled, Math.multiplyExact(amountUnscaled, powerOfTen(scale - amountScale)));
+                return;
+            } catch (ArithmeticException e) {
+                overflow = BigDecimal.valueOf(unscaled, scale);
+            }
+        }
+        overflow = overflow.add(BigDecimal.valueOf(amountUnscaled, amountScale));
+    }
+    
+    public void add(BigDecimal amount) {
+        if (overflow == null && amount.unscaledValue().bitLength() < Long.SIZE) {
+            add(amount.unscaledValue().longValue(), amount.scale());
+        } else {
+            overflow = toBigDecimal().add(amount);
+        }
+    }
+    
+    /**
+     * Current sum, at the largest scale of the amounts added (at least 0)
+     */
+    public BigDecimal toBigDecimal() {
+        if (overflow != null) {
+            return overflow.setScale(Math.max(overflow.scale(), 0));
+        }
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+    
+    /**
+     * Characters of the current sum in plain notation, as written by DecimalFormatter
+     */
+    public int plainLength() {
+        int digits;
+        int sumScale;
+        boolean negative;
+        if (overflow != null) {
+            BigDecimal sum = toBigDecimal();
+            digits = sum.precision();
+            sumScale = sum.scale();
+            negative = sum.signum() < 0;
+        } else {
+            digits = 1;
+            if (unscaled == Long.MIN_VALUE) {
+                digits = POWERS_OF_TEN.length;
+            } else {
+                long magnitude = Math.abs(unscaled);
+                while (digits < POWERS_OF_TEN.length && magnitude >= POWERS_OF_TEN[digits]) {
+                    digits++;
+                }
+            }
+            sumScale = scale;
+            negative = unscaled < 0;
+        }
+        // Values below one are written with a leading "0."
+        return (negative ? 1 : 0) + Math.max(digits, sumScale + 1) + (sumScale > 0 ? 1 : 0);
+    }
+    
+    private static long powerOfTen(int exponent) {
+        if (exponent >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("Scale difference too large: " + exponent);
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+}
@@ -0,0 +1,124 @@
+package com.naiomi.payment.builder.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Formats fixed-point amounts in plain decimal notation without going through
+ * BigDecimal.toString(). An amount is an unscaled integer and a scale, so
+ * (100050, 2) is written as 1000.50. Negative scales append zeros instead of
+ * using an exponent, which XML decimals do not allow.
+ */
+public final class DecimalFormatter {
+    
+    private DecimalFormatter() {
+    }
+    
+    /**
+     * Append unscaled &times; 10<sup>-scale</sup> to the builder
+     */
+    public static void append(StringBuilder out, long unscaled, int scale) {
+        if (unscaled < 0) {
+            out.append('-');
+        }
+        int digitsStart = out.length();
+        if (unscaled == Long.MIN_VALUE) {
+            out.append("9223372036854775808");
+        } else {
+            out.append(Math.abs(unscaled));
+        }
+        placePoint(out, digitsStart, scale, unscaled == 0);
+    }
+    
+    /**
+     * Append a BigDecimal in plain notation, taking the long path when the unscaled value fits
+     */
+    public static void append(StringBuilder out, BigDecimal value) {
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            append(out, unscaled.longValue(), value.scale());
+            return;
+        }
+        if (unscaled.signum() < 0) {
+            out.append('-');
+        }
+        int digitsStart = out.length();
+        out.append(unscaled.abs());
+        placePoint(out, digitsStart, value.scale(), false);
+    }
+    
+    /**
+     * Upper bound on the bytes {@link #write(byte[], int, long, int)} produces for a scale
+     */
+    public static long maxLength(int scale) {
+        return 22 + Math.abs((long) scale);
+    }
+    
+    /**
+     * Write unscaled &times; 10<sup>-scale</sup> as ASCII into the array, which must have
+     * {@link #maxLength(int)} bytes free from offset
+     * 
+     * @return Offset after the last byte written
+     */
+    public static int write(byte[] out, int offset, long unscaled, int scale) {
+        if (unscaled < 0) {
+            out[offset++] = '-';
+        }
+        // Work on the negative magnitude so Long.MIN_VALUE needs no special case
+        long negative = unscaled < 0 ? unscaled : -unscaled;
+        int digits = 1;
+        for (long rest = negative / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        if (scale <= 0) {
+            offset = writeDigits(out, offset, negative, digits);
+            if (unscaled != 0) {
+                for (int i = scale; i < 0; i++) {
+                    out[offset++] = '0';
+                }
+            }
+            return offset;
+        }
+        if (digits > scale) {
+            int end = writeDigits(out, offset + 1, negative, digits);
+            System.arraycopy(out, offset + 1, out, offset, digits - scale);
+            out[offset + digits - scale] = '.';
+            return end;
+        }
+        out[offset++] = '0';
+        out[offset++] = '.';
+        for (int i = digits; i < scale; i++) {
+            out[offset++] = '0';
+        }
+        return writeDigits(out, offset, negative, digits);
+    }
+    
+    private static int writeDigits(byte[] out, int offset, long negative, int digits) {
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            out[i] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        }
+        return end;
+    }
+    
+    private static void placePoint(StringBuilder out, int digitsStart, int scale, boolean zero) {
+        if (scale <= 0) {
+            if (!zero) {
+                for (int i = scale; i < 0; i++) {
+                    out.append('0');
+                }
+            }
+            return;
+        }
+        int digits = out.length() - digitsStart;
+        if (digits > scale) {
+            out.insert(out.length() - scale, '.');
+            return;
+        }
+        out.insert(digitsStart, "0.");
+        for (int i = digits; i < scale; i++) {
+            out.insert(digitsStart + 2, '0');
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.naiomi.payment.builder.model;
+
+/**
+ * Payment whose amount and execution date are available in fixed-point form,
+ * so they can be formatted or summed without BigDecimal or LocalDate
+ */
+public interface FixedPointPayment extends Payment {
+    
+    boolean hasInstructedAmount();
+    
+    /**
+     * Unscaled amount, valid when {@link #hasInstructedAmount()}
+     */
+    long getAmountUnscaled();
+    
+    /**
+     * Amount scale, valid when {@link #hasInstructedAmount()}
+     */
+    byte getAmountScale();
+    
+    /**
+     * Execution date as an epoch day, or CompactPaymentRecord.NO_DATE
+     */
+    int getExecutionEpochDay();
+}
@@ -0,0 +1,109 @@
+package com.naiomi.payment.builder.model;
+
+import java.util.Locale;
+
+/**
+ * Packs ISO 4217 currency codes and ISO 3166 alpha-2 country codes into small integers.
+ * <p>
+ * Each letter takes five bits, so a currency fits in 15 bits and a country in 10; codes
+ * are upper-cased first. Zero stands for an absent code. Unpacking returns a shared String
+ * per code. A value that is not a code of letters packs to {@link #UNPACKED}, and the
+ * caller keeps its text as it was given.
+ */
+public final class IsoCodes {
+    
+    public static final short NONE = 0;
+    
+    /** Code of a value that cannot be packed */
+    public static final short UNPACKED = -1;
+    
+    private static final int CURRENCY_LENGTH = 3;
+    private static final int COUNTRY_LENGTH = 2;
+    
+    private static final String[] CURRENCIES = new String[1 << (5 * CURRENCY_LENGTH)];
+    private static final String[] COUNTRIES = new String[1 << (5 * COUNTRY_LENGTH)];
+    
+    private IsoCodes() {
+    }
+    
+    /**
+     * Pack a three-letter currency code
+     * 
+     * @return Packed code, NONE for null, or UNPACKED if the value is not three letters
+     */
+    public static short currencyCode(String currency) {
+        return pack(currency, CURRENCY_LENGTH);
+    }
+    
+    /**
+     * Unpack a currency code, returning null for NONE; not for UNPACKED
+     */
+    public static String currency(short code) {
+        return unpack(code, CURRENCY_LENGTH, CURRENCIES);
+    }
+    
+    /**
+     * Pack a two-letter country code
+     * 
+     * @return Packed code, NONE for null, or UNPACKED if the value is not two letters
+     */
+    public static short countryCode(String country) {
+        return pack(country, COUNTRY_LENGTH);
+    }
+    
+    /**
+     * Unpack a country code, returning null for NONE; not for UNPACKED
+     */
+    public static String country(short code) {
+        return unpack(code, COUNTRY_LENGTH, COUNTRIES);
+    }
+    
+    private static short pack(String value, int length) {
+        if (value == null) {
+            return NONE;
+        }
+        short code = packUpperCase(value, length);
+        // Upper-case codes are the norm, so only others are converted
+        return code != UNPACKED ? code : packUpperCase(value.toUpperCase(Locale.ROOT), length);
+    }
+    
+    private static short packUpperCase(String value, int length) {
+        if (value.length() != length) {
+            return UNPACKED;
+        }
+        int code = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return UNPACKED;
+            }
+            code = code << 5 | (c - 'A' + 1);
+        }
+        return (short) code;
+    }
+    
+    /**
+     * @throws IllegalArgumentException for UNPACKED, whose text only the caller has
+     */
+    private static String unpack(short code, int length, String[] names) {
+        if (code == NONE) {
+            return null;
+        }
+        if (code == UNPACKED) {
+            throw new IllegalArgumentException("Code was not packed");
+        }
+        String name = names[code];
+        if (name == null) {
+            char[] chars = new char[length];
+            int bits = code;
+            for (int i = length - 1; i >= 0; i--) {
+                chars[i] = (char) ('A' - 1 + (bits & 31));
+                bits >>>= 5;
+            }
+            name = new String(chars);
+            // Racing threads at worst store equal Strings
+            names[code] = name;
+        }
+        return name;
+    }
+}
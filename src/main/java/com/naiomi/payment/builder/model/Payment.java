@@ -0,0 +1,45 @@
+package com.naiomi.payment.builder.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Read-only view of a payment, implemented by the mutable PaymentRecord bean
+ * and the compact CompactPaymentRecord
+ */
+public interface Payment {
+    
+    // Debtor (Payer) Information
+    String getDebtorName();
+    String getDebtorAccountIBAN();
+    String getDebtorAccountOther();
+    String getDebtorBIC();
+    String getDebtorAddressLine1();
+    String getDebtorAddressLine2();
+    String getDebtorCountry();
+    
+    // Creditor (Payee) Information
+    String getCreditorName();
+    String getCreditorAccountIBAN();
+    String getCreditorAccountOther();
+    String getCreditorBIC();
+    String getCreditorAddressLine1();
+    String getCreditorAddressLine2();
+    String getCreditorCountry();
+    
+    // Payment Information
+    BigDecimal getInstructedAmount();
+    String getCurrency();
+    LocalDate getRequestedExecutionDate();
+    String getEndToEndId();
+    String getInstructionId();
+    
+    // Remittance Information
+    String getRemittanceInformationUnstructured();
+    String getRemittanceInformationStructured();
+    
+    // Additional Information
+    String getPurposeCode();
+    String getCategoryPurposeCode();
+    String getChargeBearer();
+}
@@ -0,0 +1,415 @@
+package com.naiomi.payment.builder.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Columnar (struct-of-arrays) collection of payments.
+ * <p>
+ * Every payment field is a column. Amounts are stored as unscaled longs with a
+ * scale per row, dates as epoch days, currency and countries as packed IsoCodes;
+ * the few values that cannot be packed are kept as given, by row.
+ * Text columns are dictionary-encoded with 16-bit codes and switch to a plain
+ * array once a column has more distinct values than a code can address, so
+ * repetitive columns cost two bytes per row and unique ones are not penalised.
+ * <p>
+ * Iteration uses a single flyweight cursor: the element returned by the
+ * iterator is only valid until the next call to {@code next()}.
+ */
+public final class PaymentBatch implements Iterable<FixedPointPayment> {
+    
+    private static final int INITIAL_CAPACITY = 256;
+    
+    private int size;
+    private int capacity = INITIAL_CAPACITY;
+    
+    // Debtor (Payer) Information
+    private final TextColumn debtorName = new TextColumn();
+    private final TextColumn debtorAccountIBAN = new TextColumn();
+    private final TextColumn debtorAccountOther = new TextColumn();
+    private final TextColumn debtorBIC = new TextColumn();
+    private final TextColumn debtorAddressLine1 = new TextColumn();
+    private final TextColumn debtorAddressLine2 = new TextColumn();
+    private short[] debtorCountryCodes = new short[INITIAL_CAPACITY];
+    
+    // Creditor (Payee) Information
+    private final TextColumn creditorName = new TextColumn();
+    private final TextColumn creditorAccountIBAN = new TextColumn();
+    private final TextColumn creditorAccountOther = new TextColumn();
+    private final TextColumn creditorBIC = new TextColumn();
+    private final TextColumn creditorAddressLine1 = new TextColumn();
+    private final TextColumn creditorAddressLine2 = new TextColumn();
+    private short[] creditorCountryCodes = new short[INITIAL_CAPACITY];
+    
+    // Payment Information
+    private long[] amountUnscaled = new long[INITIAL_CAPACITY];
+    private byte[] amountScales = new byte[INITIAL_CAPACITY];
+    private short[] currencyCodes = new short[INITIAL_CAPACITY];
+    private int[] executionEpochDays = new int[INITIAL_CAPACITY];
+    private final TextColumn endToEndId = new TextColumn();
+    private final TextColumn instructionId = new TextColumn();
+    
+    // Remittance Information
+    private final TextColumn remittanceInformationUnstructured = new TextColumn();
+    private final TextColumn remittanceInformationStructured = new TextColumn();
+    
+    // Additional Information
+    private final TextColumn purposeCode = new TextColumn();
+    private final TextColumn categoryPurposeCode = new TextColumn();
+    private final TextColumn chargeBearer = new TextColumn();
+    
+    // Rows with an UNPACKED code, created for the first one
+    private Map<Integer, CompactPaymentRecord.RawCodes> rawCodes;
+    
+    private final TextColumn[] textColumns = {
+            debtorName, debtorAccountIBAN, debtorAccountOther, debtorBIC, debtorAddressLine1, debtorAddressLine2,
+            creditorName, creditorAccountIBAN, creditorAccountOther, creditorBIC, creditorAddressLine1, creditorAddressLine2,
+            endToEndId, instructionId, remittanceInformationUnstructured, remittanceInformationStructured,
+            purposeCode, categoryPurposeCode, chargeBearer};
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Append a payment as the next row
+     * 
+     * @throws IllegalArgumentException if the amount cannot be represented
+     */
+    public void add(Payment payment) {
+        FixedPointPayment fixed = payment instanceof FixedPointPayment f ? f : CompactPaymentRecord.from(payment);
+        if (size == capacity) {
+            grow();
+        }
+        int row = size;
+        debtorName.set(row, fixed.getDebtorName());
+        debtorAccountIBAN.set(row, fixed.getDebtorAccountIBAN());
+        debtorAccountOther.set(row, fixed.getDebtorAccountOther());
+        debtorBIC.set(row, fixed.getDebtorBIC());
+        debtorAddressLine1.set(row, fixed.getDebtorAddressLine1());
+        debtorAddressLine2.set(row, fixed.getDebtorAddressLine2());
+        String debtorCountry = fixed.getDebtorCountry();
+        debtorCountryCodes[row] = IsoCodes.countryCode(debtorCountry);
+        creditorName.set(row, fixed.getCreditorName());
+        creditorAccountIBAN.set(row, fixed.getCreditorAccountIBAN());
+        creditorAccountOther.set(row, fixed.getCreditorAccountOther());
+        creditorBIC.set(row, fixed.getCreditorBIC());
+        creditorAddressLine1.set(row, fixed.getCreditorAddressLine1());
+        creditorAddressLine2.set(row, fixed.getCreditorAddressLine2());
+        String creditorCountry = fixed.getCreditorCountry();
+        creditorCountryCodes[row] = IsoCodes.countryCode(creditorCountry);
+        amountUnscaled[row] = fixed.hasInstructedAmount() ? fixed.getAmountUnscaled() : 0;
+        amountScales[row] = fixed.hasInstructedAmount() ? fixed.getAmountScale() : CompactPaymentRecord.NO_AMOUNT;
+        String currency = fixed.getCurrency();
+        currencyCodes[row] = IsoCodes.currencyCode(currency);
+        if (debtorCountryCodes[row] == IsoCodes.UNPACKED || creditorCountryCodes[row] == IsoCodes.UNPACKED
+                || currencyCodes[row] == IsoCodes.UNPACKED) {
+            if (rawCodes == null) {
+                rawCodes = new HashMap<>();
+            }
+            rawCodes.put(row, new CompactPaymentRecord.RawCodes(
+                    debtorCountryCodes[row] == IsoCodes.UNPACKED ? debtorCountry : null,
+                    creditorCountryCodes[row] == IsoCodes.UNPACKED ? creditorCountry : null,
+                    currencyCodes[row] == IsoCodes.UNPACKED ? currency : null));
+        }
+        executionEpochDays[row] = fixed.getExecutionEpochDay();
+        endToEndId.set(row, fixed.getEndToEndId());
+        instructionId.set(row, fixed.getInstructionId());
+        remittanceInformationUnstructured.set(row, fixed.getRemittanceInformationUnstructured());
+        remittanceInformationStructured.set(row, fixed.getRemittanceInformationStructured());
+        purposeCode.set(row, fixed.getPurposeCode());
+        categoryPurposeCode.set(row, fixed.getCategoryPurposeCode());
+        chargeBearer.set(row, fixed.getChargeBearer());
+        size++;
+    }
+    
+    /**
+     * Independent view of one row
+     */
+    public FixedPointPayment get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of range for batch of " + size);
+        }
+        Cursor cursor = new Cursor();
+        cursor.row = row;
+        return cursor;
+    }
+    
+    /**
+     * Iterate over the rows with a reused flyweight cursor
+     */
+    @Override
+    public Iterator<FixedPointPayment> iterator() {
+        Cursor cursor = new Cursor();
+        return new Iterator<>() {
+            private int next;
+            
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+            
+            @Override
+            public FixedPointPayment next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                cursor.row = next++;
+                return cursor;
+            }
+        };
+    }
+    
+    /**
+     * Sum of all amounts, computed over the amount columns. Rows without an amount count as zero.
+     */
+    public BigDecimal controlSum() {
+        ControlSum sum = new ControlSum();
+        for (int row = 0; row < size; row++) {
+            if (amountScales[row] != CompactPaymentRecord.NO_AMOUNT) {
+                sum.add(amountUnscaled[row], amountScales[row]);
+            }
+        }
+        return sum.toBigDecimal();
+    }
+    
+    private void grow() {
+        capacity *= 2;
+        debtorCountryCodes = Arrays.copyOf(debtorCountryCodes, capacity);
+        creditorCountryCodes = Arrays.copyOf(creditorCountryCodes, capacity);
+        amountUnscaled = Arrays.copyOf(amountUnscaled, capacity);
+        amountScales = Arrays.copyOf(amountScales, capacity);
+        currencyCodes = Arrays.copyOf(currencyCodes, capacity);
+        executionEpochDays = Arrays.copyOf(executionEpochDays, capacity);
+        for (TextColumn column : textColumns) {
+            column.grow(capacity);
+        }
+    }
+    
+    /**
+     * Text column holding 16-bit dictionary codes (0 for null) until it has more
+     * distinct values than fit, then plain values
+     */
+    private static final class TextColumn {
+        
+        private static final int MAX_CODES = Character.MAX_VALUE;
+        
+        private char[] codes = new char[INITIAL_CAPACITY];
+        private List<String> dictionary = new ArrayList<>();
+        private Map<String, Integer> index = new HashMap<>();
+        private String[] values;
+        
+        void set(int row, String value) {
+            if (values != null) {
+                values[row] = value;
+                return;
+            }
+            if (value == null) {
+                codes[row] = 0;
+                return;
+            }
+            Integer code = index.get(value);
+            if (code == null) {
+                if (dictionary.size() == MAX_CODES) {
+                    expand(row);
+                    values[row] = value;
+                    return;
+                }
+                dictionary.add(value);
+                code = dictionary.size();
+                index.put(value, code);
+            }
+            codes[row] = (char) code.intValue();
+        }
+        
+        String get(int row) {
+            if (values != null) {
+                return values[row];
+            }
+            int code = codes[row];
+            return code == 0 ? null : dictionary.get(code - 1);
+        }
+        
+        void grow(int capacity) {
+            if (values != null) {
+                values = Arrays.copyOf(values, capacity);
+            } else {
+                codes = Arrays.copyOf(codes, capacity);
+            }
+        }
+        
+        private void expand(int rows) {
+            String[] expanded = new String[codes.length];
+            for (int row = 0; row < rows; row++) {
+                expanded[row] = get(row);
+            }
+            values = expanded;
+            codes = null;
+            dictionary = null;
+            index = null;
+        }
+    }
+    
+    /**
+     * Flyweight view of one row
+     */
+    private final class Cursor implements FixedPointPayment {
+        
+        private int row;
+        
+        @Override
+        public String getDebtorName() {
+            return debtorName.get(row);
+        }
+        
+        @Override
+        public String getDebtorAccountIBAN() {
+            return debtorAccountIBAN.get(row);
+        }
+        
+        @Override
+        public String getDebtorAccountOther() {
+            return debtorAccountOther.get(row);
+        }
+        
+        @Override
+        public String getDebtorBIC() {
+            return debtorBIC.get(row);
+        }
+        
+        @Override
+        public String getDebtorAddressLine1() {
+            return debtorAddressLine1.get(row);
+        }
+        
+        @Override
+        public String getDebtorAddressLine2() {
+            return debtorAddressLine2.get(row);
+        }
+        
+        @Override
+        public String getDebtorCountry() {
+            short code = debtorCountryCodes[row];
+            return code != IsoCodes.UNPACKED ? IsoCodes.country(code) : rawCodes.get(row).debtorCountry();
+        }
+        
+        @Override
+        public String getCreditorName() {
+            return creditorName.get(row);
+        }
+        
+        @Override
+        public String getCreditorAccountIBAN() {
+            return creditorAccountIBAN.get(row);
+        }
+        
+        @Override
+        public String getCreditorAccountOther() {
+            return creditorAccountOther.get(row);
+        }
+        
+        @Override
+        public String getCreditorBIC() {
+            return creditorBIC.get(row);
+        }
+        
+        @Override
+        public String getCreditorAddressLine1() {
+            return creditorAddressLine1.get(row);
+        }
+        
+        @Override
+        public String getCreditorAddressLine2() {
+            return creditorAddressLine2.get(row);
+        }
+        
+        @Override
+        public String getCreditorCountry() {
+            short code = creditorCountryCodes[row];
+            return code != IsoCodes.UNPACKED ? IsoCodes.country(code) : rawCodes.get(row).creditorCountry();
+        }
+        
+        @Override
+        public boolean hasInstructedAmount() {
+            return amountScales[row] != CompactPaymentRecord.NO_AMOUNT;
+        }
+        
+        @Override
+        public long getAmountUnscaled() {
+            return amountUnscaled[row];
+        }
+        
+        @Override
+        public byte getAmountScale() {
+            return amountScales[row];
+        }
+        
+        @Override
+        public BigDecimal getInstructedAmount() {
+            return hasInstructedAmount() ? BigDecimal.valueOf(amountUnscaled[row], amountScales[row]) : null;
+        }
+        
+        @Override
+        public String getCurrency() {
+            short code = currencyCodes[row];
+            return code != IsoCodes.UNPACKED ? IsoCodes.currency(code) : rawCodes.get(row).currency();
+        }
+        
+        @Override
+        public int getExecutionEpochDay() {
+            return executionEpochDays[row];
+        }
+        
+        @Override
+        public LocalDate getRequestedExecutionDate() {
+            int epochDay = executionEpochDays[row];
+            return epochDay != CompactPaymentRecord.NO_DATE ? LocalDate.ofEpochDay(epochDay) : null;
+        }
+        
+        @Override
+        public String getEndToEndId() {
+            return endToEndId.get(row);
+        }
+        
+        @Override
+        public String getInstructionId() {
+            return instructionId.get(row);
+        }
+        
+        @Override
+        public String getRemittanceInformationUnstructured() {
+            return remittanceInformationUnstructured.get(row);
+        }
+        
+        @Override
+        public String getRemittanceInformationStructured() {
+            return remittanceInformationStructured.get(row);
+        }
+        
+        @Override
+        public String getPurposeCode() {
+            return purposeCode.get(row);
+        }
+        
+        @Override
+        public String getCategoryPurposeCode() {
+            return categoryPurposeCode.get(row);
+        }
+        
+        @Override
+        public String getChargeBearer() {
+            return chargeBearer.get(row);
+        }
+    }
+}
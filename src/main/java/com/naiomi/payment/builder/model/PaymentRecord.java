@@ -9,7 +9,7 @@ import lombok.Data;
  * Represents a payment record from CSV input
  */
 @Data
-public class PaymentRecord {
+public class PaymentRecord implements Payment {
     
     // Debtor (Payer) Information
     private String debtorName;
@@ -1,19 +1,48 @@
 package com.naiomi.payment.builder.service;
 
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.csv.ByteScanners;
+import com.naiomi.payment.builder.csv.CsvBinding;
+import com.naiomi.payment.builder.csv.CsvChunk;
+import com.naiomi.payment.builder.csv.CsvChunker;
+import com.naiomi.payment.builder.csv.CsvRow;
+import com.naiomi.payment.builder.csv.CsvTokenizer;
+import com.naiomi.payment.builder.csv.IncompleteRecordException;
+import com.naiomi.payment.builder.csv.MappedCsvInput;
+import com.naiomi.payment.builder.csv.StreamingCsvInput;
+import com.naiomi.payment.builder.csv.StringCache;
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
+import com.naiomi.payment.builder.model.PaymentBatch;
 import com.naiomi.payment.builder.model.PaymentRecord;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.math.BigDecimal;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Service for parsing CSV files and mapping fields to PaymentRecord objects
@@ -21,7 +50,11 @@ import java.util.Map;
 @Service
 public class CsvParserService {
     
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private final PaymentBuilderProperties properties;
+    
+    public CsvParserService(PaymentBuilderProperties properties) {
+        this.properties = properties;
+    }
     
     /**
      * Parse CSV file and return list of payment records
@@ -31,137 +64,570 @@ public class CsvParserService {
      * @throws IOException if file reading fails
      */
     public List<PaymentRecord> parseCsvFile(Path csvFilePath) throws IOException {
-        List<PaymentRecord> records = new ArrayList<>();
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(csvFilePath.toFile()))) {
-            // Read header line
-            String headerLine = reader.readLine();
-            if (headerLine == null) {
-                throw new IllegalArgumentException("CSV file is empty");
+        try (Stream<PaymentRecord> records = streamCsvFile(csvFilePath)) {
+            return records.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+    
+    /**
+     * Parse a CSV file into a columnar batch, which holds large files far more
+     * compactly than a list of records
+     * 
+     * @param csvFilePath Path to the CSV file
+     * @return Batch with one row per record, in file order
+     * @throws IOException if file reading fails
+     */
+    public PaymentBatch parseBatch(Path csvFilePath) throws IOException {
+        PaymentBatch batch = new PaymentBatch();
+        try (Stream<CompactPaymentRecord> records = streamPayments(csvFilePath)) {
+            records.forEachOrdered(batch::add);
+        }
+        return batch;
+    }
+    
+    /**
+     * Open a lazily evaluated stream of payment records. Rows are read and parsed
+     * as the stream is consumed, so memory use does not grow with the size of the
+     * file. Files above the configured threshold are split into record-aligned chunks
+     * that are parsed ahead on a fork-join pool and delivered in file order.
+     * Files ending in {@code .gz} are decompressed while they are parsed.
+     * The stream must be closed to release the file handle. Each record is parsed
+     * in compact form and expanded into a PaymentRecord bean.
+     * 
+     * @param csvFilePath Path to the CSV file
+     * @return Stream of PaymentRecord objects in file order
+     * @throws IOException if the file cannot be opened or the header cannot be read
+     */
+    public Stream<PaymentRecord> streamCsvFile(Path csvFilePath) throws IOException {
+        return streamPayments(csvFilePath).map(CompactPaymentRecord::toPaymentRecord);
+    }
+    
+    /**
+     * Open a lazily evaluated stream of compact payment records, with the same
+     * semantics as {@link #streamCsvFile(Path)} but without expanding each record
+     * into a PaymentRecord bean
+     * 
+     * @param csvFilePath Path to the CSV file
+     * @return Stream of CompactPaymentRecord objects in file order
+     * @throws IOException if the file cannot be opened or the header cannot be read
+     */
+    public Stream<CompactPaymentRecord> streamPayments(Path csvFilePath) throws IOException {
+        if (isGzip(csvFilePath)) {
+            return streamCompressedPayments(csvFilePath);
+        }
+        RecordCursor records = openPayments(csvFilePath, 0, 0);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(records, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> closeCursor(records));
+    }
+    
+    /**
+     * Open the records of an uncompressed CSV file, optionally continuing from a record
+     * boundary reached earlier, e.g. a checkpoint. The header is always read from the
+     * start of the file. Files above the configured threshold are parsed in chunks on a
+     * fork-join pool; the position of the cursor is then only known after the last record
+     * of each chunk. {@link #streamPayments(Path)} streams the same records.
+     * 
+     * @param csvFilePath Path to the CSV file, not compressed
+     * @param startOffset Offset of the first record to read, or 0 to start after the header
+     * @param startLineNumber Line number of that record; ignored when starting after the header
+     * @return Cursor over the records in file order, which must be closed
+     * @throws IOException if the file cannot be opened or the header cannot be read
+     */
+    public RecordCursor openPayments(Path csvFilePath, long startOffset, long startLineNumber) throws IOException {
+        FileChannel channel = FileChannel.open(csvFilePath, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            PaymentBuilderProperties.Input input = properties.getInput();
+            boolean vectorized = input.isSimdScanning();
+            CsvTokenizer tokenizer = new CsvTokenizer(new MappedCsvInput(channel, size, MappedCsvInput.DEFAULT_WINDOW_SIZE),
+                    ByteScanners.create(vectorized));
+            CsvBinding binding = readHeader(tokenizer, input);
+            if (startOffset > 0) {
+                tokenizer = new CsvTokenizer(new MappedCsvInput(channel, size, MappedCsvInput.DEFAULT_WINDOW_SIZE),
+                        startOffset, startLineNumber, ByteScanners.create(vectorized));
             }
             
-            String[] headers = headerLine.split(",");
-            Map<String, Integer> headerMap = createHeaderMap(headers);
-            
-            // Read data lines
-            String line;
-            int lineNumber = 1;
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                if (line.trim().isEmpty()) {
-                    continue; // Skip empty lines
-                }
-                
+            if (input.getParallelism() > 1 && size - tokenizer.getOffset() >= input.getParallelThreshold().toBytes()) {
+                ForkJoinPool pool = new ForkJoinPool(input.getParallelism());
                 try {
-                    PaymentRecord record = parseLine(line, headerMap);
-                    records.add(record);
-                } catch (Exception e) {
-                    throw new RuntimeException("Error parsing line " + lineNumber + ": " + e.getMessage(), e);
+                    List<CsvChunk> chunks = CsvChunker.split(channel, tokenizer.getOffset(), size,
+                            tokenizer.getLineNumber(), input.getParallelChunkSize().toBytes(), pool, vectorized);
+                    ChunkedRecordIterator records = new ChunkedRecordIterator(channel, size, binding, chunks, pool, vectorized);
+                    return new RecordCursor() {
+                        @Override
+                        public boolean hasNext() {
+                            return records.hasNext();
+                        }
+                        
+                        @Override
+                        public CompactPaymentRecord next() {
+                            return records.next();
+                        }
+                        
+                        @Override
+                        public long offset() {
+                            return records.offset;
+                        }
+                        
+                        @Override
+                        public long lineNumber() {
+                            return records.lineNumber;
+                        }
+                        
+                        @Override
+                        public void close() throws IOException {
+                            pool.shutdownNow();
+                            channel.close();
+                        }
+                    };
+                } catch (IOException | RuntimeException e) {
+                    pool.shutdownNow();
+                    throw e;
                 }
             }
+            return new SequentialCursor(tokenizer, binding, channel);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Open the records appended to a CSV file that is still being written, from a record
+     * boundary reached by an earlier call. Only complete lines are read: the file is cut
+     * off after its last line feed, and a record whose quoted field is not closed by then
+     * ends the cursor rather than failing, as the rest of it may not be written yet. The
+     * records are parsed sequentially, so the position of the cursor is always known.
+     * 
+     * @param csvFilePath Path to the CSV file, not compressed
+     * @param startOffset Offset of the first record to read, or 0 to start after the header
+     * @param startLineNumber Line number of that record; ignored when starting after the header
+     * @return Cursor over the complete records, which must be closed; empty until the
+     *         header line is complete
+     * @throws IOException if the file cannot be read
+     */
+    public RecordCursor tailPayments(Path csvFilePath, long startOffset, long startLineNumber) throws IOException {
+        FileChannel channel = FileChannel.open(csvFilePath, StandardOpenOption.READ);
+        try {
+            long end = endOfLastLine(channel, startOffset);
+            PaymentBuilderProperties.Input input = properties.getInput();
+            boolean vectorized = input.isSimdScanning();
+            if (end <= startOffset) {
+                channel.close();
+                return new SequentialCursor(null, null, () -> { }, true, startOffset, startLineNumber);
+            }
+            CsvTokenizer tokenizer = new CsvTokenizer(new MappedCsvInput(channel, end, MappedCsvInput.DEFAULT_WINDOW_SIZE),
+                    ByteScanners.create(vectorized));
+            CsvBinding binding = readHeader(tokenizer, input);
+            if (startOffset > 0) {
+                tokenizer = new CsvTokenizer(new MappedCsvInput(channel, end, MappedCsvInput.DEFAULT_WINDOW_SIZE),
+                        startOffset, startLineNumber, ByteScanners.create(vectorized));
+            }
+            return new SequentialCursor(tokenizer, binding, channel, true, tokenizer.getOffset(), tokenizer.getLineNumber());
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
         }
-        
-        return records;
     }
     
     /**
-     * Create a map of header names to column indices
+     * Offset just past the last line feed of a file at or after an offset, or that offset if there is none
      */
-    private Map<String, Integer> createHeaderMap(String[] headers) {
-        Map<String, Integer> map = new HashMap<>();
-        for (int i = 0; i < headers.length; i++) {
-            map.put(headers[i].trim().toLowerCase(), i);
+    private static long endOfLastLine(FileChannel channel, long from) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(64 * 1024);
+        long end = channel.size();
+        while (end > from) {
+            long start = Math.max(from, end - block.capacity());
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) >= 0) {
+                // Read until the block is full
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return start + i + 1;
+                }
+            }
+            end = start;
         }
-        return map;
+        return from;
     }
     
     /**
-     * Parse a single CSV line into a PaymentRecord
+     * Records of a file together with the position just past the last record returned,
+     * from where {@link #openPayments(Path, long, long)} can continue later
      */
-    private PaymentRecord parseLine(String line, Map<String, Integer> headerMap) {
-        String[] values = line.split(",", -1); // -1 to include trailing empty strings
-        PaymentRecord record = new PaymentRecord();
-        
-        // Map debtor fields
-        record.setDebtorName(getStringValue(values, headerMap, "debtor_name", "debtorname", "payer_name"));
-        record.setDebtorAccountIBAN(getStringValue(values, headerMap, "debtor_iban", "debtor_account_iban", "payer_iban"));
-        record.setDebtorAccountOther(getStringValue(values, headerMap, "debtor_account_other", "debtor_account"));
-        record.setDebtorBIC(getStringValue(values, headerMap, "debtor_bic", "payer_bic"));
-        record.setDebtorAddressLine1(getStringValue(values, headerMap, "debtor_address_line1", "debtor_address1"));
-        record.setDebtorAddressLine2(getStringValue(values, headerMap, "debtor_address_line2", "debtor_address2"));
-        record.setDebtorCountry(getStringValue(values, headerMap, "debtor_country", "payer_country"));
-        
-        // Map creditor fields
-        record.setCreditorName(getStringValue(values, headerMap, "creditor_name", "creditorname", "payee_name"));
-        record.setCreditorAccountIBAN(getStringValue(values, headerMap, "creditor_iban", "creditor_account_iban", "payee_iban"));
-        record.setCreditorAccountOther(getStringValue(values, headerMap, "creditor_account_other", "creditor_account"));
-        record.setCreditorBIC(getStringValue(values, headerMap, "creditor_bic", "payee_bic"));
-        record.setCreditorAddressLine1(getStringValue(values, headerMap, "creditor_address_line1", "creditor_address1"));
-        record.setCreditorAddressLine2(getStringValue(values, headerMap, "creditor_address_line2", "creditor_address2"));
-        record.setCreditorCountry(getStringValue(values, headerMap, "creditor_country", "payee_country"));
-        
-        // Map payment fields
-        record.setInstructedAmount(getBigDecimalValue(values, headerMap, "amount", "instructed_amount", "payment_amount"));
-        record.setCurrency(getStringValue(values, headerMap, "currency", "ccy"));
-        record.setRequestedExecutionDate(getDateValue(values, headerMap, "execution_date", "requested_execution_date", "payment_date"));
-        record.setEndToEndId(getStringValue(values, headerMap, "end_to_end_id", "endtoendid", "reference"));
-        record.setInstructionId(getStringValue(values, headerMap, "instruction_id", "instructionid"));
-        
-        // Map remittance information
-        record.setRemittanceInformationUnstructured(getStringValue(values, headerMap, "remittance_info", "remittance_information", "payment_reference"));
-        record.setRemittanceInformationStructured(getStringValue(values, headerMap, "remittance_structured", "structured_remittance"));
-        
-        // Map additional fields
-        record.setPurposeCode(getStringValue(values, headerMap, "purpose_code", "purpose"));
-        record.setCategoryPurposeCode(getStringValue(values, headerMap, "category_purpose_code", "category_purpose"));
-        record.setChargeBearer(getStringValue(values, headerMap, "charge_bearer", "charges"));
-        
-        return record;
+    public interface RecordCursor extends Iterator<CompactPaymentRecord>, Closeable {
+        
+        /**
+         * Absolute offset just past the last record returned by {@link #next()}, or -1
+         * if it is not known there, e.g. inside a chunk parsed in parallel
+         */
+        long offset();
+        
+        /**
+         * Line number of the record after the last one returned; valid when {@link #offset()} is
+         */
+        long lineNumber();
     }
     
     /**
-     * Get string value from values array, trying multiple possible header names
+     * Whether a file is gzip-compressed, judged by its {@code .gz} extension
      */
-    private String getStringValue(String[] values, Map<String, Integer> headerMap, String... possibleHeaders) {
-        for (String header : possibleHeaders) {
-            Integer index = headerMap.get(header.toLowerCase());
-            if (index != null && index < values.length) {
-                String value = values[index].trim();
-                if (!value.isEmpty()) {
-                    return value;
-                }
+    public static boolean isGzip(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".gz");
+    }
+    
+    /**
+     * Stream the records of a gzip-compressed file, decompressing while parsing.
+     * The decompressed bytes cannot be split into chunks, so parsing is sequential.
+     */
+    private Stream<CompactPaymentRecord> streamCompressedPayments(Path csvFilePath) throws IOException {
+        PaymentBuilderProperties.Input input = properties.getInput();
+        InputStream in = Files.newInputStream(csvFilePath);
+        CsvTokenizer tokenizer;
+        try {
+            int bufferSize = (int) input.getGzipBufferSize().toBytes();
+            tokenizer = new CsvTokenizer(new StreamingCsvInput(new GZIPInputStream(in, bufferSize),
+                    StreamingCsvInput.DEFAULT_WINDOW_SIZE), ByteScanners.create(input.isSimdScanning()));
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        try {
+            CsvBinding binding = readHeader(tokenizer, input);
+            return StreamSupport.stream(new RecordSpliterator(tokenizer, binding), false)
+                    .onClose(() -> closeTokenizer(tokenizer));
+        } catch (IOException | RuntimeException e) {
+            try {
+                tokenizer.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
             }
+            throw e;
+        }
+    }
+    
+    private static CsvBinding readHeader(CsvTokenizer tokenizer, PaymentBuilderProperties.Input input) throws IOException {
+        CsvRow header = new CsvRow();
+        if (!tokenizer.next(header)) {
+            throw new IllegalArgumentException("CSV file is empty");
         }
-        return null;
+        return CsvBinding.compile(header.toStrings(), input.getHeaderAliases(),
+                input.getInternColumns(), new StringCache(input.getInternCacheSize()));
     }
     
     /**
-     * Get BigDecimal value from values array
+     * Read the next non-blank record from the tokenizer
+     * 
+     * @return Mapped record, or null at the end of the input
+     * @throws RuntimeException with the line number if the record cannot be read or mapped
      */
-    private BigDecimal getBigDecimalValue(String[] values, Map<String, Integer> headerMap, String... possibleHeaders) {
-        String stringValue = getStringValue(values, headerMap, possibleHeaders);
-        if (stringValue != null && !stringValue.isEmpty()) {
+    private static CompactPaymentRecord readRecord(CsvTokenizer tokenizer, CsvRow row, CsvBinding binding,
+                                                   CompactPaymentRecord.Builder builder) {
+        while (true) {
+            long lineNumber = tokenizer.getLineNumber();
             try {
-                return new BigDecimal(stringValue);
-            } catch (NumberFormatException e) {
-                throw new IllegalArgumentException("Invalid decimal value: " + stringValue);
+                if (!tokenizer.next(row)) {
+                    return null;
+                }
+                if (row.isBlank()) {
+                    continue; // Skip empty lines
+                }
+                return binding.bind(row, builder);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading line " + lineNumber + ": " + e.getMessage(), e);
+            } catch (Exception e) {
+                throw new RuntimeException("Error parsing line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+    }
+    
+    /**
+     * Tokenizes records on demand and maps each non-blank one to a CompactPaymentRecord
+     */
+    private static class RecordSpliterator extends Spliterators.AbstractSpliterator<CompactPaymentRecord> {
+        
+        private final CsvTokenizer tokenizer;
+        private final CsvBinding binding;
+        private final CsvRow row = new CsvRow();
+        private final CompactPaymentRecord.Builder builder = new CompactPaymentRecord.Builder();
+        
+        RecordSpliterator(CsvTokenizer tokenizer, CsvBinding binding) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.tokenizer = tokenizer;
+            this.binding = binding;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super CompactPaymentRecord> action) {
+            CompactPaymentRecord record = readRecord(tokenizer, row, binding, builder);
+            if (record == null) {
+                return false;
             }
+            action.accept(record);
+            return true;
         }
-        return null;
     }
     
     /**
-     * Get LocalDate value from values array
+     * Reads records one at a time from a tokenizer, noting where each one ends. The next
+     * record is read ahead by {@link #hasNext()}, so its end is only taken as the
+     * position once it is returned.
      */
-    private LocalDate getDateValue(String[] values, Map<String, Integer> headerMap, String... possibleHeaders) {
-        String stringValue = getStringValue(values, headerMap, possibleHeaders);
-        if (stringValue != null && !stringValue.isEmpty()) {
+    private static class SequentialCursor implements RecordCursor {
+        
+        private final CsvTokenizer tokenizer;
+        private final CsvBinding binding;
+        private final Closeable resource;
+        private final boolean tail;
+        private final CsvRow row = new CsvRow();
+        private final CompactPaymentRecord.Builder builder = new CompactPaymentRecord.Builder();
+        private CompactPaymentRecord next;
+        private long nextOffset;
+        private long nextLineNumber;
+        private long offset;
+        private long lineNumber;
+        
+        SequentialCursor(CsvTokenizer tokenizer, CsvBinding binding, Closeable resource) {
+            this(tokenizer, binding, resource, false, tokenizer.getOffset(), tokenizer.getLineNumber());
+        }
+        
+        /**
+         * @param tokenizer Tokenizer positioned at the first record, or null for no records
+         * @param tail Whether the region ends where the file was cut off while still being
+         *             written, so a quoted field left open there means the record is not complete yet
+         * @param offset Offset of the first record
+         * @param lineNumber Line number of the first record
+         */
+        SequentialCursor(CsvTokenizer tokenizer, CsvBinding binding, Closeable resource, boolean tail,
+                         long offset, long lineNumber) {
+            this.tokenizer = tokenizer;
+            this.binding = binding;
+            this.resource = resource;
+            this.tail = tail;
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            if (next == null && tokenizer != null) {
+                try {
+                    next = readRecord(tokenizer, row, binding, builder);
+                } catch (RuntimeException e) {
+                    if (tail && e.getCause() instanceof IncompleteRecordException) {
+                        return false;
+                    }
+                    throw e;
+                }
+                nextOffset = tokenizer.getOffset();
+                nextLineNumber = tokenizer.getLineNumber();
+            }
+            return next != null;
+        }
+        
+        @Override
+        public CompactPaymentRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CompactPaymentRecord record = next;
+            next = null;
+            offset = nextOffset;
+            lineNumber = nextLineNumber;
+            return record;
+        }
+        
+        @Override
+        public long offset() {
+            return offset;
+        }
+        
+        @Override
+        public long lineNumber() {
+            return lineNumber;
+        }
+        
+        @Override
+        public void close() throws IOException {
+            resource.close();
+        }
+    }
+    
+    /**
+     * Parsed contents of one chunk. The end offset and line are where the tokenizer
+     * stopped, which is past the chunk end if the next boundary was misplaced.
+     */
+    private record ChunkResult(CsvChunk chunk, List<CompactPaymentRecord> records, long endOffset, long endLineNumber,
+                               RuntimeException error) {
+    }
+    
+    /**
+     * Parses chunks ahead of the consumer on a pool while delivering records in file order.
+     * <p>
+     * At most twice the pool's parallelism chunks are in flight, which bounds memory.
+     * Each chunk is parsed from its own start until a record ends at or after its end;
+     * if that is not exactly the next chunk's start, the boundary was misplaced by a
+     * stray quote, so the remaining chunks are discarded and parsing continues
+     * sequentially from the true boundary. The position just past the last record
+     * returned is known after the last record of a chunk and while parsing sequentially.
+     */
+    private static class ChunkedRecordIterator implements Iterator<CompactPaymentRecord> {
+        
+        private final FileChannel channel;
+        private final long size;
+        private final CsvBinding binding;
+        private final Iterator<CsvChunk> chunks;
+        private final ExecutorService executor;
+        private final int maxInFlight;
+        private final boolean vectorized;
+        private final Deque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+        private Iterator<CompactPaymentRecord> current = Collections.emptyIterator();
+        private RuntimeException pendingError;
+        private SequentialCursor remainder;
+        private long chunkEndOffset = -1;
+        private long chunkEndLineNumber;
+        long offset = -1;
+        long lineNumber;
+        
+        ChunkedRecordIterator(FileChannel channel, long size, CsvBinding binding, List<CsvChunk> chunks, ForkJoinPool pool,
+                              boolean vectorized) {
+            this.channel = channel;
+            this.vectorized = vectorized;
+            this.size = size;
+            this.binding = binding;
+            this.chunks = chunks.iterator();
+            this.executor = pool;
+            this.maxInFlight = pool.getParallelism() * 2;
+            submitChunks();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (pendingError != null) {
+                    RuntimeException error = pendingError;
+                    pendingError = null;
+                    throw error;
+                }
+                if (remainder != null && current != remainder) {
+                    current = remainder;
+                    continue;
+                }
+                if (inFlight.isEmpty()) {
+                    return false;
+                }
+                ChunkResult result = await(inFlight.poll());
+                current = result.records().iterator();
+                pendingError = result.error();
+                chunkEndOffset = result.error() == null ? result.endOffset() : -1;
+                chunkEndLineNumber = result.endLineNumber();
+                if (result.error() == null && result.endOffset() != result.chunk().end()) {
+                    continueSequentially(result.endOffset(), result.endLineNumber());
+                } else {
+                    submitChunks();
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public CompactPaymentRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CompactPaymentRecord record = current.next();
+            if (current == remainder) {
+                offset = remainder.offset();
+                lineNumber = remainder.lineNumber();
+            } else if (!current.hasNext()) {
+                offset = chunkEndOffset;
+                lineNumber = chunkEndLineNumber;
+            } else {
+                offset = -1;
+            }
+            return record;
+        }
+        
+        private void submitChunks() {
+            while (inFlight.size() < maxInFlight && chunks.hasNext()) {
+                CsvChunk chunk = chunks.next();
+                inFlight.add(executor.submit(() -> parseChunk(chunk)));
+            }
+        }
+        
+        private ChunkResult parseChunk(CsvChunk chunk) throws IOException {
+            List<CompactPaymentRecord> records = new ArrayList<>();
+            CsvRow row = new CsvRow();
+            CompactPaymentRecord.Builder builder = new CompactPaymentRecord.Builder();
+            try (CsvTokenizer tokenizer = new CsvTokenizer(new MappedCsvInput(channel, size, MappedCsvInput.DEFAULT_WINDOW_SIZE),
+                    chunk.start(), chunk.firstLineNumber(), ByteScanners.create(vectorized))) {
+                while (tokenizer.getOffset() < chunk.end()) {
+                    CompactPaymentRecord record = readRecord(tokenizer, row, binding, builder);
+                    if (record == null) {
+                        break;
+                    }
+                    records.add(record);
+                }
+                return new ChunkResult(chunk, records, tokenizer.getOffset(), tokenizer.getLineNumber(), null);
+            } catch (RuntimeException e) {
+                return new ChunkResult(chunk, records, chunk.end(), chunk.firstLineNumber(), e);
+            }
+        }
+        
+        private void continueSequentially(long offset, long lineNumber) {
+            inFlight.forEach(future -> future.cancel(true));
+            inFlight.clear();
+            chunks.forEachRemaining(chunk -> { });
             try {
-                return LocalDate.parse(stringValue, DATE_FORMATTER);
-            } catch (Exception e) {
-                throw new IllegalArgumentException("Invalid date value: " + stringValue + ". Expected format: yyyy-MM-dd");
+                CsvTokenizer tokenizer = new CsvTokenizer(new MappedCsvInput(channel, size, MappedCsvInput.DEFAULT_WINDOW_SIZE),
+                        offset, lineNumber, ByteScanners.create(vectorized));
+                // The tokenizer shares the channel, which is closed with the stream
+                remainder = new SequentialCursor(tokenizer, binding, () -> { });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
-        return null;
+        
+        private static ChunkResult await(Future<ChunkResult> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing CSV file", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw new UncheckedIOException(io);
+                }
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException("Error parsing CSV file", e.getCause());
+            }
+        }
+    }
+    
+    private static void closeCursor(RecordCursor records) {
+        try {
+            records.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static void closeTokenizer(CsvTokenizer tokenizer) {
+        try {
+            tokenizer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,146 @@
+package com.naiomi.payment.builder.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Input files of a directory, read lazily through {@link DirectoryStream}s so files are
+ * handed out while the directory is still being read and no listing is held in memory.
+ * <p>
+ * Files are returned in directory order, not sorted. With a shard depth, subdirectories
+ * are descended into up to that many levels, depth first, e.g. {@code input/3f/a1/payments.csv}
+ * with a depth of 2; files at every level are returned. Only regular files are returned,
+ * which takes one {@code stat} per entry matching the name filter, or per entry of every
+ * kind with shards, to tell directories from files.
+ */
+final class InputFiles implements Iterator<Path>, Closeable {
+    
+    private final Predicate<Path> filter;
+    private final int shardDepth;
+    private final Deque<DirectoryStream<Path>> streams = new ArrayDeque<>();
+    private final Deque<Iterator<Path>> entries = new ArrayDeque<>();
+    private Path next;
+    
+    private InputFiles(Predicate<Path> filter, int shardDepth) {
+        this.filter = filter;
+        this.shardDepth = shardDepth;
+    }
+    
+    /**
+     * Start reading a directory
+     * 
+     * @param dir Input directory
+     * @param glob Pattern file names must match besides being CSV files, or null for all CSV files
+     * @param shardDepth Levels of subdirectories to read, 0 for only the directory itself
+     * @return Files of the directory, which must be closed
+     * @throws IOException if the directory cannot be opened
+     */
+    static InputFiles open(Path dir, String glob, int shardDepth) throws IOException {
+        InputFiles files = new InputFiles(filter(dir.getFileSystem(), glob), Math.max(0, shardDepth));
+        files.descend(dir);
+        return files;
+    }
+    
+    /**
+     * Which files are input files: CSV files, plain or gzip-compressed, whose name matches
+     * the glob if one is given. Watching and tailing use the same filter as a one-shot run,
+     * so all of them convert the same files.
+     * 
+     * @param fileSystem File system of the input directory
+     * @param glob Pattern file names must match besides being CSV files, or null for all CSV files
+     */
+    static Predicate<Path> filter(FileSystem fileSystem, String glob) {
+        if (glob == null || glob.isBlank()) {
+            return PaymentBuilderService::isCsvFile;
+        }
+        PathMatcher matcher = fileSystem.getPathMatcher("glob:" + glob);
+        return path -> PaymentBuilderService.isCsvFile(path) && matcher.matches(path.getFileName());
+    }
+    
+    /**
+     * @throws DirectoryIteratorException if a directory cannot be read
+     */
+    @Override
+    public boolean hasNext() {
+        while (next == null && !entries.isEmpty()) {
+            Iterator<Path> level = entries.peek();
+            if (!level.hasNext()) {
+                entries.pop();
+                closeQuietly(streams.pop());
+                continue;
+            }
+            Path entry = level.next();
+            if (shardDepth == 0) {
+                // The stream's filter already matched the name
+                if (Files.isRegularFile(entry)) {
+                    next = entry;
+                }
+            } else if (Files.isDirectory(entry)) {
+                if (entries.size() <= shardDepth) {
+                    try {
+                        descend(entry);
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+            } else if (filter.test(entry) && Files.isRegularFile(entry)) {
+                next = entry;
+            }
+        }
+        return next != null;
+    }
+    
+    @Override
+    public Path next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Path file = next;
+        next = null;
+        return file;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        entries.clear();
+        IOException failure = null;
+        while (!streams.isEmpty()) {
+            try {
+                streams.pop().close();
+            } catch (IOException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private void descend(Path dir) throws IOException {
+        // Without shards the filter applies to every entry; with them, directories must pass too
+        DirectoryStream<Path> stream = shardDepth == 0
+                ? Files.newDirectoryStream(dir, filter::test)
+                : Files.newDirectoryStream(dir);
+        streams.push(stream);
+        entries.push(stream.iterator());
+    }
+    
+    private static void closeQuietly(DirectoryStream<Path> stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Nothing more is read from it
+        }
+    }
+}
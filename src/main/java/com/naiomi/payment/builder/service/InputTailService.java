@@ -0,0 +1,165 @@
+package com.naiomi.payment.builder.service;
+
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Tails the CSV files of the input directory, which upstream systems append payments to,
+ * and converts newly appended records into incremental messages.
+ * <p>
+ * The directory is polled; whenever a file has grown, {@link PaymentBuilderService#processAppendedRecords}
+ * writes a message for every full {@code tail-max-records} records appended. Records that
+ * do not fill a message are written once the oldest of them has waited for the tail window.
+ * The position converted so far is committed in the output directory, so a restart
+ * continues where the previous run stopped.
+ */
+@Service
+public class InputTailService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InputTailService.class);
+    
+    private static final Duration MIN_POLL_INTERVAL = Duration.ofMillis(10);
+    private static final Duration MAX_POLL_INTERVAL = Duration.ofSeconds(1);
+    
+    private final PaymentBuilderProperties properties;
+    private final PaymentBuilderService paymentBuilderService;
+    private final CountDownLatch stopping = new CountDownLatch(1);
+    
+    // Only used by the tailing thread
+    private final Map<Path, Tailed> tailed = new HashMap<>();
+    
+    public InputTailService(PaymentBuilderProperties properties, PaymentBuilderService paymentBuilderService) {
+        this.properties = properties;
+        this.paymentBuilderService = paymentBuilderService;
+    }
+    
+    /**
+     * Tail the input directory until {@link #stop()} is called or the thread is interrupted,
+     * writing messages on the calling thread. Only the directory itself is polled, so input
+     * shard levels are rejected.
+     * 
+     * @throws IOException if the input directory cannot be listed
+     * @throws IllegalStateException if input shard levels are configured
+     */
+    public void tail() throws IOException {
+        if (properties.getInput().getShardLevels() > 0) {
+            throw new IllegalStateException("Tailing does not support input shard levels; set input.shard-levels to 0");
+        }
+        Path inputDir = Paths.get(properties.getInput().getDirectory());
+        Path outputDir = Paths.get(properties.getOutput().getDirectory());
+        Files.createDirectories(inputDir);
+        Files.createDirectories(outputDir);
+        
+        long pollMillis = pollInterval().toMillis();
+        logger.info("Tailing CSV files in {}", inputDir.toAbsolutePath());
+        try {
+            do {
+                poll(inputDir, outputDir, System.nanoTime());
+            } while (!stopping.await(pollMillis, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            logger.info("Stopped tailing {}", inputDir.toAbsolutePath());
+        }
+    }
+    
+    /**
+     * Stop tailing; messages being written are finished first
+     */
+    @PreDestroy
+    public void stop() {
+        stopping.countDown();
+    }
+    
+    /**
+     * Convert what was appended to each uncompressed input file of the input directory,
+     * as filtered by {@code input.file-glob}, if it grew since the last poll or its oldest
+     * pending records have waited for the tail window. A file that fails is logged and
+     * retried once it changes again.
+     * 
+     * @param now Current {@link System#nanoTime()}
+     */
+    void poll(Path inputDir, Path outputDir, long now) throws IOException {
+        long windowNanos = properties.getInput().getTailWindow() != null
+                ? properties.getInput().getTailWindow().toNanos() : 0;
+        Predicate<Path> inputFiles = InputFiles.filter(inputDir.getFileSystem(), properties.getInput().getFileGlob());
+        List<Path> csvFiles;
+        try (Stream<Path> paths = Files.list(inputDir)) {
+            csvFiles = paths
+                    .filter(path -> inputFiles.test(path) && !CsvParserService.isGzip(path))
+                    .sorted()
+                    .toList();
+        }
+        tailed.keySet().retainAll(csvFiles);
+        
+        for (Path csvFile : csvFiles) {
+            long size;
+            try {
+                size = Files.size(csvFile);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            Tailed file = tailed.computeIfAbsent(csvFile, path -> new Tailed());
+            boolean grown = size != file.size;
+            if (grown && !file.pending) {
+                file.pending = true;
+                file.since = now;
+            }
+            boolean flush = file.pending && now - file.since >= windowNanos;
+            if (!grown && !flush) {
+                continue;
+            }
+            file.size = size;
+            try {
+                paymentBuilderService.processAppendedRecords(csvFile, outputDir, flush);
+                if (flush) {
+                    file.pending = false;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error tailing file {}: {}", csvFile.getFileName(), e.getMessage(), e);
+                file.pending = false;
+            }
+        }
+    }
+    
+    /**
+     * How often files are checked: a quarter of the tail window, so a window ends
+     * shortly after it is due
+     */
+    private Duration pollInterval() {
+        Duration window = properties.getInput().getTailWindow();
+        if (window == null) {
+            return MIN_POLL_INTERVAL;
+        }
+        Duration interval = window.dividedBy(4);
+        return interval.compareTo(MIN_POLL_INTERVAL) < 0 ? MIN_POLL_INTERVAL
+                : interval.compareTo(MAX_POLL_INTERVAL) > 0 ? MAX_POLL_INTERVAL : interval;
+    }
+    
+    /**
+     * A file being tailed: its size when it was last converted, and whether and since
+     * when records appended to it may be waiting for a message
+     */
+    private static final class Tailed {
+        private long size = -1;
+        private boolean pending;
+        private long since;
+    }
+}
@@ -0,0 +1,274 @@
+package com.naiomi.payment.builder.service;
+
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.config.PaymentBuilderProperties.FileCompletion;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the input directory and processes each CSV file once it is completely written.
+ * <p>
+ * Files are noticed through a {@link WatchService}; files already in the directory when
+ * watching starts are picked up too. A file is complete either when its size and
+ * modification time have not changed for the configured stable time, or when its
+ * {@code .done} marker file exists, depending on {@link FileCompletion}. Files that
+ * become complete together are processed together by {@link PaymentBuilderService#processFiles}.
+ * A file is processed again only if it changes, or, with markers, when a new marker lands.
+ */
+@Service
+public class InputWatcherService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(InputWatcherService.class);
+    
+    static final String DONE_SUFFIX = ".done";
+    
+    private static final Duration MIN_POLL_INTERVAL = Duration.ofMillis(10);
+    private static final Duration MAX_POLL_INTERVAL = Duration.ofSeconds(1);
+    
+    private final PaymentBuilderProperties properties;
+    private final PaymentBuilderService paymentBuilderService;
+    
+    // Only used by the watching thread
+    private final Map<Path, Candidate> pending = new LinkedHashMap<>();
+    private final Map<Path, Version> processed = new HashMap<>();
+    
+    private volatile WatchService watchService;
+    private volatile boolean stopped;
+    
+    public InputWatcherService(PaymentBuilderProperties properties, PaymentBuilderService paymentBuilderService) {
+        this.properties = properties;
+        this.paymentBuilderService = paymentBuilderService;
+    }
+    
+    /**
+     * Watch the input directory until {@link #stop()} is called or the thread is interrupted,
+     * processing files on the calling thread as they become complete. Only the directory
+     * itself is watched, so input shard levels are rejected.
+     * 
+     * @throws IOException if the input directory cannot be watched
+     * @throws IllegalStateException if input shard levels are configured
+     */
+    public void watch() throws IOException {
+        if (properties.getInput().getShardLevels() > 0) {
+            throw new IllegalStateException("Watching does not support input shard levels; set input.shard-levels to 0");
+        }
+        Path inputDir = Paths.get(properties.getInput().getDirectory());
+        Path outputDir = Paths.get(properties.getOutput().getDirectory());
+        Files.createDirectories(inputDir);
+        Files.createDirectories(outputDir);
+        
+        FileCompletion completion = completion();
+        long pollMillis = pollInterval().toMillis();
+        try (WatchService service = inputDir.getFileSystem().newWatchService()) {
+            watchService = service;
+            if (stopped) {
+                return;
+            }
+            inputDir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            logger.info("Watching {} for CSV files ({})", inputDir.toAbsolutePath(), completion);
+            
+            rescan(inputDir);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending.isEmpty() ? service.take() : service.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handleEvents(key, inputDir);
+                }
+                List<Path> ready = poll(System.nanoTime());
+                if (!ready.isEmpty()) {
+                    process(ready, outputDir);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watchService = null;
+            logger.info("Stopped watching {}", inputDir.toAbsolutePath());
+        }
+    }
+    
+    /**
+     * Stop watching; a batch of files being processed is finished first
+     */
+    @PreDestroy
+    public void stop() throws IOException {
+        stopped = true;
+        WatchService service = watchService;
+        if (service != null) {
+            service.close();
+        }
+    }
+    
+    private void handleEvents(WatchKey key, Path inputDir) throws IOException {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so look at everything again
+                rescan(inputDir);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                Path file = inputDir.resolve((Path) event.context());
+                pending.remove(file);
+                processed.remove(file);
+            } else {
+                offer(inputDir.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            throw new IOException("Input directory is no longer accessible: " + inputDir);
+        }
+    }
+    
+    /**
+     * Offer every file currently in the input directory
+     */
+    void rescan(Path inputDir) throws IOException {
+        try (Stream<Path> paths = Files.list(inputDir)) {
+            paths.sorted().forEach(this::offer);
+        }
+    }
+    
+    /**
+     * Start tracking a file that was created or changed, if it is an input file matching
+     * {@code input.file-glob}, or with markers, the input file of a marker
+     */
+    void offer(Path file) {
+        Path csvFile = file;
+        if (completion() == FileCompletion.DONE_MARKER) {
+            String name = file.getFileName().toString();
+            if (!name.endsWith(DONE_SUFFIX)) {
+                return;
+            }
+            csvFile = file.resolveSibling(name.substring(0, name.length() - DONE_SUFFIX.length()));
+        }
+        if (InputFiles.filter(csvFile.getFileSystem(), properties.getInput().getFileGlob()).test(csvFile)) {
+            pending.putIfAbsent(csvFile, new Candidate());
+        }
+    }
+    
+    /**
+     * Check the tracked files and return those that are now complete, in the order they
+     * were noticed. Files that disappeared, or, with markers, whose marker disappeared,
+     * are no longer tracked.
+     * 
+     * @param now Current {@link System#nanoTime()}
+     * @return Files ready to be processed
+     */
+    List<Path> poll(long now) throws IOException {
+        boolean markers = completion() == FileCompletion.DONE_MARKER;
+        long stableNanos = properties.getInput().getStableTime() != null
+                ? properties.getInput().getStableTime().toNanos() : 0;
+        List<Path> ready = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, Candidate>> entries = pending.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<Path, Candidate> entry = entries.next();
+            Path csvFile = entry.getKey();
+            Candidate candidate = entry.getValue();
+            if (markers) {
+                if (Files.notExists(marker(csvFile))) {
+                    entries.remove();
+                } else if (Files.isRegularFile(csvFile)) {
+                    entries.remove();
+                    ready.add(csvFile);
+                }
+                continue;
+            }
+            
+            Version version = version(csvFile);
+            if (version == null) {
+                entries.remove();
+            } else if (!version.equals(candidate.version)) {
+                candidate.version = version;
+                candidate.since = now;
+            } else if (now - candidate.since >= stableNanos) {
+                entries.remove();
+                // Watch events for a file already processed unchanged, e.g. after an overflow, are ignored
+                if (!version.equals(processed.get(csvFile))) {
+                    processed.put(csvFile, version);
+                    ready.add(csvFile);
+                }
+            }
+        }
+        return ready;
+    }
+    
+    private void process(List<Path> ready, Path outputDir) throws IOException {
+        logger.info("{} input file(s) ready: {}", ready.size(), ready.stream().map(Path::getFileName).toList());
+        paymentBuilderService.processFiles(ready, outputDir);
+        if (completion() == FileCompletion.DONE_MARKER) {
+            // Consume the markers, successful or not, so a file is retried only when marked again
+            for (Path csvFile : ready) {
+                Files.deleteIfExists(marker(csvFile));
+            }
+        }
+    }
+    
+    private FileCompletion completion() {
+        FileCompletion completion = properties.getInput().getCompletion();
+        return completion != null ? completion : FileCompletion.SIZE_STABLE;
+    }
+    
+    /**
+     * How long to wait for events while files are pending: a quarter of the stable time,
+     * so a stable file is noticed shortly after it becomes complete
+     */
+    private Duration pollInterval() {
+        Duration stableTime = properties.getInput().getStableTime();
+        if (stableTime == null || completion() == FileCompletion.DONE_MARKER) {
+            return MAX_POLL_INTERVAL;
+        }
+        Duration interval = stableTime.dividedBy(4);
+        return interval.compareTo(MIN_POLL_INTERVAL) < 0 ? MIN_POLL_INTERVAL
+                : interval.compareTo(MAX_POLL_INTERVAL) > 0 ? MAX_POLL_INTERVAL : interval;
+    }
+    
+    private static Path marker(Path csvFile) {
+        return csvFile.resolveSibling(csvFile.getFileName() + DONE_SUFFIX);
+    }
+    
+    private static Version version(Path file) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? new Version(attributes.size(), attributes.lastModifiedTime()) : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Size and modification time of a file when it was last checked
+     */
+    private record Version(long size, FileTime lastModified) {
+    }
+    
+    /**
+     * A file waiting to become complete
+     */
+    private static final class Candidate {
+        private Version version;
+        private long since;
+    }
+}
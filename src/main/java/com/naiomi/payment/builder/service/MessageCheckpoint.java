@@ -0,0 +1,142 @@
+package com.naiomi.payment.builder.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of a message written from one input file, saved next to the output so a
+ * run that was killed can continue the file where it stopped instead of starting over.
+ * <p>
+ * A checkpoint pairs a record boundary in the input, given by its byte offset and line
+ * number, with the length of the output holding exactly the transactions before it, and
+ * the group header totals and placeholder positions needed to finish the message. It is
+ * only saved once the output up to that length is forced to disk, and replaces the
+ * previous checkpoint atomically, so the latest checkpoint is always consistent with
+ * the output. A checkpoint is only used if the input still has the size and modification
+ * time it was taken from and the output still holds all of the checkpointed bytes.
+ * 
+ * @param inputSize Size of the input file
+ * @param inputModified Modification time of the input file, in nanoseconds
+ * @param inputOffset Offset of the first record not yet written
+ * @param lineNumber Line number of that record
+ * @param numberOfTransactions Transactions written so far
+ * @param controlSum Sum of their amounts
+ * @param outputPosition Length of the output holding those transactions
+ * @param numberOfTransactionsPosition Offset of the NbOfTxs placeholder in the output
+ * @param controlSumPosition Offset of the CtrlSum placeholder in the output
+ */
+record MessageCheckpoint(long inputSize, long inputModified, long inputOffset, long lineNumber,
+                         long numberOfTransactions, BigDecimal controlSum, long outputPosition,
+                         long numberOfTransactionsPosition, long controlSumPosition) {
+    
+    static final String SUFFIX = ".checkpoint";
+    
+    /**
+     * Checkpoint file of an output file
+     */
+    static Path fileOf(Path outputFile) {
+        return outputFile.resolveSibling(outputFile.getFileName() + SUFFIX);
+    }
+    
+    /**
+     * Size and modification time of an input, as compared with a saved checkpoint
+     */
+    static MessageCheckpoint start(Path inputFile) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(inputFile, BasicFileAttributes.class);
+        return new MessageCheckpoint(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                0, 0, 0, BigDecimal.ZERO, 0, 0, 0);
+    }
+    
+    /**
+     * Progress made since the checkpoint, for the same input
+     */
+    MessageCheckpoint advance(long inputOffset, long lineNumber, long numberOfTransactions, BigDecimal controlSum,
+                              long outputPosition, long numberOfTransactionsPosition, long controlSumPosition) {
+        return new MessageCheckpoint(inputSize, inputModified, inputOffset, lineNumber, numberOfTransactions,
+                controlSum, outputPosition, numberOfTransactionsPosition, controlSumPosition);
+    }
+    
+    /**
+     * Load the checkpoint of an output file, if it can be used to continue writing it
+     * 
+     * @param outputFile Output file being written
+     * @param start Size and modification time of the input, from {@link #start(Path)}
+     * @return The saved checkpoint, or null if there is none, it is unreadable, it was
+     *         taken from a different version of the input or the output was truncated
+     */
+    static MessageCheckpoint load(Path outputFile, MessageCheckpoint start) throws IOException {
+        Properties saved = new Properties();
+        try (Reader reader = Files.newBufferedReader(fileOf(outputFile), StandardCharsets.ISO_8859_1)) {
+            saved.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        MessageCheckpoint checkpoint;
+        try {
+            checkpoint = new MessageCheckpoint(
+                    Long.parseLong(saved.getProperty("input.size")),
+                    Long.parseLong(saved.getProperty("input.modified")),
+                    Long.parseLong(saved.getProperty("input.offset")),
+                    Long.parseLong(saved.getProperty("input.line")),
+                    Long.parseLong(saved.getProperty("transactions")),
+                    new BigDecimal(saved.getProperty("control-sum")),
+                    Long.parseLong(saved.getProperty("output.position")),
+                    Long.parseLong(saved.getProperty("output.transactions-position")),
+                    Long.parseLong(saved.getProperty("output.control-sum-position")));
+        } catch (NumberFormatException | NullPointerException e) {
+            return null;
+        }
+        if (checkpoint.inputSize != start.inputSize || checkpoint.inputModified != start.inputModified
+                || checkpoint.inputOffset <= 0 || !Files.exists(outputFile)
+                || Files.size(outputFile) < checkpoint.outputPosition) {
+            return null;
+        }
+        return checkpoint;
+    }
+    
+    /**
+     * Save the checkpoint of an output file, replacing the previous one. The output
+     * must already be forced to disk up to {@link #outputPosition()}.
+     */
+    void save(Path outputFile) throws IOException {
+        String contents = "input.size=" + inputSize + "\n"
+                + "input.modified=" + inputModified + "\n"
+                + "input.offset=" + inputOffset + "\n"
+                + "input.line=" + lineNumber + "\n"
+                + "transactions=" + numberOfTransactions + "\n"
+                + "control-sum=" + controlSum.toPlainString() + "\n"
+                + "output.position=" + outputPosition + "\n"
+                + "output.transactions-position=" + numberOfTransactionsPosition + "\n"
+                + "output.control-sum-position=" + controlSumPosition + "\n";
+        Path file = fileOf(outputFile);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(contents.getBytes(StandardCharsets.ISO_8859_1));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Remove the checkpoint of an output file that was completed or abandoned
+     */
+    static void delete(Path outputFile) throws IOException {
+        Files.deleteIfExists(fileOf(outputFile));
+    }
+}
@@ -0,0 +1,316 @@
+package com.naiomi.payment.builder.service;
+
+import com.naiomi.payment.builder.model.Payment;
+import com.naiomi.payment.builder.xml.ByteArrayChannel;
+import com.naiomi.payment.builder.xml.GroupTotals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes the transactions of a streamed message as three concurrent stages connected
+ * by bounded queues:
+ * <ol>
+ *     <li>parse: pulls records from the iterator, which drives the CSV parser, into
+ *     batches and accumulates the group header totals</li>
+ *     <li>generate: encodes each batch into its own buffer, on the fragment pool when
+ *     there is one, keeping batches in order</li>
+ *     <li>write: the calling thread writes encoded batches to the file with gathering writes</li>
+ * </ol>
+ * So the next records are parsed while earlier ones are encoded and written. A full
+ * queue blocks the stage feeding it, so memory is bounded by the queue capacities.
+ * Each stage records how long it worked and waited and how full its output queue was,
+ * which is logged once the message is written.
+ */
+final class MessagePipeline {
+    
+    private static final Logger logger = LoggerFactory.getLogger(MessagePipeline.class);
+    
+    private static final List<Payment> END_OF_RECORDS = List.of();
+    private static final Future<ByteArrayChannel> END_OF_BATCHES = CompletableFuture.completedFuture(null);
+    
+    private final Encoder encoder;
+    private final ForkJoinPool fragmentPool;
+    private final int batchSize;
+    private final int batchCapacity;
+    private final int bufferCapacity;
+    private final int queueCapacity;
+    
+    /**
+     * Encodes a batch of transactions
+     */
+    @FunctionalInterface
+    interface Encoder {
+        
+        /**
+         * @param records Records to encode as CdtTrfTxInf elements
+         * @param target Channel to encode into, reset first
+         * @return The target channel
+         */
+        ByteArrayChannel encode(List<Payment> records, ByteArrayChannel target) throws IOException;
+    }
+    
+    /**
+     * @param encoder Encodes batches of transactions
+     * @param fragmentPool Pool encoding batches in parallel, or null to encode on the generate stage
+     * @param batchSize Records per batch
+     * @param bufferCapacity Initial capacity of each encoded batch buffer
+     * @param queueCapacity Batches each queue holds; the encoded queue holds at least
+     *                      twice the pool's parallelism so the pool stays busy
+     */
+    MessagePipeline(Encoder encoder, ForkJoinPool fragmentPool, int batchSize, int bufferCapacity, int queueCapacity) {
+        this.encoder = encoder;
+        this.fragmentPool = fragmentPool;
+        this.batchSize = batchSize;
+        this.batchCapacity = Math.max(1, queueCapacity);
+        this.bufferCapacity = bufferCapacity;
+        this.queueCapacity = Math.max(batchCapacity, fragmentPool != null ? fragmentPool.getParallelism() * 2 : 0);
+    }
+    
+    /**
+     * Write the transactions at the current position of the channel. The group header must
+     * already be written; deferred totals are accumulated by the parse stage and are
+     * complete when this method returns.
+     * 
+     * @param records Records to write, consumed once on the parse stage
+     * @param totals Totals to add each record to, if deferred
+     * @param channel Destination file channel
+     * @throws IOException if writing fails
+     */
+    void write(Iterator<? extends Payment> records, GroupTotals totals, FileChannel channel) throws IOException {
+        BlockingQueue<List<Payment>> parsed = new ArrayBlockingQueue<>(batchCapacity);
+        BlockingQueue<Future<ByteArrayChannel>> encoded = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<ByteArrayChannel> spare = new LinkedBlockingQueue<>();
+        StageStats parse = new StageStats("parse");
+        StageStats generate = new StageStats("generate");
+        StageStats write = new StageStats("write");
+        try (ExecutorService stages = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> parsing = stages.submit(() -> parse(records, totals, parsed, parse));
+            Future<?> generating = stages.submit(() -> generate(parsed, encoded, spare, generate));
+            try {
+                writeBatches(encoded, spare, channel, write);
+                // A failed generate stage may have left the parse stage blocked, so check it first
+                await(generating);
+                await(parsing);
+            } catch (IOException | RuntimeException e) {
+                parsing.cancel(true);
+                generating.cancel(true);
+                throw e;
+            }
+        }
+        logger.info("Pipeline stages for {} transaction(s): {}; {}; {}",
+                totals.getNumberOfTransactions(), parse, generate, write);
+    }
+    
+    private Void parse(Iterator<? extends Payment> records, GroupTotals totals, BlockingQueue<List<Payment>> parsed,
+                       StageStats stats) {
+        try {
+            while (true) {
+                long started = System.nanoTime();
+                List<Payment> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && records.hasNext()) {
+                    Payment record = records.next();
+                    batch.add(record);
+                    if (totals.isDeferred()) {
+                        totals.add(record);
+                    }
+                }
+                stats.worked(started);
+                if (batch.isEmpty()) {
+                    return null;
+                }
+                stats.put(parsed, batch);
+            }
+        } catch (InterruptedException e) {
+            cancelled();
+            return null;
+        } finally {
+            end(parsed, END_OF_RECORDS);
+        }
+    }
+    
+    private Void generate(BlockingQueue<List<Payment>> parsed, BlockingQueue<Future<ByteArrayChannel>> encoded,
+                          BlockingQueue<ByteArrayChannel> spare, StageStats stats) throws Exception {
+        try {
+            while (true) {
+                List<Payment> batch = stats.take(parsed);
+                if (batch == END_OF_RECORDS) {
+                    return null;
+                }
+                long started = System.nanoTime();
+                ByteArrayChannel target = spare.poll();
+                ByteArrayChannel buffer = target != null ? target : new ByteArrayChannel(bufferCapacity);
+                Future<ByteArrayChannel> result = fragmentPool != null
+                        ? fragmentPool.submit(() -> encoder.encode(batch, buffer))
+                        : CompletableFuture.completedFuture(encoder.encode(batch, buffer));
+                stats.worked(started);
+                stats.put(encoded, result);
+            }
+        } catch (InterruptedException e) {
+            cancelled();
+            return null;
+        } finally {
+            end(encoded, END_OF_BATCHES);
+        }
+    }
+    
+    /**
+     * Write encoded batches in order, each together with any finished batches queued behind it
+     */
+    private void writeBatches(BlockingQueue<Future<ByteArrayChannel>> encoded, BlockingQueue<ByteArrayChannel> spare,
+                              FileChannel channel, StageStats stats) throws IOException {
+        List<ByteArrayChannel> ready = new ArrayList<>();
+        while (true) {
+            long waiting = System.nanoTime();
+            Future<ByteArrayChannel> next = take(encoded);
+            if (next == END_OF_BATCHES) {
+                stats.waited(waiting);
+                return;
+            }
+            ready.add(await(next));
+            while (encoded.peek() != null && encoded.peek() != END_OF_BATCHES && encoded.peek().isDone()) {
+                ready.add(await(encoded.poll()));
+            }
+            stats.waited(waiting);
+            
+            long started = System.nanoTime();
+            ByteBuffer[] buffers = new ByteBuffer[ready.size()];
+            long remaining = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ready.get(i).asByteBuffer();
+                remaining += buffers[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers);
+            }
+            spare.addAll(ready);
+            stats.items += ready.size();
+            ready.clear();
+            stats.worked(started);
+        }
+    }
+    
+    /**
+     * Keep the interrupt of a stage cancelled because a later stage failed, which a
+     * blocking queue operation clears when it throws, so {@link #end} skips the marker:
+     * nothing drains the queue any more, and putting into a full one would block forever
+     */
+    private static void cancelled() {
+        Thread.currentThread().interrupt();
+    }
+    
+    /**
+     * Pass the end marker on, unless the stage was cancelled because a later stage failed
+     */
+    private static <T> void end(BlockingQueue<T> queue, T marker) {
+        try {
+            if (!Thread.currentThread().isInterrupted()) {
+                queue.put(marker);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static <T> T take(BlockingQueue<T> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating payment message", e);
+        }
+    }
+    
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating payment message", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Error generating payment message", e.getCause());
+        }
+    }
+    
+    /**
+     * Time one stage spent working and waiting, and how full its output queue was
+     * whenever it added a batch
+     */
+    private static final class StageStats {
+        
+        private final String name;
+        private long items;
+        private long busyNanos;
+        private long waitNanos;
+        private long depthSum;
+        private int maxDepth;
+        private int capacity;
+        
+        StageStats(String name) {
+            this.name = name;
+        }
+        
+        void worked(long started) {
+            busyNanos += System.nanoTime() - started;
+        }
+        
+        void waited(long started) {
+            waitNanos += System.nanoTime() - started;
+        }
+        
+        <T> void put(BlockingQueue<T> queue, T batch) throws InterruptedException {
+            long started = System.nanoTime();
+            queue.put(batch);
+            waited(started);
+            int depth = queue.size();
+            capacity = depth + queue.remainingCapacity();
+            depthSum += depth;
+            maxDepth = Math.max(maxDepth, depth);
+            items++;
+        }
+        
+        <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+            long started = System.nanoTime();
+            T batch = queue.take();
+            waited(started);
+            return batch;
+        }
+        
+        @Override
+        public String toString() {
+            long total = busyNanos + waitNanos;
+            String summary = String.format(Locale.ROOT, "%s %d batch(es), %.0f%% busy",
+                    name, items, total > 0 ? 100.0 * busyNanos / total : 0.0);
+            if (capacity == 0) {
+                return summary;
+            }
+            return summary + String.format(Locale.ROOT, ", output queue depth avg %.1f max %d of %d",
+                    items > 0 ? (double) depthSum / items : 0.0, maxDepth, capacity);
+        }
+    }
+}
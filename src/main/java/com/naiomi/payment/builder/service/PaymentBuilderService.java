@@ -1,17 +1,44 @@
 package com.naiomi.payment.builder.service;
 
 import com.naiomi.payment.builder.config.PaymentBuilderProperties;
-import com.naiomi.payment.builder.model.PaymentRecord;
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
+import com.naiomi.payment.builder.xml.GroupTotals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Main service for processing CSV files and generating ISO20022 payment messages
@@ -35,13 +62,22 @@ public class PaymentBuilderService {
     }
     
     /**
-     * Process all CSV files in the input directory
+     * Process the CSV files in the input directory. The directory is read lazily and files
+     * are handed to processing as they are found, so a directory of any size is neither
+     * listed into memory up front nor waited for before the first file starts. Up to the
+     * configured number of files are processed at the same time, each on a virtual thread;
+     * a file that fails is logged and does not affect the others.
+     * <p>
+     * Files are processed in directory order. With {@code max-files-per-run}, the run stops
+     * claiming files once that many were processed or failed; unchanged files that are
+     * skipped do not count, so the next run continues with the files still to do.
      * 
      * @return Number of files processed
      * @throws IOException if file operations fail
      */
     public int processInputFiles() throws IOException {
-        Path inputDir = Paths.get(properties.getInput().getDirectory());
+        PaymentBuilderProperties.Input input = properties.getInput();
+        Path inputDir = Paths.get(input.getDirectory());
         Path outputDir = Paths.get(properties.getOutput().getDirectory());
         
         // Create directories if they don't exist
@@ -51,69 +87,650 @@ public class PaymentBuilderService {
         logger.info("Processing CSV files from: {}", inputDir.toAbsolutePath());
         logger.info("Output directory: {}", outputDir.toAbsolutePath());
         
-        int processedCount = 0;
-        
-        try (Stream<Path> paths = Files.walk(inputDir, 1)) {
-            List<Path> csvFiles = paths
-                    .filter(Files::isRegularFile)
-                    .filter(path -> path.toString().toLowerCase().endsWith(".csv"))
-                    .toList();
-            
-            logger.info("Found {} CSV file(s) to process", csvFiles.size());
-            
-            for (Path csvFile : csvFiles) {
-                try {
-                    processFile(csvFile, outputDir);
-                    processedCount++;
-                    logger.info("Successfully processed: {}", csvFile.getFileName());
-                } catch (Exception e) {
-                    logger.error("Error processing file {}: {}", csvFile.getFileName(), e.getMessage(), e);
+        RunManifest manifest = properties.getOutput().isSkipUnchanged() ? openManifest(outputDir) : null;
+        try (InputFiles csvFiles = InputFiles.open(inputDir, input.getFileGlob(), input.getShardLevels())) {
+            return processFiles(csvFiles, outputDir, manifest, input.getMaxFilesPerRun());
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        } finally {
+            if (manifest != null) {
+                closeManifest(manifest);
+            }
+        }
+    }
+    
+    /**
+     * Process the given CSV files, up to the configured number at the same time, each on
+     * a virtual thread. A file that fails is logged and does not affect the others; the
+     * summary lists failed files in path order.
+     * 
+     * @param csvFiles Files to process
+     * @param outputDir Output directory for generated XML
+     * @return Number of files processed successfully
+     */
+    public int processFiles(List<Path> csvFiles, Path outputDir) {
+        RunManifest manifest = properties.getOutput().isSkipUnchanged() ? openManifest(outputDir) : null;
+        try {
+            return processFiles(csvFiles.iterator(), outputDir, manifest, 0);
+        } finally {
+            if (manifest != null) {
+                closeManifest(manifest);
+            }
+        }
+    }
+    
+    /**
+     * Process files as the iterator yields them. Unchanged files are skipped here, before
+     * they are claimed; a file is only taken from the iterator once a permit is free, so
+     * enumeration never runs further ahead of processing than the concurrency limit.
+     * 
+     * @param maxFiles Files to claim at most, or 0 for all
+     */
+    private int processFiles(Iterator<Path> csvFiles, Path outputDir, RunManifest manifest, int maxFiles) {
+        int concurrency = Math.max(1, properties.getInput().getMaxConcurrentFiles());
+        int shardLevels = Math.max(0, properties.getOutput().getShardLevels());
+        Queue<Path> failed = new ConcurrentLinkedQueue<>();
+        AtomicReference<Error> fatal = new AtomicReference<>();
+        Semaphore permits = new Semaphore(concurrency);
+        long claimed = 0;
+        int skipped = 0;
+        // Closing the executor waits for all files, or cancels them if this thread is interrupted
+        try (ExecutorService executor = concurrency > 1 ? Executors.newVirtualThreadPerTaskExecutor() : null) {
+            while ((maxFiles <= 0 || claimed < maxFiles) && fatal.get() == null
+                    && !Thread.currentThread().isInterrupted() && csvFiles.hasNext()) {
+                Path csvFile = csvFiles.next();
+                RunManifest.Fingerprint fingerprint = null;
+                if (manifest != null) {
+                    try {
+                        fingerprint = RunManifest.fingerprint(csvFile);
+                        if (manifest.isUnchanged(fingerprint)) {
+                            logger.info("Skipping unchanged file: {}", csvFile.getFileName());
+                            skipped++;
+                            continue;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        logger.error("Error processing file {}: {}", csvFile.getFileName(), e.getMessage(), e);
+                        failed.add(csvFile);
+                        claimed++;
+                        continue;
+                    }
+                }
+                claimed++;
+                Path fileOutputDir = shardDirectory(outputDir, csvFile.getFileName().toString(), shardLevels);
+                RunManifest.Fingerprint processed = fingerprint;
+                if (executor == null) {
+                    if (!processInputFile(csvFile, fileOutputDir, manifest, processed)) {
+                        failed.add(csvFile);
+                    }
+                    continue;
                 }
+                permits.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        if (!processInputFile(csvFile, fileOutputDir, manifest, processed)) {
+                            failed.add(csvFile);
+                        }
+                    } catch (Error e) {
+                        fatal.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
             }
         }
+        if (fatal.get() != null) {
+            throw fatal.get();
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            throw new IllegalStateException("Interrupted while processing input files");
+        }
         
+        int processedCount = (int) (claimed - failed.size());
         logger.info("Processing complete. {} file(s) processed successfully", processedCount);
+        if (skipped > 0) {
+            logger.info("{} unchanged file(s) skipped", skipped);
+        }
+        if (maxFiles > 0 && claimed >= maxFiles) {
+            logger.info("Stopped after {} file(s), remaining files are left for the next run", maxFiles);
+        }
+        if (!failed.isEmpty()) {
+            // Sorted, as files are claimed in directory order and finish in any order
+            logger.warn("{} file(s) failed: {}", failed.size(),
+                    failed.stream().sorted().map(Path::getFileName).toList());
+        }
         return processedCount;
     }
     
     /**
-     * Process a single CSV file
+     * Directory an output of an input file goes to: the output directory itself, or with
+     * shard levels, nested subdirectories named after successive bytes of the CRC-32 of the
+     * input file name in hex, e.g. {@code output/3f/a1} for two levels. This keeps any one
+     * directory small when there are very many files, and puts all outputs of an input together.
+     * 
+     * @param dir Output directory
+     * @param fileName Name of the input file
+     * @param levels Levels of subdirectories, 0 to 4
+     * @return Directory for the outputs of the file
+     */
+    public static Path shardDirectory(Path dir, String fileName, int levels) {
+        if (levels <= 0) {
+            return dir;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(fileName.getBytes(StandardCharsets.UTF_8));
+        int hash = (int) crc.getValue();
+        Path shard = dir;
+        for (int level = 0; level < Math.min(levels, Integer.BYTES); level++) {
+            shard = shard.resolve(String.format("%02x", (hash >>> (24 - 8 * level)) & 0xff));
+        }
+        return shard;
+    }
+    
+    /**
+     * Load the manifest of the output directory, or process without one if it cannot be
+     * read, so every file is processed
+     */
+    private static RunManifest openManifest(Path outputDir) {
+        try {
+            RunManifest manifest = RunManifest.open(outputDir);
+            logger.info("Loaded manifest with {} processed input(s)", manifest.size());
+            return manifest;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not open manifest in {}, processing all files: {}", outputDir, e.getMessage());
+            return null;
+        }
+    }
+    
+    private static void closeManifest(RunManifest manifest) {
+        try {
+            manifest.close();
+        } catch (IOException e) {
+            logger.warn("Could not close manifest: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Process one file of the input directory, logging instead of throwing if it fails.
+     * With a manifest, the processed file is recorded under its fingerprint.
+     * 
+     * @param outputDir Directory for the outputs of the file
+     * @param fingerprint Fingerprint of the file, if there is a manifest
+     * @return Whether the file was processed successfully
+     */
+    private boolean processInputFile(Path csvFile, Path outputDir, RunManifest manifest,
+                                     RunManifest.Fingerprint fingerprint) {
+        try {
+            Files.createDirectories(outputDir);
+            List<Path> outputs = processFile(csvFile, outputDir);
+            if (manifest != null) {
+                record(manifest, fingerprint, outputs, csvFile);
+            }
+            logger.info("Successfully processed: {}", csvFile.getFileName());
+            return true;
+        } catch (Exception e) {
+            logger.error("Error processing file {}: {}", csvFile.getFileName(), e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    private static void record(RunManifest manifest, RunManifest.Fingerprint fingerprint, List<Path> outputs,
+                               Path csvFile) {
+        try {
+            manifest.record(fingerprint, outputs);
+        } catch (IOException e) {
+            logger.warn("Could not record {} in manifest, it will be processed again: {}",
+                    csvFile.getFileName(), e.getMessage());
+        }
+    }
+    
+    /**
+     * Process a single CSV file. Messages an earlier run wrote for the file are deleted
+     * first, so only the messages of this run are left. A {@code .csv.gz} file next to a
+     * plain file of the same name is rejected, as both would be written to the same messages;
+     * the plain file is processed.
      * 
      * @param csvFile Path to the CSV file
      * @param outputDir Output directory for generated XML
+     * @return Generated message files, empty if the file has no records
      * @throws IOException if file operations fail
+     * @throws IllegalStateException if the file is compressed and its plain file exists
      */
-    public void processFile(Path csvFile, Path outputDir) throws IOException {
+    public List<Path> processFile(Path csvFile, Path outputDir) throws IOException {
+        if (CsvParserService.isGzip(csvFile)) {
+            String fileName = csvFile.getFileName().toString();
+            Path plainFile = csvFile.resolveSibling(fileName.substring(0, fileName.length() - ".gz".length()));
+            if (Files.isRegularFile(plainFile)
+                    && InputFiles.filter(plainFile.getFileSystem(), properties.getInput().getFileGlob()).test(plainFile)) {
+                throw new IllegalStateException("Output of " + fileName + " would overwrite that of "
+                        + plainFile.getFileName() + ", which is processed instead");
+            }
+        }
         logger.info("Parsing CSV file: {}", csvFile.getFileName());
         
-        // Parse CSV file
-        List<PaymentRecord> records = csvParserService.parseCsvFile(csvFile);
-        logger.info("Parsed {} payment record(s)", records.size());
+        PaymentBuilderProperties.Output output = properties.getOutput();
+        long maxTransactions = Math.max(0, output.getMaxTransactionsPerMessage());
+        long maxBytes = output.getMaxMessageSize() != null ? output.getMaxMessageSize().toBytes() : 0;
+        long checkpointInterval = output.getCheckpointInterval() != null ? output.getCheckpointInterval().toBytes() : 0;
+        String outputFileName = getOutputFileName(csvFile);
+        if (checkpointInterval > 0 && maxTransactions == 0 && maxBytes == 0 && !output.isGzip()
+                && !CsvParserService.isGzip(csvFile) && Files.size(csvFile) >= checkpointInterval) {
+            deletePreviousOutputs(outputDir, outputFileName, outputDir.resolve(outputFileName));
+            return writeCheckpointedMessage(csvFile, outputDir, checkpointInterval);
+        }
+        deletePreviousOutputs(outputDir, outputFileName, null);
         
-        if (records.isEmpty()) {
-            logger.warn("No records found in file: {}", csvFile.getFileName());
-            return;
+        // Records are parsed lazily and written as they arrive; the group header totals
+        // are backpatched at the end, so no record list is held in memory
+        try (Stream<CompactPaymentRecord> recordStream = csvParserService.streamPayments(csvFile)) {
+            Iterator<CompactPaymentRecord> records = recordStream.iterator();
+            if (!records.hasNext()) {
+                logger.warn("No records found in file: {}", csvFile.getFileName());
+                return List.of();
+            }
+            
+            if (maxTransactions > 0 || maxBytes > 0) {
+                return writeSplitMessages(records, csvFile, outputDir, maxTransactions, maxBytes, output);
+            }
+            if (output.isGzip()) {
+                return writeCompressedMessage(records, csvFile, outputDir, output);
+            }
+            
+            Path outputFile = outputDir.resolve(outputFileName);
+            long recordCount;
+            try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                recordCount = messageGeneratorService.writePaymentMessage(records, channel);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(outputFile);
+                throw e;
+            }
+            logger.info("Parsed {} payment record(s)", recordCount);
+            logger.info("Generated payment message: {}", outputFile.getFileName());
+            return List.of(outputFile);
+        }
+    }
+    
+    /**
+     * Delete the messages an earlier run wrote for the same input: the unsplit message and
+     * its numbered parts, plain or compressed. A rerun may split differently or into fewer
+     * parts, and each file left behind would be a complete message delivered twice. Parts
+     * are committed in order from 1, so probing stops at the first number without a file.
+     * 
+     * @param outputFileName Name of the unsplit plain message
+     * @param keep Output this run continues writing, or null
+     */
+    private static void deletePreviousOutputs(Path outputDir, String outputFileName, Path keep) throws IOException {
+        String baseName = outputFileName.substring(0, outputFileName.length() - ".xml".length());
+        List<Path> previous = new ArrayList<>();
+        previous.add(outputDir.resolve(outputFileName));
+        previous.add(outputDir.resolve(outputFileName + ".gz"));
+        for (int part = 1; ; part++) {
+            Path plain = outputDir.resolve(String.format("%s_%04d.xml", baseName, part));
+            Path compressed = outputDir.resolve(plain.getFileName() + ".gz");
+            if (!Files.exists(plain) && !Files.exists(compressed)) {
+                break;
+            }
+            previous.add(plain);
+            previous.add(compressed);
+        }
+        for (Path file : previous) {
+            if (!file.equals(keep) && Files.deleteIfExists(file)) {
+                logger.info("Deleted output of an earlier run: {}", file.getFileName());
+            }
+        }
+    }
+    
+    /**
+     * Convert the records appended to a CSV file since the last call into incremental
+     * messages {@code <name>_pain013_000001.xml}, {@code _000002.xml} and so on, of at
+     * most {@code input.tail-max-records} transactions each, gzip-compressed as
+     * {@code _000001.xml.gz} with {@code output.gzip}. Only complete lines after the position
+     * committed in the file's {@link TailState} are parsed, so the converted prefix is never
+     * read again. Records that do not fill a message are left for a later call unless flushed.
+     * 
+     * @param csvFile Append-only CSV file, not compressed
+     * @param outputDir Output directory, also holding the committed position
+     * @param flush Whether to write the remaining records to a message that is not full
+     * @return Messages written, in order
+     * @throws IOException if the file cannot be read or a message cannot be written
+     */
+    public List<Path> processAppendedRecords(Path csvFile, Path outputDir, boolean flush) throws IOException {
+        int maxRecords = Math.max(1, properties.getInput().getTailMaxRecords());
+        PaymentBuilderProperties.Output output = properties.getOutput();
+        String extension = output.isGzip() ? ".xml.gz" : ".xml";
+        String baseName = getOutputFileName(csvFile);
+        baseName = baseName.substring(0, baseName.length() - ".xml".length());
+        TailState state = TailState.load(outputDir, csvFile);
+        // A run killed between committing a message and renaming it leaves only the rename to do,
+        // also if output.gzip was changed since
+        for (String committedExtension : List.of(".xml", ".xml.gz")) {
+            Path committed = tailMessage(outputDir, baseName, state.sequence(), committedExtension);
+            Path committedPart = committed.resolveSibling(committed.getFileName() + ".part");
+            if (Files.exists(committedPart)) {
+                Files.move(committedPart, committed, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
         }
         
-        // Generate payment message XML
-        String xmlContent = messageGeneratorService.generatePaymentMessage(records);
+        List<Path> messages = new ArrayList<>();
+        try (CsvParserService.RecordCursor records = csvParserService.tailPayments(csvFile, state.offset(),
+                state.lineNumber())) {
+            List<CompactPaymentRecord> batch = new ArrayList<>();
+            while (true) {
+                while (batch.size() < maxRecords && records.hasNext()) {
+                    batch.add(records.next());
+                }
+                if (batch.isEmpty() || batch.size() < maxRecords && !flush) {
+                    return messages;
+                }
+                TailState next = state.next(records.offset(), records.lineNumber());
+                Path message = tailMessage(outputDir, baseName, next.sequence(), extension);
+                Path part = message.resolveSibling(message.getFileName() + ".part");
+                try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    if (output.isGzip()) {
+                        try (GZIPOutputStream gzip = gzip(Channels.newOutputStream(channel), output)) {
+                            messageGeneratorService.writePaymentMessage(batch, Channels.newChannel(gzip));
+                            // Closing would close the channel, which must be forced first
+                            gzip.finish();
+                            channel.force(false);
+                        }
+                    } else {
+                        messageGeneratorService.writePaymentMessage(batch, channel);
+                        channel.force(false);
+                    }
+                }
+                next.save(outputDir, csvFile);
+                Files.move(part, message, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logger.info("Generated incremental payment message: {} ({} transaction(s), up to line {})",
+                        message.getFileName(), batch.size(), next.lineNumber() - 1);
+                messages.add(message);
+                state = next;
+                batch.clear();
+            }
+        }
+    }
+    
+    private static Path tailMessage(Path outputDir, String baseName, long sequence, String extension) {
+        return outputDir.resolve(String.format("%s_%06d%s", baseName, sequence, extension));
+    }
+    
+    /**
+     * Write a message with checkpoints, continuing from the checkpoint left next to the
+     * output by an earlier run that was killed, if it is still valid. A run that fails
+     * with an exception removes the output and its checkpoint as usual; only a run that
+     * did not get to clean up leaves something to continue.
+     */
+    private List<Path> writeCheckpointedMessage(Path csvFile, Path outputDir, long interval) throws IOException {
+        Path outputFile = outputDir.resolve(getOutputFileName(csvFile));
+        MessageCheckpoint start = MessageCheckpoint.start(csvFile);
+        MessageCheckpoint resumed = MessageCheckpoint.load(outputFile, start);
+        if (resumed == null) {
+            MessageCheckpoint.delete(outputFile);
+        }
+        MessageCheckpoint from = resumed != null ? resumed : start;
+        try (CsvParserService.RecordCursor records = csvParserService.openPayments(csvFile, from.inputOffset(),
+                from.lineNumber())) {
+            if (resumed == null && !records.hasNext()) {
+                logger.warn("No records found in file: {}", csvFile.getFileName());
+                return List.of();
+            }
+            if (resumed != null) {
+                logger.info("Resuming {} at line {} after {} transaction(s)", csvFile.getFileName(),
+                        resumed.lineNumber(), resumed.numberOfTransactions());
+            }
+            
+            long recordCount;
+            try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                recordCount = messageGeneratorService.writePaymentMessage(records, channel, outputFile, from, interval);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(outputFile);
+                MessageCheckpoint.delete(outputFile);
+                throw e;
+            }
+            MessageCheckpoint.delete(outputFile);
+            logger.info("Parsed {} payment record(s)", recordCount);
+            logger.info("Generated payment message: {}", outputFile.getFileName());
+            return List.of(outputFile);
+        }
+    }
+    
+    /**
+     * Write a gzip-compressed message. A compressed stream cannot be backpatched, so the
+     * records are read twice: this pass only computes the group header totals, and the
+     * message is written from a second pass over the file.
+     */
+    private List<Path> writeCompressedMessage(Iterator<CompactPaymentRecord> records, Path csvFile, Path outputDir,
+                                        PaymentBuilderProperties.Output output) throws IOException {
+        Iterable<CompactPaymentRecord> firstPass = () -> records;
+        GroupTotals totals = GroupTotals.of(firstPass);
+        Path outputFile = outputDir.resolve(getOutputFileName(csvFile) + ".gz");
+        try (Stream<CompactPaymentRecord> recordStream = csvParserService.streamPayments(csvFile);
+             WritableByteChannel channel = Channels.newChannel(openGzip(outputFile, output))) {
+            messageGeneratorService.writePaymentMessage(totals, recordStream.iterator(), channel);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(outputFile);
+            throw e;
+        }
+        logger.info("Parsed {} payment record(s)", totals.getNumberOfTransactions());
+        logger.info("Generated payment message: {}", outputFile.getFileName());
+        return List.of(outputFile);
+    }
+    
+    /**
+     * Write records as numbered messages within the configured limits. With a transaction
+     * limit, runs of that many records are handed to a pool so several parts are written
+     * at a time while parsing continues; otherwise parts are written one after another.
+     */
+    private List<Path> writeSplitMessages(Iterator<CompactPaymentRecord> records, Path csvFile, Path outputDir,
+                                    long maxTransactions, long maxBytes, PaymentBuilderProperties.Output output)
+            throws IOException {
+        int parallelism = output.getParallelism();
+        SplitOutput split = new SplitOutput(outputDir, getOutputFileName(csvFile), output);
+        ExecutorService executor = maxTransactions > 0 && parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+        try {
+            if (executor == null) {
+                split.commit(split.write(records, maxTransactions, maxBytes));
+            } else {
+                Deque<Future<List<Path>>> inFlight = new ArrayDeque<>();
+                while (records.hasNext()) {
+                    List<CompactPaymentRecord> chunk = new ArrayList<>((int) Math.min(maxTransactions, 1 << 16));
+                    while (chunk.size() < maxTransactions && records.hasNext()) {
+                        chunk.add(records.next());
+                    }
+                    inFlight.add(executor.submit(() -> split.write(chunk.iterator(), 0, maxBytes)));
+                    if (inFlight.size() > parallelism) {
+                        split.commit(await(inFlight.poll()));
+                    }
+                }
+                while (!inFlight.isEmpty()) {
+                    split.commit(await(inFlight.poll()));
+                }
+            }
+            split.finish();
+        } catch (IOException | RuntimeException e) {
+            if (executor != null) {
+                shutdown(executor);
+            }
+            split.delete();
+            throw e;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        logger.info("Parsed {} payment record(s)", split.transactions.get());
+        logger.info("Generated {} payment message(s): {}", split.parts.size(),
+                split.parts.stream().map(Path::getFileName).toList());
+        return List.copyOf(split.parts);
+    }
+    
+    private static List<Path> await(Future<List<Path>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing payment messages", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Error writing payment messages", e.getCause());
+        }
+    }
+    
+    /**
+     * Stop the pool and wait for running parts, so no file is created after cleanup
+     */
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Parts of one split output. Parts are written to temporary files, possibly several
+     * at a time, and renamed in order to {@code _0001.xml}, {@code _0002.xml} and so on;
+     * an output that fits in one part keeps the unsplit name. For compressed output each
+     * finished part is compressed by the thread that wrote it, as its totals are only
+     * known once it has been written.
+     */
+    private final class SplitOutput {
         
-        // Write output file
-        String outputFileName = getOutputFileName(csvFile);
-        Path outputFile = outputDir.resolve(outputFileName);
-        Files.writeString(outputFile, xmlContent);
+        private final Path outputDir;
+        private final String fileName;
+        private final String baseName;
+        private final String extension;
+        private final PaymentBuilderProperties.Output output;
+        private final List<Path> temporary = Collections.synchronizedList(new ArrayList<>());
+        private final List<Path> parts = new ArrayList<>();
+        private final AtomicLong transactions = new AtomicLong();
+        private final AtomicInteger nextTemporary = new AtomicInteger();
         
-        logger.info("Generated payment message: {}", outputFile.getFileName());
+        SplitOutput(Path outputDir, String fileName, PaymentBuilderProperties.Output output) {
+            this.outputDir = outputDir;
+            this.baseName = fileName.substring(0, fileName.lastIndexOf('.'));
+            this.extension = output.isGzip() ? ".xml.gz" : ".xml";
+            this.fileName = baseName + extension;
+            this.output = output;
+        }
+        
+        /**
+         * Write records to temporary part files; safe to call from several threads
+         */
+        List<Path> write(Iterator<? extends CompactPaymentRecord> records, long maxTransactions, long maxBytes)
+                throws IOException {
+            List<Path> files = new ArrayList<>();
+            List<Long> counts = messageGeneratorService.writePaymentMessages(records, maxTransactions, maxBytes, part -> {
+                Path file = outputDir.resolve(baseName + "_" + nextTemporary.incrementAndGet() + ".xml.part");
+                temporary.add(file);
+                files.add(file);
+                return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            });
+            counts.forEach(transactions::addAndGet);
+            return output.isGzip() ? compress(files) : files;
+        }
+        
+        private List<Path> compress(List<Path> files) throws IOException {
+            List<Path> compressed = new ArrayList<>(files.size());
+            for (Path file : files) {
+                Path target = outputDir.resolve(baseName + "_" + nextTemporary.incrementAndGet() + ".xml.gz.part");
+                temporary.add(target);
+                try (OutputStream out = openGzip(target, output)) {
+                    Files.copy(file, out);
+                }
+                Files.delete(file);
+                temporary.remove(file);
+                compressed.add(target);
+            }
+            return compressed;
+        }
+        
+        /**
+         * Give written parts the next part numbers
+         */
+        void commit(List<Path> files) throws IOException {
+            for (Path file : files) {
+                Path part = outputDir.resolve(String.format("%s_%04d%s", baseName, parts.size() + 1, extension));
+                Files.move(file, part, StandardCopyOption.REPLACE_EXISTING);
+                temporary.remove(file);
+                parts.add(part);
+            }
+        }
+        
+        void finish() throws IOException {
+            if (parts.size() == 1) {
+                Path single = outputDir.resolve(fileName);
+                Files.move(parts.get(0), single, StandardCopyOption.REPLACE_EXISTING);
+                parts.set(0, single);
+            }
+        }
+        
+        void delete() {
+            List<Path> files = new ArrayList<>(parts);
+            synchronized (temporary) {
+                files.addAll(temporary);
+            }
+            for (Path file : files) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Could not delete incomplete output {}: {}", file, e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Open a gzip stream writing to a file with the configured level and buffer size
+     */
+    private static OutputStream openGzip(Path file, PaymentBuilderProperties.Output output) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        try {
+            return gzip(out, output);
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Compress to a stream with the configured level and buffer size
+     */
+    private static GZIPOutputStream gzip(OutputStream out, PaymentBuilderProperties.Output output) throws IOException {
+        return new GZIPOutputStream(out, (int) output.getGzipBufferSize().toBytes()) {
+            {
+                def.setLevel(output.getGzipLevel());
+            }
+        };
+    }
+    
+    /**
+     * Whether a file is an input CSV file, plain or gzip-compressed
+     */
+    static boolean isCsvFile(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".csv") || name.endsWith(".csv.gz");
     }
     
     /**
      * Generate output file name from input file name
      * 
-     * @param inputFile Input CSV file path
-     * @return Output XML file name
+     * @param inputFile Input CSV file path, possibly ending in {@code .gz}
+     * @return Output XML file name, without the {@code .gz} of compressed output
      */
     private String getOutputFileName(Path inputFile) {
         String fileName = inputFile.getFileName().toString();
+        if (CsvParserService.isGzip(inputFile)) {
+            fileName = fileName.substring(0, fileName.length() - ".gz".length());
+        }
         String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
         return baseName + "_pain013.xml";
     }
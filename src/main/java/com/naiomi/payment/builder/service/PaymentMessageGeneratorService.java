@@ -1,12 +1,38 @@
 package com.naiomi.payment.builder.service;
 
-import com.naiomi.payment.builder.model.PaymentRecord;
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.model.Payment;
+import com.naiomi.payment.builder.model.PaymentBatch;
+import com.naiomi.payment.builder.xml.ByteArrayChannel;
+import com.naiomi.payment.builder.xml.ByteBufferPool;
+import com.naiomi.payment.builder.xml.GroupTotals;
+import com.naiomi.payment.builder.xml.IdGenerator;
+import com.naiomi.payment.builder.xml.Pain013Writer;
+import com.naiomi.payment.builder.xml.RandomIdGenerator;
+import com.naiomi.payment.builder.xml.SequentialIdGenerator;
+import com.naiomi.payment.builder.xml.Utf8Sink;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Service for generating ISO20022 pain.013 XML payment messages
@@ -14,243 +40,500 @@ import java.util.UUID;
 @Service
 public class PaymentMessageGeneratorService {
     
-    private static final String NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pain.013.001.11";
-    private static final DateTimeFormatter XML_DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
-    private static final DateTimeFormatter XML_DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int POOLED_BUFFERS = 16;
+    private static final int FRAGMENT_RECORDS = 1024;
+    private static final int FRAGMENT_CAPACITY = 1024 * 1024;
+    
+    private final Pain013Writer writer;
+    private final ByteBufferPool bufferPool = new ByteBufferPool(WRITE_BUFFER_SIZE, POOLED_BUFFERS);
+    private final int parallelism;
+    private final ForkJoinPool fragmentPool;
+    private final MessagePipeline pipeline;
+    
+    public PaymentMessageGeneratorService(PaymentBuilderProperties properties) {
+        PaymentBuilderProperties.Output output = properties.getOutput();
+        boolean compact = output.getFormat() == PaymentBuilderProperties.OutputFormat.COMPACT;
+        this.writer = new Pain013Writer(idGenerator(output), compact);
+        this.parallelism = output.getParallelism();
+        // Worker threads are only started once a message has more than one fragment
+        this.fragmentPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        this.pipeline = output.isPipelined()
+                ? new MessagePipeline(this::writeFragment, fragmentPool, FRAGMENT_RECORDS, FRAGMENT_CAPACITY,
+                        output.getPipelineQueueCapacity())
+                : null;
+    }
+    
+    /**
+     * Stop the worker threads of the fragment pool; fragments being generated are finished first
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (fragmentPool != null) {
+            fragmentPool.shutdown();
+        }
+    }
     
     /**
      * Generate ISO20022 pain.013 payment activation request message
      * 
-     * @param records List of payment records
+     * @param records List of payment records, either PaymentRecord beans or compact records
      * @return XML string
      */
-    public String generatePaymentMessage(List<PaymentRecord> records) {
-        StringBuilder xml = new StringBuilder();
-        
-        // XML Declaration
-        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-        
-        // Document root
-        xml.append("<Document xmlns=\"").append(NAMESPACE).append("\">\n");
-        xml.append("  <CdtrPmtActvtnReq>\n");
-        
-        // Group Header
-        appendGroupHeader(xml, records.size());
-        
-        // Payment Information
-        appendPaymentInformation(xml, records);
-        
-        xml.append("  </CdtrPmtActvtnReq>\n");
-        xml.append("</Document>");
-        
-        return xml.toString();
+    public String generatePaymentMessage(List<? extends Payment> records) {
+        return generatePaymentMessage(GroupTotals.of(records), records);
     }
     
     /**
-     * Append group header to XML
+     * Generate ISO20022 pain.013 payment activation request message from a columnar batch
+     * 
+     * @param batch Batch of payments
+     * @return XML string
      */
-    private void appendGroupHeader(StringBuilder xml, int numberOfTransactions) {
-        String msgId = "MSG-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-        String creationDateTime = LocalDateTime.now().format(XML_DATETIME_FORMATTER);
-        
-        xml.append("    <GrpHdr>\n");
-        xml.append("      <MsgId>").append(msgId).append("</MsgId>\n");
-        xml.append("      <CreDtTm>").append(creationDateTime).append("</CreDtTm>\n");
-        xml.append("      <NbOfTxs>").append(numberOfTransactions).append("</NbOfTxs>\n");
-        xml.append("      <InitgPty>\n");
-        xml.append("        <Nm>Payment Builder System</Nm>\n");
-        xml.append("      </InitgPty>\n");
-        xml.append("    </GrpHdr>\n");
+    public String generateBatchMessage(PaymentBatch batch) {
+        return generatePaymentMessage(GroupTotals.of(batch), batch);
     }
     
     /**
-     * Append payment information section
+     * Write ISO20022 pain.013 payment activation request message to a stream.
+     * The document is encoded as UTF-8 into a pooled buffer that is drained whenever
+     * it fills, so memory use does not depend on the number of records.
+     * The bytes are identical to the UTF-8 encoding of {@link #generatePaymentMessage(List)}.
+     * The stream is flushed but not closed.
+     * 
+     * @param records List of payment records
+     * @param out Destination stream
+     * @throws IOException if writing fails
      */
-    private void appendPaymentInformation(StringBuilder xml, List<PaymentRecord> records) {
-        String pmtInfId = "PMTINF-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-        
-        xml.append("    <PmtInf>\n");
-        xml.append("      <PmtInfId>").append(pmtInfId).append("</PmtInfId>\n");
-        xml.append("      <PmtMtd>TRF</PmtMtd>\n");
-        
-        // Credit Transfer Transaction Information for each record
-        for (PaymentRecord record : records) {
-            appendCreditTransferTransaction(xml, record);
-        }
-        
-        xml.append("    </PmtInf>\n");
+    public void writePaymentMessage(List<? extends Payment> records, OutputStream out) throws IOException {
+        writePaymentMessage(GroupTotals.of(records), records, Channels.newChannel(out));
+        out.flush();
     }
     
     /**
-     * Append credit transfer transaction information
+     * Write ISO20022 pain.013 payment activation request message to a channel
+     * 
+     * @param records List of payment records
+     * @param channel Destination channel, left open
+     * @throws IOException if writing fails
      */
-    private void appendCreditTransferTransaction(StringBuilder xml, PaymentRecord record) {
-        xml.append("      <CdtTrfTxInf>\n");
-        
-        // Payment Identification
-        appendPaymentIdentification(xml, record);
-        
-        // Payment Type Information
-        if (record.getCategoryPurposeCode() != null || record.getPurposeCode() != null) {
-            appendPaymentTypeInformation(xml, record);
-        }
-        
-        // Amount
-        appendAmount(xml, record);
-        
-        // Charge Bearer
-        if (record.getChargeBearer() != null) {
-            xml.append("        <ChrgBr>").append(record.getChargeBearer()).append("</ChrgBr>\n");
-        }
-        
-        // Creditor Agent (Bank)
-        if (record.getCreditorBIC() != null) {
-            appendCreditorAgent(xml, record);
-        }
-        
-        // Creditor (Payee)
-        appendCreditor(xml, record);
-        
-        // Creditor Account
-        appendCreditorAccount(xml, record);
-        
-        // Remittance Information
-        if (record.getRemittanceInformationUnstructured() != null || 
-            record.getRemittanceInformationStructured() != null) {
-            appendRemittanceInformation(xml, record);
-        }
-        
-        xml.append("      </CdtTrfTxInf>\n");
+    public void writePaymentMessage(List<? extends Payment> records, WritableByteChannel channel) throws IOException {
+        writePaymentMessage(GroupTotals.of(records), records, channel);
     }
     
     /**
-     * Append payment identification
+     * Write ISO20022 pain.013 payment activation request message for a columnar batch to a stream
+     * 
+     * @param batch Batch of payments
+     * @param out Destination stream, flushed but not closed
+     * @throws IOException if writing fails
      */
-    private void appendPaymentIdentification(StringBuilder xml, PaymentRecord record) {
-        xml.append("        <PmtId>\n");
-        
-        if (record.getInstructionId() != null) {
-            xml.append("          <InstrId>").append(escapeXml(record.getInstructionId())).append("</InstrId>\n");
+    public void writeBatchMessage(PaymentBatch batch, OutputStream out) throws IOException {
+        writePaymentMessage(GroupTotals.of(batch), batch, Channels.newChannel(out));
+        out.flush();
+    }
+    
+    /**
+     * Write ISO20022 pain.013 payment activation request message in a single pass over
+     * records that are only known as they arrive, e.g. straight from the CSV parser.
+     * NbOfTxs and CtrlSum are written as fixed-width blank regions in the group header
+     * and backpatched with positional writes once the last record is out; the padding
+     * left after each element is whitespace between elements. Memory use is constant.
+     * When pipelined, records are pulled from the iterator on a separate thread while
+     * earlier ones are encoded and written.
+     * 
+     * @param records Records to write, consumed once
+     * @param channel Destination file channel, written from its current position and left open
+     * @return Number of transactions written
+     * @throws IOException if writing fails
+     */
+    public long writePaymentMessage(Iterator<? extends Payment> records, FileChannel channel) throws IOException {
+        long start = channel.position();
+        GroupTotals totals = GroupTotals.deferred();
+        if (pipeline == null) {
+            writePaymentMessage(totals, once(records), channel);
+        } else {
+            ByteBuffer buffer = bufferPool.acquire();
+            try {
+                Utf8Sink sink = new Utf8Sink(buffer, channel);
+                writer.writeHeader(sink, totals);
+                sink.flush();
+                pipeline.write(records, totals, channel);
+                writer.writeTrailer(sink);
+                sink.flush();
+            } finally {
+                bufferPool.release(buffer);
+            }
         }
-        
-        String endToEndId = record.getEndToEndId() != null ? 
-            record.getEndToEndId() : 
-            "E2E-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-        xml.append("          <EndToEndId>").append(escapeXml(endToEndId)).append("</EndToEndId>\n");
-        
-        xml.append("        </PmtId>\n");
+        Pain013Writer.backpatch(channel, start, totals);
+        return totals.getNumberOfTransactions();
     }
     
     /**
-     * Append payment type information
+     * Write ISO20022 pain.013 payment activation request message in a single pass like
+     * {@link #writePaymentMessage(Iterator, FileChannel)}, saving a checkpoint whenever at
+     * least the given number of input bytes were consumed since the last one, so the message
+     * can be continued by a later call if this one is killed. Before a checkpoint is saved,
+     * the transactions written so far are forced to disk.
+     * 
+     * @param records Records to write, opened at the input offset of {@code from}
+     * @param channel Destination file channel, written from the start or, when resuming,
+     *                from the checkpointed position; bytes after it are discarded
+     * @param outputFile File of the channel, next to which checkpoints are saved
+     * @param from Checkpoint to continue from, or the start of the input
+     * @param interval Input bytes between checkpoints
+     * @return Number of transactions in the message, including those written before the checkpoint
+     * @throws IOException if writing fails
      */
-    private void appendPaymentTypeInformation(StringBuilder xml, PaymentRecord record) {
-        xml.append("        <PmtTpInf>\n");
-        
-        if (record.getCategoryPurposeCode() != null) {
-            xml.append("          <CtgyPurp>\n");
-            xml.append("            <Cd>").append(record.getCategoryPurposeCode()).append("</Cd>\n");
-            xml.append("          </CtgyPurp>\n");
+    long writePaymentMessage(CsvParserService.RecordCursor records, FileChannel channel, Path outputFile,
+                             MessageCheckpoint from, long interval) throws IOException {
+        boolean resuming = from.inputOffset() > 0;
+        channel.truncate(from.outputPosition());
+        channel.position(from.outputPosition());
+        GroupTotals totals = resuming
+                ? GroupTotals.resumed(from.numberOfTransactions(), from.controlSum(),
+                        from.numberOfTransactionsPosition(), from.controlSumPosition())
+                : GroupTotals.deferred();
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            Utf8Sink sink = new Utf8Sink(buffer, channel);
+            if (!resuming) {
+                writer.writeHeader(sink, totals);
+            }
+            MessageCheckpoint checkpoint = from;
+            while (true) {
+                writeInterval(sink, totals, until(records, checkpoint.inputOffset() + interval), channel);
+                if (!records.hasNext()) {
+                    break;
+                }
+                channel.force(false);
+                checkpoint = checkpoint.advance(records.offset(), records.lineNumber(),
+                        totals.getNumberOfTransactions(), totals.getControlSum(), channel.position(),
+                        totals.getNumberOfTransactionsPosition(), totals.getControlSumPosition());
+                checkpoint.save(outputFile);
+            }
+            writer.writeTrailer(sink);
+            sink.flush();
+        } finally {
+            bufferPool.release(buffer);
         }
-        
-        xml.append("        </PmtTpInf>\n");
+        Pain013Writer.backpatch(channel, 0, totals);
+        return totals.getNumberOfTransactions();
     }
     
     /**
-     * Append amount information
+     * Write ISO20022 pain.013 payment activation request message with totals computed
+     * beforehand, e.g. in an earlier pass over the same records, to a destination that
+     * cannot be backpatched such as a compressing stream. Memory use is constant.
+     * 
+     * @param totals Totals of the records, as computed by {@link GroupTotals#of(Iterable)}
+     * @param records Records to write, consumed once
+     * @param channel Destination channel, left open
+     * @throws IOException if writing fails
+     * @throws IllegalStateException if the records do not add up to the totals
      */
-    private void appendAmount(StringBuilder xml, PaymentRecord record) {
-        String currency = record.getCurrency() != null ? record.getCurrency() : "EUR";
-        
-        xml.append("        <Amt>\n");
-        xml.append("          <InstdAmt Ccy=\"").append(currency).append("\">");
-        xml.append(record.getInstructedAmount() != null ? record.getInstructedAmount().toString() : "0.00");
-        xml.append("</InstdAmt>\n");
-        xml.append("        </Amt>\n");
+    public void writePaymentMessage(GroupTotals totals, Iterator<? extends Payment> records,
+                                    WritableByteChannel channel) throws IOException {
+        if (totals.isDeferred()) {
+            throw new IllegalArgumentException("Totals must be computed before writing");
+        }
+        // Counted without placeholders, like the totals it is compared with
+        GroupTotals written = GroupTotals.of(List.of());
+        Iterator<Payment> counted = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+            
+            @Override
+            public Payment next() {
+                Payment record = records.next();
+                written.add(record);
+                return record;
+            }
+        };
+        writePaymentMessage(totals, once(counted), channel);
+        if (written.getNumberOfTransactions() != totals.getNumberOfTransactions()
+                || written.getControlSum().compareTo(totals.getControlSum()) != 0) {
+            throw new IllegalStateException("Records do not match the precomputed totals: "
+                    + written.getNumberOfTransactions() + " written, " + totals.getNumberOfTransactions() + " expected");
+        }
     }
     
     /**
-     * Append creditor agent (bank) information
+     * Write records as a sequence of messages, starting a new message whenever the next
+     * transaction would exceed either limit. Each message is written in a single pass
+     * with backpatched totals, like {@link #writePaymentMessage(Iterator, FileChannel)}.
+     * A message always holds at least one transaction, even if that alone exceeds the
+     * byte limit. An empty iterator produces no message.
+     * 
+     * @param records Records to write, consumed once
+     * @param maxTransactions Maximum transactions per message, or 0 for no limit
+     * @param maxBytes Maximum size of a message in bytes, or 0 for no limit
+     * @param channels Opens the channel for each message; closed after the message is written
+     * @return Number of transactions written to each message, in order
+     * @throws IOException if writing fails
      */
-    private void appendCreditorAgent(StringBuilder xml, PaymentRecord record) {
-        xml.append("        <CdtrAgt>\n");
-        xml.append("          <FinInstnId>\n");
-        xml.append("            <BICFI>").append(record.getCreditorBIC()).append("</BICFI>\n");
-        xml.append("          </FinInstnId>\n");
-        xml.append("        </CdtrAgt>\n");
+    public List<Long> writePaymentMessages(Iterator<? extends Payment> records, long maxTransactions, long maxBytes,
+                                           MessageChannels channels) throws IOException {
+        List<Long> transactionCounts = new ArrayList<>();
+        ByteBuffer buffer = bufferPool.acquire();
+        ByteBuffer transactionBuffer = bufferPool.acquire();
+        try {
+            // With a byte limit each transaction is encoded here first, so its size is known before it is placed
+            ByteArrayChannel transaction = new ByteArrayChannel(1024);
+            Utf8Sink transactionSink = new Utf8Sink(transactionBuffer, transaction);
+            Payment pending = null;
+            while (pending != null || records.hasNext()) {
+                try (FileChannel channel = channels.open(transactionCounts.size() + 1)) {
+                    long start = channel.position();
+                    Utf8Sink sink = new Utf8Sink(buffer, channel);
+                    GroupTotals totals = GroupTotals.deferred();
+                    writer.writeHeader(sink, totals);
+                    while (maxTransactions <= 0 || totals.getNumberOfTransactions() < maxTransactions) {
+                        if (maxBytes <= 0) {
+                            if (!records.hasNext()) {
+                                break;
+                            }
+                            Payment record = records.next();
+                            writer.writeTransaction(sink, record);
+                            totals.add(record);
+                            continue;
+                        }
+                        if (pending == null) {
+                            if (!records.hasNext()) {
+                                break;
+                            }
+                            pending = records.next();
+                            writer.writeTransaction(transactionSink, pending);
+                            transactionSink.flush();
+                        }
+                        if (totals.getNumberOfTransactions() > 0
+                                && sink.position() + transaction.size() + writer.trailerLength() > maxBytes) {
+                            break;
+                        }
+                        sink.write(transaction.bytes(), 0, transaction.size());
+                        totals.add(pending);
+                        transaction.reset();
+                        pending = null;
+                    }
+                    writer.writeTrailer(sink);
+                    sink.flush();
+                    Pain013Writer.backpatch(channel, start, totals);
+                    transactionCounts.add(totals.getNumberOfTransactions());
+                }
+            }
+            return transactionCounts;
+        } finally {
+            bufferPool.release(buffer);
+            bufferPool.release(transactionBuffer);
+        }
+    }
+    
+    private String generatePaymentMessage(GroupTotals totals, Iterable<? extends Payment> records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writePaymentMessage(totals, records, Channels.newChannel(out));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
     }
     
     /**
-     * Append creditor (payee) information
+     * Write the message through a pooled buffer, draining it to the channel whenever it fills.
+     * With more than one worker thread, transactions are generated in parallel fragments.
      */
-    private void appendCreditor(StringBuilder xml, PaymentRecord record) {
-        xml.append("        <Cdtr>\n");
-        xml.append("          <Nm>").append(escapeXml(record.getCreditorName())).append("</Nm>\n");
-        
-        if (record.getCreditorAddressLine1() != null || record.getCreditorCountry() != null) {
-            xml.append("          <PstlAdr>\n");
-            
-            if (record.getCreditorCountry() != null) {
-                xml.append("            <Ctry>").append(record.getCreditorCountry()).append("</Ctry>\n");
+    private void writePaymentMessage(GroupTotals totals, Iterable<? extends Payment> records,
+                                     WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            Utf8Sink sink = new Utf8Sink(buffer, channel);
+            if (fragmentPool == null) {
+                writer.writeMessage(sink, totals, records);
+            } else {
+                writer.writeHeader(sink, totals);
+                writeTransactions(sink, totals, records.iterator(), channel);
+                writer.writeTrailer(sink);
             }
-            
-            if (record.getCreditorAddressLine1() != null) {
-                xml.append("            <AdrLine>").append(escapeXml(record.getCreditorAddressLine1())).append("</AdrLine>\n");
+            sink.flush();
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+    
+    /**
+     * Generate the CdtTrfTxInf elements in fragments of consecutive records, each encoded
+     * into its own buffer on the fragment pool, and write the finished fragments in record
+     * order with gathering writes. Records are taken from the iterator on the calling
+     * thread, which also accumulates deferred totals. At most twice the pool's parallelism
+     * fragments are in flight, and their buffers are reused, which bounds memory.
+     * A message that fits in one fragment is written directly to the sink.
+     */
+    private void writeTransactions(Utf8Sink sink, GroupTotals totals, Iterator<? extends Payment> records,
+                                   WritableByteChannel channel) throws IOException {
+        Deque<Future<ByteArrayChannel>> inFlight = new ArrayDeque<>();
+        Deque<ByteArrayChannel> spare = new ArrayDeque<>();
+        int maxInFlight = parallelism * 2;
+        try {
+            while (records.hasNext()) {
+                List<Payment> fragment = new ArrayList<>(FRAGMENT_RECORDS);
+                while (fragment.size() < FRAGMENT_RECORDS && records.hasNext()) {
+                    Payment record = records.next();
+                    fragment.add(record);
+                    if (totals.isDeferred()) {
+                        totals.add(record);
+                    }
+                }
+                if (inFlight.isEmpty() && !records.hasNext()) {
+                    for (Payment record : fragment) {
+                        writer.writeTransaction(sink, record);
+                    }
+                    return;
+                }
+                // Everything written to the sink so far precedes the fragments
+                sink.flush();
+                ByteArrayChannel target = spare.isEmpty() ? new ByteArrayChannel(FRAGMENT_CAPACITY) : spare.poll();
+                inFlight.add(fragmentPool.submit(() -> writeFragment(fragment, target)));
+                if (inFlight.size() >= maxInFlight) {
+                    gather(inFlight, spare, channel);
+                }
             }
-            
-            if (record.getCreditorAddressLine2() != null) {
-                xml.append("            <AdrLine>").append(escapeXml(record.getCreditorAddressLine2())).append("</AdrLine>\n");
+            while (!inFlight.isEmpty()) {
+                gather(inFlight, spare, channel);
             }
-            
-            xml.append("          </PstlAdr>\n");
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
         }
-        
-        xml.append("        </Cdtr>\n");
     }
     
     /**
-     * Append creditor account information
+     * Write the transactions of one checkpoint interval and flush them to the channel, so
+     * its position is the end of the last transaction
      */
-    private void appendCreditorAccount(StringBuilder xml, PaymentRecord record) {
-        xml.append("        <CdtrAcct>\n");
-        xml.append("          <Id>\n");
-        
-        if (record.getCreditorAccountIBAN() != null) {
-            xml.append("            <IBAN>").append(record.getCreditorAccountIBAN()).append("</IBAN>\n");
-        } else if (record.getCreditorAccountOther() != null) {
-            xml.append("            <Othr>\n");
-            xml.append("              <Id>").append(escapeXml(record.getCreditorAccountOther())).append("</Id>\n");
-            xml.append("            </Othr>\n");
+    private void writeInterval(Utf8Sink sink, GroupTotals totals, Iterator<? extends Payment> records,
+                               FileChannel channel) throws IOException {
+        if (pipeline != null) {
+            sink.flush();
+            pipeline.write(records, totals, channel);
+            return;
+        }
+        if (fragmentPool != null) {
+            writeTransactions(sink, totals, records, channel);
+        } else {
+            while (records.hasNext()) {
+                Payment record = records.next();
+                writer.writeTransaction(sink, record);
+                totals.add(record);
+            }
+        }
+        sink.flush();
+    }
+    
+    private ByteArrayChannel writeFragment(List<Payment> records, ByteArrayChannel target) throws IOException {
+        target.reset();
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            Utf8Sink sink = new Utf8Sink(buffer, target);
+            for (Payment record : records) {
+                writer.writeTransaction(sink, record);
+            }
+            sink.flush();
+            return target;
+        } finally {
+            bufferPool.release(buffer);
         }
-        
-        xml.append("          </Id>\n");
-        xml.append("        </CdtrAcct>\n");
     }
     
     /**
-     * Append remittance information
+     * Write the oldest fragment together with any finished fragments following it
      */
-    private void appendRemittanceInformation(StringBuilder xml, PaymentRecord record) {
-        xml.append("        <RmtInf>\n");
-        
-        if (record.getRemittanceInformationUnstructured() != null) {
-            xml.append("          <Ustrd>").append(escapeXml(record.getRemittanceInformationUnstructured())).append("</Ustrd>\n");
+    private static void gather(Deque<Future<ByteArrayChannel>> inFlight, Deque<ByteArrayChannel> spare,
+                               WritableByteChannel channel) throws IOException {
+        List<ByteArrayChannel> ready = new ArrayList<>();
+        ready.add(await(inFlight.poll()));
+        while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+            ready.add(await(inFlight.poll()));
+        }
+        ByteBuffer[] buffers = new ByteBuffer[ready.size()];
+        long remaining = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ready.get(i).asByteBuffer();
+            remaining += buffers[i].remaining();
+        }
+        if (channel instanceof GatheringByteChannel gathering) {
+            while (remaining > 0) {
+                remaining -= gathering.write(buffers);
+            }
+        } else {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+        spare.addAll(ready);
+    }
+    
+    private static ByteArrayChannel await(Future<ByteArrayChannel> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating payment message", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Error generating payment message", e.getCause());
         }
-        
-        xml.append("        </RmtInf>\n");
+    }
+    
+    private static IdGenerator idGenerator(PaymentBuilderProperties.Output output) {
+        return switch (output.getIdGenerator()) {
+            case RANDOM -> new RandomIdGenerator();
+            case SEQUENTIAL -> output.getNodeId() != null
+                    ? new SequentialIdGenerator(output.getNodeId())
+                    : SequentialIdGenerator.withRandomNode();
+        };
     }
     
     /**
-     * Escape XML special characters
+     * Records up to the first known position at or beyond an input offset
      */
-    private String escapeXml(String text) {
-        if (text == null) {
-            return "";
-        }
-        return text.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&apos;");
+    private static Iterator<Payment> until(CsvParserService.RecordCursor records, long offset) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return records.offset() < offset && records.hasNext();
+            }
+            
+            @Override
+            public Payment next() {
+                return records.next();
+            }
+        };
+    }
+    
+    private static <T> Iterable<T> once(Iterator<T> iterator) {
+        return () -> iterator;
+    }
+    
+    /**
+     * Opens the destination of each message written by
+     * {@link #writePaymentMessages(Iterator, long, long, MessageChannels)}
+     */
+    @FunctionalInterface
+    public interface MessageChannels {
+        
+        /**
+         * @param part Number of the message, starting at 1
+         * @return Channel to write the message to, from its current position
+         * @throws IOException if the channel cannot be opened
+         */
+        FileChannel open(int part) throws IOException;
     }
 }
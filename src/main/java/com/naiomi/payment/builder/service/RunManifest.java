@@ -0,0 +1,402 @@
+package com.naiomi.payment.builder.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+
+/**
+ * Record of the inputs converted into an output directory, so unchanged inputs are
+ * skipped on later runs.
+ * <p>
+ * Each input is identified by its absolute path, size and modification time, and
+ * recorded with the paths of the outputs it produced, relative to the output directory.
+ * An input is unchanged if its size and modification time match, or its size and CRC32C
+ * of its contents match when only the modification time differs, and all of its outputs
+ * still exist. Contents are only read for an input recorded with the same size under
+ * another modification time, so processing a new or resized input never reads it twice;
+ * the checksum read then is recorded with it, for the next time only its time changes.
+ * <p>
+ * The manifest is a binary append-only file: a magic number followed by one entry per
+ * processed input, each prefixed with its length and followed by a CRC32 of its bytes.
+ * The latest entry for a path wins. An entry torn by a crash fails its checksum and is
+ * cut off, with anything after it, when the manifest is next opened. When most entries
+ * are superseded the file is rewritten with only the latest ones.
+ * <p>
+ * Every entry starts with a 64-bit hash of its path, so opening the manifest only
+ * verifies checksums and indexes entry offsets by hash in primitive arrays; an entry
+ * is decoded when its input is looked up. Entries are checked with CRC32 rather than
+ * CRC32C as it is computed natively even before the JIT compiles the loading loop.
+ */
+final class RunManifest implements Closeable {
+    
+    static final String FILE_NAME = ".pain013-manifest";
+    
+    private static final int MAGIC = 0x50424D31; // "PBM1"
+    private static final int COMPACT_THRESHOLD = 1024;
+    private static final int CHECKSUM_BUFFER_SIZE = 1024 * 1024;
+    // Flag in the last byte of an entry
+    private static final byte NO_CHECKSUM = 1;
+    
+    private final Path outputDir;
+    private FileChannel channel;
+    
+    // Entries read when the manifest was opened, indexed by path hash; a hash of 0 marks a free slot
+    private final byte[] loaded;
+    private final ByteBuffer entries;
+    private long[] hashes;
+    private int[] offsets;
+    private int indexed;
+    private int records;
+    private int end;
+    
+    // Entries recorded since the manifest was opened
+    private final Map<String, Entry> recorded = new HashMap<>();
+    
+    /**
+     * Size, modification time and, once computed, contents checksum of an input file
+     */
+    static final class Fingerprint {
+        
+        private final Path file;
+        private final String key;
+        private final long size;
+        private final long modified;
+        private int checksum;
+        private boolean checksummed;
+        
+        private Fingerprint(Path file, long size, long modified) {
+            this.file = file;
+            this.key = file.toAbsolutePath().normalize().toString();
+            this.size = size;
+            this.modified = modified;
+        }
+        
+        /**
+         * CRC32C of the file's contents, read on the first call
+         */
+        int checksum() throws IOException {
+            if (!checksummed) {
+                checksum = RunManifest.checksum(file);
+                checksummed = true;
+            }
+            return checksum;
+        }
+    }
+    
+    /**
+     * @param checksummed Whether the checksum of the contents is known
+     */
+    private record Entry(long size, long modified, int checksum, boolean checksummed, List<String> outputs) {
+    }
+    
+    /**
+     * Index the complete entries of a manifest's contents
+     */
+    private RunManifest(Path outputDir, byte[] loaded) {
+        this.outputDir = outputDir;
+        this.loaded = loaded;
+        this.entries = ByteBuffer.wrap(loaded);
+        // Entries are rarely under 64 bytes, so this is usually enough to never grow the index
+        int capacity = Integer.highestOneBit(Math.max(8, loaded.length / 64)) * 2;
+        this.hashes = new long[capacity];
+        this.offsets = new int[capacity];
+        if (loaded.length < Integer.BYTES || entries.getInt(0) != MAGIC) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        int offset = Integer.BYTES;
+        while (loaded.length - offset >= Integer.BYTES) {
+            int length = entries.getInt(offset);
+            if (length < Long.BYTES || length > loaded.length - offset - 2 * Integer.BYTES) {
+                break;
+            }
+            crc.reset();
+            crc.update(loaded, offset + Integer.BYTES, length);
+            if ((int) crc.getValue() != entries.getInt(offset + Integer.BYTES + length)) {
+                break;
+            }
+            index(entries.getLong(offset + Integer.BYTES), offset);
+            offset += Integer.BYTES + length + Integer.BYTES;
+            records++;
+        }
+        end = offset;
+    }
+    
+    /**
+     * Load the manifest of an output directory, creating it if there is none
+     * 
+     * @param outputDir Existing output directory
+     * @return Manifest open for appending
+     * @throws IOException if the manifest cannot be read or written
+     */
+    static RunManifest open(Path outputDir) throws IOException {
+        Path file = outputDir.resolve(FILE_NAME);
+        RunManifest manifest = new RunManifest(outputDir, Files.exists(file) ? Files.readAllBytes(file) : new byte[0]);
+        boolean rewritten = false;
+        if (manifest.records > COMPACT_THRESHOLD && manifest.records > 2 * manifest.indexed) {
+            manifest.compact(file);
+            rewritten = true;
+        } else if (manifest.end == 0) {
+            // New, or not a manifest written by this version
+            writeAtomically(file, ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip());
+            rewritten = true;
+        }
+        
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            if (!rewritten && channel.size() > manifest.end) {
+                // Cut off a torn tail so new entries follow the last complete one
+                channel.truncate(manifest.end);
+            }
+            channel.position(channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        manifest.channel = channel;
+        return manifest;
+    }
+    
+    /**
+     * Atomically replace the manifest with only the latest entry for each path
+     */
+    private void compact(Path file) throws IOException {
+        ByteBuffer latest = ByteBuffer.allocate(end);
+        latest.putInt(MAGIC);
+        for (int slot = 0; slot < hashes.length; slot++) {
+            if (hashes[slot] != 0) {
+                int offset = offsets[slot];
+                latest.put(loaded, offset, Integer.BYTES + entries.getInt(offset) + Integer.BYTES);
+            }
+        }
+        writeAtomically(file, latest.flip());
+    }
+    
+    private static void writeAtomically(Path file, ByteBuffer contents) throws IOException {
+        Path temporary = file.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, contents);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Size and modification time of an input file, for {@link #isUnchanged} and {@link #record}
+     */
+    static Fingerprint fingerprint(Path inputFile) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(inputFile, BasicFileAttributes.class);
+        return new Fingerprint(inputFile, attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+    }
+    
+    /**
+     * Whether an input was recorded with the same contents and its outputs still exist.
+     * If only its modification time changed, the contents are read and compared with the
+     * recorded checksum, if there is one, and the new time is recorded when they match,
+     * so the contents are not read again on the next run.
+     */
+    boolean isUnchanged(Fingerprint fingerprint) throws IOException {
+        Entry entry = lookup(fingerprint.key);
+        if (entry == null || entry.size() != fingerprint.size) {
+            return false;
+        }
+        for (String output : entry.outputs()) {
+            if (!Files.exists(outputDir.resolve(output))) {
+                return false;
+            }
+        }
+        if (entry.modified() == fingerprint.modified) {
+            return true;
+        }
+        // Checksummed even without a recorded checksum to compare, so one is recorded after processing
+        int checksum = fingerprint.checksum();
+        if (!entry.checksummed() || entry.checksum() != checksum) {
+            return false;
+        }
+        append(fingerprint.key, new Entry(fingerprint.size, fingerprint.modified, checksum, true, entry.outputs()));
+        return true;
+    }
+    
+    /**
+     * Record that an input produced the given outputs; safe to call from several threads
+     * 
+     * @param fingerprint Fingerprint taken before the input was processed, with the
+     *                    checksum of its contents if {@link #isUnchanged} read them
+     * @param outputs Files written to the output directory or its subdirectories
+     */
+    void record(Fingerprint fingerprint, List<Path> outputs) throws IOException {
+        List<String> names = new ArrayList<>(outputs.size());
+        for (Path output : outputs) {
+            // Relative to the output directory, as outputs may be in shard subdirectories
+            names.add(outputDir.relativize(output).toString());
+        }
+        append(fingerprint.key, new Entry(fingerprint.size, fingerprint.modified, fingerprint.checksum,
+                fingerprint.checksummed, List.copyOf(names)));
+    }
+    
+    /**
+     * Number of distinct inputs recorded
+     */
+    synchronized int size() {
+        int size = indexed;
+        for (String key : recorded.keySet()) {
+            if (find(key.getBytes(StandardCharsets.UTF_8)) < 0) {
+                size++;
+            }
+        }
+        return size;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private synchronized Entry lookup(String key) {
+        Entry entry = recorded.get(key);
+        if (entry != null) {
+            return entry;
+        }
+        int offset = find(key.getBytes(StandardCharsets.UTF_8));
+        if (offset < 0) {
+            return null;
+        }
+        ByteBuffer bytes = entries.duplicate().position(offset + Integer.BYTES + Long.BYTES);
+        bytes.position(bytes.position() + Integer.BYTES + bytes.getInt(bytes.position()));
+        long size = bytes.getLong();
+        long modified = bytes.getLong();
+        int checksum = bytes.getInt();
+        int count = bytes.getInt();
+        List<String> outputs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = bytes.getInt();
+            outputs.add(new String(loaded, bytes.position(), length, StandardCharsets.UTF_8));
+            bytes.position(bytes.position() + length);
+        }
+        boolean checksummed = (bytes.get() & NO_CHECKSUM) == 0;
+        return new Entry(size, modified, checksum, checksummed, outputs);
+    }
+    
+    private synchronized void append(String key, Entry entry) throws IOException {
+        writeFully(channel, encode(key, entry));
+        recorded.put(key, entry);
+    }
+    
+    /**
+     * Offset of the loaded entry for a path, or -1 if there is none; an entry whose path
+     * only shares the hash does not match
+     */
+    private int find(byte[] path) {
+        long hash = hash(path);
+        int mask = hashes.length - 1;
+        for (int slot = (int) hash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash) {
+                int offset = offsets[slot];
+                int start = offset + Integer.BYTES + Long.BYTES + Integer.BYTES;
+                int length = entries.getInt(start - Integer.BYTES);
+                return Arrays.equals(loaded, start, start + length, path, 0, path.length) ? offset : -1;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Point the slot of a hash at a later entry, adding the slot if the hash is new
+     */
+    private void index(long hash, int offset) {
+        if (2 * (indexed + 1) > hashes.length) {
+            long[] oldHashes = hashes;
+            int[] oldOffsets = offsets;
+            hashes = new long[oldHashes.length * 2];
+            offsets = new int[oldOffsets.length * 2];
+            indexed = 0;
+            for (int slot = 0; slot < oldHashes.length; slot++) {
+                if (oldHashes[slot] != 0) {
+                    index(oldHashes[slot], oldOffsets[slot]);
+                }
+            }
+        }
+        int mask = hashes.length - 1;
+        int slot = (int) hash & mask;
+        while (hashes[slot] != 0 && hashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        if (hashes[slot] == 0) {
+            hashes[slot] = hash;
+            indexed++;
+        }
+        offsets[slot] = offset;
+    }
+    
+    /**
+     * 64-bit FNV-1a hash of a path, never 0
+     */
+    private static long hash(byte[] path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+    
+    private static ByteBuffer encode(String key, Entry entry) {
+        byte[] path = key.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> outputs = new ArrayList<>(entry.outputs().size());
+        int length = Long.BYTES + Integer.BYTES + path.length + 2 * Long.BYTES + Integer.BYTES + Integer.BYTES + 1;
+        for (String output : entry.outputs()) {
+            byte[] name = output.getBytes(StandardCharsets.UTF_8);
+            outputs.add(name);
+            length += Integer.BYTES + name.length;
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + length + Integer.BYTES);
+        buffer.putInt(length);
+        buffer.putLong(hash(path));
+        buffer.putInt(path.length).put(path);
+        buffer.putLong(entry.size()).putLong(entry.modified()).putInt(entry.checksum());
+        buffer.putInt(outputs.size());
+        for (byte[] name : outputs) {
+            buffer.putInt(name.length).put(name);
+        }
+        buffer.put(entry.checksummed() ? 0 : NO_CHECKSUM);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, length);
+        buffer.putInt((int) crc.getValue());
+        return buffer.flip();
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    private static int checksum(Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Small inputs are common, so only large ones get the full buffer
+            ByteBuffer buffer = ByteBuffer.allocate(Math.clamp(channel.size(), 1, CHECKSUM_BUFFER_SIZE));
+            while (channel.read(buffer) >= 0) {
+                crc.update(buffer.flip());
+                buffer.clear();
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
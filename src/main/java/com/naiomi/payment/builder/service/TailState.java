@@ -0,0 +1,103 @@
+package com.naiomi.payment.builder.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * How far an append-only input file has been converted into incremental messages,
+ * saved in the output directory as {@code .<input name>.tail}.
+ * <p>
+ * A message is committed in three steps: it is written to a {@code .part} file and
+ * forced to disk, then the state is atomically replaced with the input position after
+ * its last record and its sequence number, and finally the part file is renamed to the
+ * message name. A run killed before the state is replaced writes the same records to
+ * the same message again; one killed after it finds the part file of the committed
+ * sequence number and only renames it. So each record ends up in exactly one message.
+ * 
+ * @param fileKey Identity of the input file, e.g. its inode, or null if the file system has none
+ * @param offset Offset of the first record not yet converted, or 0 for the first after the header
+ * @param lineNumber Line number of that record
+ * @param sequence Number of the last committed message, or 0 before the first
+ */
+record TailState(String fileKey, long offset, long lineNumber, long sequence) {
+    
+    /**
+     * State file of an input in an output directory
+     */
+    static Path fileOf(Path outputDir, Path inputFile) {
+        return outputDir.resolve("." + inputFile.getFileName() + ".tail");
+    }
+    
+    /**
+     * Load the state of an input, starting over if there is none, it is unreadable, or
+     * the input was replaced or truncated since, e.g. by rotation
+     * 
+     * @param outputDir Output directory
+     * @param inputFile Input file being tailed
+     * @return State to continue from
+     */
+    static TailState load(Path outputDir, Path inputFile) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(inputFile, BasicFileAttributes.class);
+        String fileKey = attributes.fileKey() != null ? attributes.fileKey().toString() : null;
+        Properties saved = new Properties();
+        try (Reader reader = Files.newBufferedReader(fileOf(outputDir, inputFile), StandardCharsets.ISO_8859_1)) {
+            saved.load(reader);
+        } catch (NoSuchFileException e) {
+            return new TailState(fileKey, 0, 0, 0);
+        }
+        TailState state;
+        try {
+            String savedKey = saved.getProperty("input.file-key");
+            state = new TailState(savedKey == null || savedKey.isEmpty() ? null : savedKey,
+                    Long.parseLong(saved.getProperty("input.offset")),
+                    Long.parseLong(saved.getProperty("input.line")),
+                    Long.parseLong(saved.getProperty("sequence")));
+        } catch (NumberFormatException | NullPointerException e) {
+            return new TailState(fileKey, 0, 0, 0);
+        }
+        if (!Objects.equals(state.fileKey, fileKey) || attributes.size() < state.offset) {
+            // Keep numbering messages after the ones already written for the previous file
+            return new TailState(fileKey, 0, 0, state.sequence);
+        }
+        return state;
+    }
+    
+    /**
+     * State after committing the next message, ending at the given input position
+     */
+    TailState next(long offset, long lineNumber) {
+        return new TailState(fileKey, offset, lineNumber, sequence + 1);
+    }
+    
+    /**
+     * Replace the saved state of an input atomically
+     */
+    void save(Path outputDir, Path inputFile) throws IOException {
+        String contents = "input.file-key=" + (fileKey != null ? fileKey : "") + "\n"
+                + "input.offset=" + offset + "\n"
+                + "input.line=" + lineNumber + "\n"
+                + "sequence=" + sequence + "\n";
+        Path file = fileOf(outputDir, inputFile);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(contents.getBytes(StandardCharsets.ISO_8859_1));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,67 @@
+package com.naiomi.payment.builder.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * In-memory channel collecting everything written to it in a growable array, used to
+ * encode part of a message before it is placed in the output. Not thread-safe.
+ */
+public final class ByteArrayChannel implements WritableByteChannel {
+    
+    private byte[] bytes;
+    private int size;
+    
+    /**
+     * @param initialCapacity Initial size of the array
+     */
+    public ByteArrayChannel(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+    
+    @Override
+    public int write(ByteBuffer source) {
+        int length = source.remaining();
+        if (size + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
+        source.get(bytes, size, length);
+        size += length;
+        return length;
+    }
+    
+    /**
+     * Backing array; only the first {@link #size()} bytes are valid
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Buffer over the bytes written so far, sharing the array
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, size);
+    }
+    
+    /**
+     * Discard the contents, keeping the array
+     */
+    public void reset() {
+        size = 0;
+    }
+    
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+    
+    @Override
+    public void close() {
+    }
+}
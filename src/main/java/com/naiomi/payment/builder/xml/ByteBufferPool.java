@@ -0,0 +1,38 @@
+package com.naiomi.payment.builder.xml;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Small pool of equally sized heap buffers, so each generated message reuses an
+ * output buffer instead of allocating one. Safe for concurrent use; buffers
+ * returned while the pool is full are left to the garbage collector.
+ */
+public final class ByteBufferPool {
+    
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> free;
+    
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+    
+    /**
+     * Take a cleared buffer from the pool, allocating one if none is free
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        return buffer != null ? buffer : ByteBuffer.allocate(bufferSize);
+    }
+    
+    /**
+     * Return a buffer obtained from {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            free.offer(buffer.clear());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.naiomi.payment.builder.xml;
+
+import com.naiomi.payment.builder.model.ControlSum;
+import com.naiomi.payment.builder.model.Payment;
+
+import java.math.BigDecimal;
+
+/**
+ * Group header totals: NbOfTxs and CtrlSum, either computed before the header
+ * is written or accumulated while writing and backpatched afterwards
+ */
+public final class GroupTotals {
+    
+    // Widest values the deferred placeholders hold: Max15NumericText and a signed 18-digit decimal
+    static final int MAX_NUMBER_OF_TRANSACTIONS_DIGITS = 15;
+    static final int MAX_CONTROL_SUM_LENGTH = 20;
+    private static final long MAX_NUMBER_OF_TRANSACTIONS = 999_999_999_999_999L;
+    
+    private final boolean deferred;
+    private final ControlSum controlSum = new ControlSum();
+    private long numberOfTransactions;
+    long numberOfTransactionsPosition;
+    long controlSumPosition;
+    
+    private GroupTotals(boolean deferred) {
+        this.deferred = deferred;
+    }
+    
+    /**
+     * Totals accumulated while the transactions are written; the header gets
+     * blank placeholder regions that {@link Pain013Writer#backpatch} fills in
+     */
+    public static GroupTotals deferred() {
+        return new GroupTotals(true);
+    }
+    
+    /**
+     * Deferred totals of a message that was partly written by an earlier run, continuing
+     * from the counts and placeholder positions saved with its checkpoint
+     */
+    public static GroupTotals resumed(long numberOfTransactions, BigDecimal controlSum,
+                                      long numberOfTransactionsPosition, long controlSumPosition) {
+        GroupTotals totals = new GroupTotals(true);
+        totals.numberOfTransactions = numberOfTransactions;
+        totals.controlSum.add(controlSum);
+        totals.numberOfTransactionsPosition = numberOfTransactionsPosition;
+        totals.controlSumPosition = controlSumPosition;
+        return totals;
+    }
+    
+    /**
+     * Totals computed up front from records that can be iterated twice
+     */
+    public static GroupTotals of(Iterable<? extends Payment> records) {
+        GroupTotals totals = new GroupTotals(false);
+        for (Payment record : records) {
+            totals.add(record);
+        }
+        return totals;
+    }
+    
+    public boolean isDeferred() {
+        return deferred;
+    }
+    
+    public long getNumberOfTransactions() {
+        return numberOfTransactions;
+    }
+    
+    public BigDecimal getControlSum() {
+        return controlSum.toBigDecimal();
+    }
+    
+    /**
+     * Offset of the NbOfTxs placeholder from the start of the message, once the header is written
+     */
+    public long getNumberOfTransactionsPosition() {
+        return numberOfTransactionsPosition;
+    }
+    
+    /**
+     * Offset of the CtrlSum placeholder from the start of the message, once the header is written
+     */
+    public long getControlSumPosition() {
+        return controlSumPosition;
+    }
+    
+    /**
+     * Count a record written with deferred totals. Deferred totals are checked against
+     * their placeholders as they grow, so a message whose totals cannot be backpatched
+     * fails at the record that overflows rather than after it was written in full.
+     * 
+     * @throws IllegalStateException if deferred totals no longer fit their placeholders
+     */
+    public void add(Payment record) {
+        numberOfTransactions++;
+        controlSum.add(record);
+        if (deferred) {
+            if (numberOfTransactions > MAX_NUMBER_OF_TRANSACTIONS) {
+                throw new IllegalStateException("NbOfTxs does not fit its header placeholder: " + numberOfTransactions);
+            }
+            if (controlSum.plainLength() > MAX_CONTROL_SUM_LENGTH) {
+                throw new IllegalStateException("CtrlSum does not fit its header placeholder: " + getControlSum());
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.naiomi.payment.builder.xml;
+
+import java.io.IOException;
+
+/**
+ * Source of the message, payment information and end-to-end identifiers written by
+ * {@link Pain013Writer}. Implementations must be thread-safe and write identifiers of
+ * at most 35 characters (Max35Text), starting with the prefix of their kind.
+ */
+public interface IdGenerator {
+    
+    /**
+     * Maximum identifier length allowed by pain.013
+     */
+    int MAX_LENGTH = 35;
+    
+    enum Kind {
+        MESSAGE("MSG-"),
+        PAYMENT_INFORMATION("PMTINF-"),
+        END_TO_END("E2E-");
+        
+        private final String prefix;
+        
+        Kind(String prefix) {
+            this.prefix = prefix;
+        }
+        
+        public String getPrefix() {
+            return prefix;
+        }
+    }
+    
+    /**
+     * Write a new identifier straight into the sink
+     * 
+     * @param kind Element the identifier is written for
+     * @param sink Destination
+     * @throws IOException if the sink cannot drain
+     */
+    void writeId(Kind kind, Utf8Sink sink) throws IOException;
+}
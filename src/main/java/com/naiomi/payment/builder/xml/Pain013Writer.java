@@ -0,0 +1,375 @@
+package com.naiomi.payment.builder.xml;
+
+import com.naiomi.payment.builder.model.DecimalFormatter;
+import com.naiomi.payment.builder.model.FixedPointPayment;
+import com.naiomi.payment.builder.model.Payment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes ISO20022 pain.013 payment activation request messages to a {@link Utf8Sink}.
+ * <p>
+ * All fixed markup - declaration, tags, indentation and line breaks - is encoded to
+ * UTF-8 once into static byte arrays, so writing a transaction copies pre-encoded
+ * fragments and only encodes the record values. Consecutive fragments that are always
+ * written together are merged into one array. Every fragment exists in a pretty-printed
+ * layout and a compact one without whitespace between elements.
+ */
+public final class Pain013Writer {
+    
+    public static final String NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pain.013.001.11";
+    private static final DateTimeFormatter XML_DATETIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    
+    // Placeholder widths, sized for the widest values GroupTotals accepts
+    private static final int NB_OF_TXS_WIDTH = "<NbOfTxs></NbOfTxs>".length()
+            + GroupTotals.MAX_NUMBER_OF_TRANSACTIONS_DIGITS;
+    private static final int CTRL_SUM_WIDTH = "<CtrlSum></CtrlSum>".length() + GroupTotals.MAX_CONTROL_SUM_LENGTH;
+    
+    // Document and group header
+    private static final byte[][] DOCUMENT_START = markup(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<Document xmlns=\"" + NAMESPACE + "\">\n"
+            + "  <CdtrPmtActvtnReq>\n"
+            + "    <GrpHdr>\n"
+            + "      <MsgId>");
+    private static final byte[][] MSG_ID_END = markup("</MsgId>\n      <CreDtTm>");
+    private static final byte[][] CRE_DT_TM_END = markup("</CreDtTm>\n      ");
+    private static final byte[][] NB_OF_TXS_START = markup("<NbOfTxs>");
+    private static final byte[][] NB_OF_TXS_END = markup("</NbOfTxs>");
+    private static final byte[][] NEXT_HEADER_LINE = markup("\n      ");
+    private static final byte[][] CTRL_SUM_START = markup("<CtrlSum>");
+    private static final byte[][] CTRL_SUM_END = markup("</CtrlSum>");
+    private static final byte[][] GRP_HDR_END = markup(
+            "\n"
+            + "      <InitgPty>\n"
+            + "        <Nm>Payment Builder System</Nm>\n"
+            + "      </InitgPty>\n"
+            + "    </GrpHdr>\n"
+            + "    <PmtInf>\n"
+            + "      <PmtInfId>");
+    private static final byte[][] PMT_INF_ID_END = markup("</PmtInfId>\n      <PmtMtd>TRF</PmtMtd>\n");
+    private static final byte[][] DOCUMENT_END = markup(
+            "    </PmtInf>\n"
+            + "  </CdtrPmtActvtnReq>\n"
+            + "</Document>");
+    
+    // Credit transfer transaction
+    private static final byte[][] TX_START = markup("      <CdtTrfTxInf>\n        <PmtId>\n");
+    private static final byte[][] INSTR_ID_START = markup("          <InstrId>");
+    private static final byte[][] INSTR_ID_END = markup("</InstrId>\n");
+    private static final byte[][] END_TO_END_ID_START = markup("          <EndToEndId>");
+    private static final byte[][] END_TO_END_ID_END = markup("</EndToEndId>\n        </PmtId>\n");
+    private static final byte[][] PMT_TP_INF_START = markup("        <PmtTpInf>\n");
+    private static final byte[][] CTGY_PURP_START = markup("          <CtgyPurp>\n            <Cd>");
+    private static final byte[][] CTGY_PURP_END = markup("</Cd>\n          </CtgyPurp>\n");
+    private static final byte[][] PMT_TP_INF_END = markup("        </PmtTpInf>\n");
+    private static final byte[][] AMT_START = markup("        <Amt>\n          <InstdAmt Ccy=\"");
+    private static final byte[][] DEFAULT_CURRENCY = markup("EUR");
+    private static final byte[][] AMT_VALUE = markup("\">");
+    private static final byte[][] ZERO_AMOUNT = markup("0.00");
+    private static final byte[][] AMT_END = markup("</InstdAmt>\n        </Amt>\n");
+    private static final byte[][] CHRG_BR_START = markup("        <ChrgBr>");
+    private static final byte[][] CHRG_BR_END = markup("</ChrgBr>\n");
+    private static final byte[][] CDTR_AGT_START = markup("        <CdtrAgt>\n          <FinInstnId>\n            <BICFI>");
+    private static final byte[][] CDTR_AGT_END = markup("</BICFI>\n          </FinInstnId>\n        </CdtrAgt>\n");
+    private static final byte[][] CDTR_START = markup("        <Cdtr>\n          <Nm>");
+    private static final byte[][] CDTR_NAME_END = markup("</Nm>\n");
+    private static final byte[][] PSTL_ADR_START = markup("          <PstlAdr>\n");
+    private static final byte[][] CTRY_START = markup("            <Ctry>");
+    private static final byte[][] CTRY_END = markup("</Ctry>\n");
+    private static final byte[][] ADR_LINE_START = markup("            <AdrLine>");
+    private static final byte[][] ADR_LINE_END = markup("</AdrLine>\n");
+    private static final byte[][] PSTL_ADR_END = markup("          </PstlAdr>\n");
+    private static final byte[][] CDTR_END = markup("        </Cdtr>\n");
+    private static final byte[][] CDTR_ACCT_START = markup("        <CdtrAcct>\n          <Id>\n");
+    private static final byte[][] IBAN_START = markup("            <IBAN>");
+    private static final byte[][] IBAN_END = markup("</IBAN>\n");
+    private static final byte[][] OTHR_START = markup("            <Othr>\n              <Id>");
+    private static final byte[][] OTHR_END = markup("</Id>\n            </Othr>\n");
+    private static final byte[][] CDTR_ACCT_END = markup("          </Id>\n        </CdtrAcct>\n");
+    private static final byte[][] RMT_INF_START = markup("        <RmtInf>\n");
+    private static final byte[][] USTRD_START = markup("          <Ustrd>");
+    private static final byte[][] USTRD_END = markup("</Ustrd>\n");
+    private static final byte[][] RMT_INF_END = markup("        </RmtInf>\n");
+    private static final byte[][] TX_END = markup("      </CdtTrfTxInf>\n");
+    
+    private static final int PRETTY = 0;
+    private static final int COMPACT = 1;
+    
+    private final IdGenerator idGenerator;
+    private final int layout;
+    
+    /**
+     * Writer for pretty-printed messages
+     * 
+     * @param idGenerator Source of MsgId, PmtInfId and missing EndToEndId values
+     */
+    public Pain013Writer(IdGenerator idGenerator) {
+        this(idGenerator, false);
+    }
+    
+    /**
+     * @param idGenerator Source of MsgId, PmtInfId and missing EndToEndId values
+     * @param compact Whether to leave out all whitespace between elements
+     */
+    public Pain013Writer(IdGenerator idGenerator, boolean compact) {
+        this.idGenerator = idGenerator;
+        this.layout = compact ? COMPACT : PRETTY;
+    }
+    
+    /**
+     * Write a complete message. Deferred totals are accumulated from the records
+     * and get blank placeholder regions, whose positions are recorded for
+     * {@link #backpatch(FileChannel, long, GroupTotals)}.
+     * 
+     * @param sink Destination; not flushed
+     * @param totals Group header totals
+     * @param records Payments to write
+     * @throws IOException if the sink cannot drain
+     */
+    public void writeMessage(Utf8Sink sink, GroupTotals totals, Iterable<? extends Payment> records) throws IOException {
+        writeHeader(sink, totals);
+        for (Payment record : records) {
+            writeTransaction(sink, record);
+            if (totals.isDeferred()) {
+                totals.add(record);
+            }
+        }
+        writeTrailer(sink);
+    }
+    
+    /**
+     * Write everything up to the first transaction: document start, group header and
+     * the opening of the payment information block
+     */
+    public void writeHeader(Utf8Sink sink, GroupTotals totals) throws IOException {
+        writeGroupHeader(sink, totals);
+        idGenerator.writeId(IdGenerator.Kind.PAYMENT_INFORMATION, sink);
+        sink.write(PMT_INF_ID_END[layout]);
+    }
+    
+    /**
+     * Write one CdtTrfTxInf element; the caller adds the record to deferred totals
+     */
+    public void writeTransaction(Utf8Sink sink, Payment record) throws IOException {
+        writeCreditTransferTransaction(sink, record);
+    }
+    
+    /**
+     * Close the payment information block and the document; always {@link #trailerLength()} bytes
+     */
+    public void writeTrailer(Utf8Sink sink) throws IOException {
+        sink.write(DOCUMENT_END[layout]);
+    }
+    
+    /**
+     * Length in bytes of what {@link #writeTrailer(Utf8Sink)} writes
+     */
+    public int trailerLength() {
+        return DOCUMENT_END[layout].length;
+    }
+    
+    /**
+     * Overwrite the placeholder regions of a message written with deferred totals
+     * 
+     * @param channel Channel the message was written to
+     * @param start Channel position where the message starts
+     * @param totals Totals accumulated while writing
+     * @throws IOException if writing fails
+     */
+    public static void backpatch(FileChannel channel, long start, GroupTotals totals) throws IOException {
+        StringBuilder region = new StringBuilder(CTRL_SUM_WIDTH);
+        region.append("<NbOfTxs>").append(totals.getNumberOfTransactions()).append("</NbOfTxs>");
+        backpatch(channel, start + totals.numberOfTransactionsPosition, region, NB_OF_TXS_WIDTH);
+        region.setLength(0);
+        region.append("<CtrlSum>");
+        DecimalFormatter.append(region, totals.getControlSum());
+        region.append("</CtrlSum>");
+        backpatch(channel, start + totals.controlSumPosition, region, CTRL_SUM_WIDTH);
+    }
+    
+    /**
+     * Overwrite a placeholder region with an element padded by trailing spaces
+     */
+    private static void backpatch(FileChannel channel, long position, StringBuilder element, int width) throws IOException {
+        if (element.length() > width) {
+            throw new IllegalStateException("Value does not fit its header placeholder: " + element);
+        }
+        while (element.length() < width) {
+            element.append(' ');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(element.toString().getBytes(StandardCharsets.US_ASCII));
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+    
+    private void writeGroupHeader(Utf8Sink sink, GroupTotals totals) throws IOException {
+        sink.write(DOCUMENT_START[layout]);
+        idGenerator.writeId(IdGenerator.Kind.MESSAGE, sink);
+        sink.write(MSG_ID_END[layout]);
+        sink.writeText(LocalDateTime.now().format(XML_DATETIME_FORMATTER));
+        sink.write(CRE_DT_TM_END[layout]);
+        if (totals.isDeferred()) {
+            totals.numberOfTransactionsPosition = sink.position();
+            sink.repeat((byte) ' ', NB_OF_TXS_WIDTH);
+        } else {
+            sink.write(NB_OF_TXS_START[layout]);
+            sink.writeLong(totals.getNumberOfTransactions());
+            sink.write(NB_OF_TXS_END[layout]);
+        }
+        sink.write(NEXT_HEADER_LINE[layout]);
+        if (totals.isDeferred()) {
+            totals.controlSumPosition = sink.position();
+            sink.repeat((byte) ' ', CTRL_SUM_WIDTH);
+        } else {
+            sink.write(CTRL_SUM_START[layout]);
+            sink.writeDecimal(totals.getControlSum());
+            sink.write(CTRL_SUM_END[layout]);
+        }
+        sink.write(GRP_HDR_END[layout]);
+    }
+    
+    private void writeCreditTransferTransaction(Utf8Sink sink, Payment record) throws IOException {
+        // Payment Identification
+        sink.write(TX_START[layout]);
+        if (record.getInstructionId() != null) {
+            sink.write(INSTR_ID_START[layout]);
+            sink.writeEscaped(record.getInstructionId());
+            sink.write(INSTR_ID_END[layout]);
+        }
+        sink.write(END_TO_END_ID_START[layout]);
+        if (record.getEndToEndId() != null) {
+            sink.writeEscaped(record.getEndToEndId());
+        } else {
+            idGenerator.writeId(IdGenerator.Kind.END_TO_END, sink);
+        }
+        sink.write(END_TO_END_ID_END[layout]);
+        
+        // Payment Type Information
+        if (record.getCategoryPurposeCode() != null || record.getPurposeCode() != null) {
+            sink.write(PMT_TP_INF_START[layout]);
+            if (record.getCategoryPurposeCode() != null) {
+                sink.write(CTGY_PURP_START[layout]);
+                sink.writeText(record.getCategoryPurposeCode());
+                sink.write(CTGY_PURP_END[layout]);
+            }
+            sink.write(PMT_TP_INF_END[layout]);
+        }
+        
+        // Amount
+        writeAmount(sink, record);
+        
+        // Charge Bearer
+        if (record.getChargeBearer() != null) {
+            sink.write(CHRG_BR_START[layout]);
+            sink.writeText(record.getChargeBearer());
+            sink.write(CHRG_BR_END[layout]);
+        }
+        
+        // Creditor Agent (Bank)
+        if (record.getCreditorBIC() != null) {
+            sink.write(CDTR_AGT_START[layout]);
+            sink.writeText(record.getCreditorBIC());
+            sink.write(CDTR_AGT_END[layout]);
+        }
+        
+        // Creditor (Payee)
+        writeCreditor(sink, record);
+        
+        // Creditor Account
+        writeCreditorAccount(sink, record);
+        
+        // Remittance Information
+        if (record.getRemittanceInformationUnstructured() != null ||
+            record.getRemittanceInformationStructured() != null) {
+            sink.write(RMT_INF_START[layout]);
+            if (record.getRemittanceInformationUnstructured() != null) {
+                sink.write(USTRD_START[layout]);
+                sink.writeEscaped(record.getRemittanceInformationUnstructured());
+                sink.write(USTRD_END[layout]);
+            }
+            sink.write(RMT_INF_END[layout]);
+        }
+        
+        sink.write(TX_END[layout]);
+    }
+    
+    private void writeAmount(Utf8Sink sink, Payment record) throws IOException {
+        sink.write(AMT_START[layout]);
+        if (record.getCurrency() != null) {
+            sink.writeText(record.getCurrency());
+        } else {
+            sink.write(DEFAULT_CURRENCY[layout]);
+        }
+        sink.write(AMT_VALUE[layout]);
+        if (record instanceof FixedPointPayment fixed) {
+            if (fixed.hasInstructedAmount()) {
+                sink.writeDecimal(fixed.getAmountUnscaled(), fixed.getAmountScale());
+            } else {
+                sink.write(ZERO_AMOUNT[layout]);
+            }
+        } else if (record.getInstructedAmount() != null) {
+            sink.writeDecimal(record.getInstructedAmount());
+        } else {
+            sink.write(ZERO_AMOUNT[layout]);
+        }
+        sink.write(AMT_END[layout]);
+    }
+    
+    private void writeCreditor(Utf8Sink sink, Payment record) throws IOException {
+        sink.write(CDTR_START[layout]);
+        sink.writeEscaped(record.getCreditorName());
+        sink.write(CDTR_NAME_END[layout]);
+        
+        if (record.getCreditorAddressLine1() != null || record.getCreditorCountry() != null) {
+            sink.write(PSTL_ADR_START[layout]);
+            if (record.getCreditorCountry() != null) {
+                sink.write(CTRY_START[layout]);
+                sink.writeText(record.getCreditorCountry());
+                sink.write(CTRY_END[layout]);
+            }
+            if (record.getCreditorAddressLine1() != null) {
+                sink.write(ADR_LINE_START[layout]);
+                sink.writeEscaped(record.getCreditorAddressLine1());
+                sink.write(ADR_LINE_END[layout]);
+            }
+            if (record.getCreditorAddressLine2() != null) {
+                sink.write(ADR_LINE_START[layout]);
+                sink.writeEscaped(record.getCreditorAddressLine2());
+                sink.write(ADR_LINE_END[layout]);
+            }
+            sink.write(PSTL_ADR_END[layout]);
+        }
+        
+        sink.write(CDTR_END[layout]);
+    }
+    
+    private void writeCreditorAccount(Utf8Sink sink, Payment record) throws IOException {
+        sink.write(CDTR_ACCT_START[layout]);
+        if (record.getCreditorAccountIBAN() != null) {
+            sink.write(IBAN_START[layout]);
+            sink.writeText(record.getCreditorAccountIBAN());
+            sink.write(IBAN_END[layout]);
+        } else if (record.getCreditorAccountOther() != null) {
+            sink.write(OTHR_START[layout]);
+            sink.writeEscaped(record.getCreditorAccountOther());
+            sink.write(OTHR_END[layout]);
+        }
+        sink.write(CDTR_ACCT_END[layout]);
+    }
+    
+    /**
+     * Encode a piece of pretty-printed markup in both layouts, indexed by {@code layout}:
+     * as written, and without line breaks and indentation for the compact layout
+     */
+    private static byte[][] markup(String text) {
+        String compact = text.replaceAll("^ +|\n *", "");
+        return new byte[][] {text.getBytes(StandardCharsets.UTF_8), compact.getBytes(StandardCharsets.UTF_8)};
+    }
+}
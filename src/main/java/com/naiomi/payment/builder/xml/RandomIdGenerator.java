@@ -0,0 +1,17 @@
+package com.naiomi.payment.builder.xml;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Identifiers made of the kind prefix and the first 8 hex digits of a random UUID,
+ * e.g. {@code MSG-3F2A9C1B}. With only 32 random bits, collisions become likely
+ * after tens of thousands of identifiers; prefer {@link SequentialIdGenerator}.
+ */
+public final class RandomIdGenerator implements IdGenerator {
+    
+    @Override
+    public void writeId(Kind kind, Utf8Sink sink) throws IOException {
+        sink.writeText(kind.getPrefix() + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+    }
+}
@@ -0,0 +1,88 @@
+package com.naiomi.payment.builder.xml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifiers built from a node id, the generator's start time and a counter, written in
+ * Crockford base 32: the kind prefix, 4 node digits, 9 start time digits and 1 to 13
+ * counter digits, e.g. {@code E2E-0Q7M01JAH3XK2B7}. At most 33 characters.
+ * <p>
+ * Identifiers are unique as long as instances running at the same time use different
+ * node ids and the clock does not go back between runs: each generator starts at a
+ * distinct millisecond on a node, and its counter never repeats. Threads take counter
+ * values in blocks, so generating identifiers does not contend on a shared variable.
+ */
+public final class SequentialIdGenerator implements IdGenerator {
+    
+    public static final int MAX_NODE_ID = (1 << 20) - 1;
+    private static final byte[] DIGITS = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".getBytes(StandardCharsets.US_ASCII);
+    private static final int NODE_DIGITS = 4;
+    private static final int TIME_DIGITS = 9;
+    private static final int MAX_COUNTER_DIGITS = 13;
+    private static final int BLOCK_SIZE = 1024;
+    
+    // Start times handed out in this JVM, so two generators never share one
+    private static final AtomicLong LAST_START = new AtomicLong();
+    
+    private final byte[][] prefixes = new byte[Kind.values().length][];
+    private final AtomicLong nextBlock = new AtomicLong();
+    private final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(() -> new long[2]);
+    
+    /**
+     * @param nodeId Identifier of this instance, 0 to {@link #MAX_NODE_ID}
+     */
+    public SequentialIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id out of range: " + nodeId);
+        }
+        long start = LAST_START.updateAndGet(last -> Math.max(System.currentTimeMillis(), last + 1));
+        for (Kind kind : Kind.values()) {
+            byte[] prefix = kind.getPrefix().getBytes(StandardCharsets.US_ASCII);
+            byte[] bytes = new byte[prefix.length + NODE_DIGITS + TIME_DIGITS];
+            System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+            encode(nodeId, bytes, prefix.length, NODE_DIGITS);
+            encode(start, bytes, prefix.length + NODE_DIGITS, TIME_DIGITS);
+            prefixes[kind.ordinal()] = bytes;
+        }
+    }
+    
+    /**
+     * Generator with a random node id, for single instances or when a collision between
+     * instances started in the same millisecond is acceptable
+     */
+    public static SequentialIdGenerator withRandomNode() {
+        return new SequentialIdGenerator(ThreadLocalRandom.current().nextInt(MAX_NODE_ID + 1));
+    }
+    
+    @Override
+    public void writeId(Kind kind, Utf8Sink sink) throws IOException {
+        sink.write(prefixes[kind.ordinal()]);
+        long counter = nextCounter();
+        byte[] digits = new byte[MAX_COUNTER_DIGITS];
+        int start = digits.length;
+        do {
+            digits[--start] = DIGITS[(int) (counter & 31)];
+            counter >>>= 5;
+        } while (counter != 0);
+        sink.write(digits, start, digits.length - start);
+    }
+    
+    private long nextCounter() {
+        long[] block = blocks.get();
+        if (block[0] == block[1]) {
+            block[0] = nextBlock.getAndAdd(BLOCK_SIZE);
+            block[1] = block[0] + BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+    
+    private static void encode(long value, byte[] target, int offset, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            target[i] = DIGITS[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+}
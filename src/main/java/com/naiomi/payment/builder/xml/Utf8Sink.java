@@ -0,0 +1,237 @@
+package com.naiomi.payment.builder.xml;
+
+import com.naiomi.payment.builder.model.DecimalFormatter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte-oriented output for XML generation.
+ * <p>
+ * Pre-encoded fragments, text and numbers are written straight into a heap buffer as
+ * UTF-8, and the buffer is drained to the target channel whenever it fills up, so no
+ * intermediate String is built and memory use is bounded by the buffer size.
+ * Characters XML 1.0 does not allow, including unpaired surrogates, are written as '?'.
+ */
+public final class Utf8Sink {
+    
+    // Longest encoding of one char: "&quot;"
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final byte[][] ENTITIES = new byte[128][];
+    
+    static {
+        for (char c = 0; c < 128; c++) {
+            String entity = XmlEscaper.entity(c);
+            if (entity != null) {
+                ENTITIES[c] = entity.getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+    }
+    
+    private final ByteBuffer buffer;
+    private final byte[] bytes;
+    private final WritableByteChannel target;
+    private int position;
+    private long drained;
+    
+    /**
+     * @param buffer Heap buffer to fill; its contents are overwritten
+     * @param target Channel receiving the bytes
+     */
+    public Utf8Sink(ByteBuffer buffer, WritableByteChannel target) {
+        if (!buffer.hasArray()) {
+            throw new IllegalArgumentException("Sink buffer must be a heap buffer");
+        }
+        if (buffer.capacity() < MAX_CHAR_BYTES) {
+            throw new IllegalArgumentException("Sink buffer must hold at least " + MAX_CHAR_BYTES + " bytes");
+        }
+        this.buffer = buffer;
+        this.bytes = buffer.array();
+        this.target = target;
+    }
+    
+    /**
+     * Number of bytes written so far, including those still buffered
+     */
+    public long position() {
+        return drained + position;
+    }
+    
+    /**
+     * Write a pre-encoded fragment
+     */
+    public void write(byte[] fragment) throws IOException {
+        write(fragment, 0, fragment.length);
+    }
+    
+    public void write(byte[] fragment, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == bytes.length) {
+                drain();
+            }
+            int count = Math.min(length, bytes.length - position);
+            System.arraycopy(fragment, offset, bytes, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+    
+    public void write(byte b) throws IOException {
+        if (position == bytes.length) {
+            drain();
+        }
+        bytes[position++] = b;
+    }
+    
+    /**
+     * Write a byte repeatedly, e.g. spaces for a placeholder
+     */
+    public void repeat(byte b, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            write(b);
+        }
+    }
+    
+    /**
+     * Write text as UTF-8 without escaping; characters XML 1.0 does not allow are
+     * replaced as by {@link XmlEscaper}
+     */
+    public void writeText(String text) throws IOException {
+        write(text, false);
+    }
+    
+    /**
+     * Write text as UTF-8, escaped as by {@link XmlEscaper#escape(String)}. Null writes nothing.
+     */
+    public void writeEscaped(String text) throws IOException {
+        if (text != null) {
+            write(text, true);
+        }
+    }
+    
+    public void writeLong(long value) throws IOException {
+        writeDecimal(value, 0);
+    }
+    
+    /**
+     * Write unscaled &times; 10<sup>-scale</sup> in plain decimal notation
+     */
+    public void writeDecimal(long unscaled, int scale) throws IOException {
+        long maxLength = DecimalFormatter.maxLength(scale);
+        if (maxLength > bytes.length) {
+            writeAscii(formatted(BigDecimal.valueOf(unscaled, scale)));
+            return;
+        }
+        if (bytes.length - position < maxLength) {
+            drain();
+        }
+        position = DecimalFormatter.write(bytes, position, unscaled, scale);
+    }
+    
+    public void writeDecimal(BigDecimal value) throws IOException {
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            writeDecimal(unscaled.longValue(), value.scale());
+        } else {
+            writeAscii(formatted(value));
+        }
+    }
+    
+    /**
+     * Drain buffered bytes to the target channel
+     */
+    public void flush() throws IOException {
+        drain();
+    }
+    
+    private void writeAscii(CharSequence text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            write((byte) text.charAt(i));
+        }
+    }
+    
+    private static CharSequence formatted(BigDecimal value) {
+        StringBuilder text = new StringBuilder();
+        DecimalFormatter.append(text, value);
+        return text;
+    }
+    
+    /**
+     * Copy runs of plain ASCII characters without per-character capacity checks,
+     * handing everything else to {@link #encode}
+     */
+    private void write(String text, boolean escape) throws IOException {
+        boolean[] plain = XmlEscaper.plainAscii(escape);
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (bytes.length - position < MAX_CHAR_BYTES) {
+                drain();
+            }
+            // Leaves MAX_CHAR_BYTES free for the character that ends the run
+            int end = Math.min(length, i + bytes.length - position - MAX_CHAR_BYTES);
+            char c;
+            while (i < end && (c = text.charAt(i)) < 0x80 && plain[c]) {
+                bytes[position++] = (byte) c;
+                i++;
+            }
+            if (i < length) {
+                i = encode(text, i, escape) + 1;
+            }
+        }
+    }
+    
+    /**
+     * Encode one character, consuming the low surrogate of a pair
+     * 
+     * @return Index of the last char consumed
+     */
+    private int encode(String text, int index, boolean escape) {
+        char c = text.charAt(index);
+        if (c < 0x80) {
+            if (escape && ENTITIES[c] != null) {
+                System.arraycopy(ENTITIES[c], 0, bytes, position, ENTITIES[c].length);
+                position += ENTITIES[c].length;
+            } else {
+                bytes[position++] = (byte) (XmlEscaper.isXmlChar(c) ? c : XmlEscaper.REPLACEMENT);
+            }
+            return index;
+        }
+        if (c < 0x800) {
+            bytes[position++] = (byte) (0xC0 | c >> 6);
+            bytes[position++] = (byte) (0x80 | c & 0x3F);
+            return index;
+        }
+        if (XmlEscaper.isXmlChar(c)) {
+            bytes[position++] = (byte) (0xE0 | c >> 12);
+            bytes[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+            bytes[position++] = (byte) (0x80 | c & 0x3F);
+            return index;
+        }
+        if (Character.isHighSurrogate(c) && XmlEscaper.isPairedHighSurrogate(text, index)) {
+            int codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+            bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+            bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+            bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+            bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+            return index + 1;
+        }
+        bytes[position++] = (byte) XmlEscaper.REPLACEMENT;
+        return index;
+    }
+    
+    private void drain() throws IOException {
+        buffer.limit(position).position(0);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        buffer.clear();
+        drained += position;
+        position = 0;
+    }
+}
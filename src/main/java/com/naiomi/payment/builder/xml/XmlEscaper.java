@@ -0,0 +1,115 @@
+package com.naiomi.payment.builder.xml;
+
+/**
+ * Single-pass escaping of XML character data.
+ * <p>
+ * The five XML special characters are replaced with entities, and characters that
+ * XML 1.0 does not allow - control characters other than tab, line feed and carriage
+ * return, unpaired surrogates, U+FFFE and U+FFFF - are replaced with '?', so that a
+ * stray byte in the input cannot make the generated document unparseable. Values
+ * without any such character, by far the common case, are returned unchanged.
+ */
+public final class XmlEscaper {
+    
+    /**
+     * Written in place of characters that XML 1.0 does not allow
+     */
+    public static final char REPLACEMENT = '?';
+    
+    // ASCII characters copied unchanged, without and with entity escaping
+    private static final boolean[] PLAIN_TEXT = new boolean[128];
+    private static final boolean[] PLAIN_ESCAPED_TEXT = new boolean[128];
+    
+    static {
+        for (char c = 0; c < 128; c++) {
+            PLAIN_TEXT[c] = c >= 0x20 || c == '\t' || c == '\n' || c == '\r';
+            PLAIN_ESCAPED_TEXT[c] = PLAIN_TEXT[c] && entity(c) == null;
+        }
+    }
+    
+    private XmlEscaper() {
+    }
+    
+    /**
+     * Escape a value for use as element content or attribute value
+     * 
+     * @param text Value, may be null
+     * @return The same instance when nothing needs escaping, "" for null
+     */
+    public static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        int first = indexOfUnsafe(text);
+        if (first < 0) {
+            return text;
+        }
+        int length = text.length();
+        StringBuilder escaped = new StringBuilder(length + 16);
+        escaped.append(text, 0, first);
+        for (int i = first; i < length; i++) {
+            char c = text.charAt(i);
+            String entity = entity(c);
+            if (entity != null) {
+                escaped.append(entity);
+            } else if (Character.isHighSurrogate(c) && isPairedHighSurrogate(text, i)) {
+                escaped.append(c).append(text.charAt(++i));
+            } else {
+                escaped.append(isXmlChar(c) ? c : REPLACEMENT);
+            }
+        }
+        return escaped.toString();
+    }
+    
+    /**
+     * Index of the first character that {@link #escape(String)} would not copy as-is, or -1
+     */
+    public static int indexOfUnsafe(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (!PLAIN_ESCAPED_TEXT[c]) {
+                    return i;
+                }
+            } else if (Character.isHighSurrogate(c) && isPairedHighSurrogate(text, i)) {
+                i++;
+            } else if (!isXmlChar(c)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Whether XML 1.0 allows a character; surrogates are allowed only as a pair
+     */
+    public static boolean isXmlChar(char c) {
+        return c < 0x80 ? PLAIN_TEXT[c] : !Character.isSurrogate(c) && c < 0xFFFE;
+    }
+    
+    /**
+     * Entity replacing a special character, or null
+     */
+    static String entity(char c) {
+        return switch (c) {
+            case '&' -> "&amp;";
+            case '<' -> "&lt;";
+            case '>' -> "&gt;";
+            case '"' -> "&quot;";
+            case '\'' -> "&apos;";
+            default -> null;
+        };
+    }
+    
+    /**
+     * ASCII characters a writer may copy without looking further
+     */
+    static boolean[] plainAscii(boolean escape) {
+        return escape ? PLAIN_ESCAPED_TEXT : PLAIN_TEXT;
+    }
+    
+    static boolean isPairedHighSurrogate(CharSequence text, int index) {
+        return index + 1 < text.length() && Character.isLowSurrogate(text.charAt(index + 1));
+    }
+}
@@ -5,6 +5,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest
@@ -47,4 +49,26 @@ class PaymentBuilderPropertiesTest {
         output.setDirectory("/custom/output");
         assertEquals("/custom/output", output.getDirectory());
     }
+
+    @Test
+    void testDefaultHeaderAliases() {
+        PaymentBuilderProperties.Input input = new PaymentBuilderProperties.Input();
+        assertEquals(24, input.getHeaderAliases().size());
+        assertEquals(List.of("amount", "instructed_amount", "payment_amount"), input.getHeaderAliases().get("amount"));
+    }
+
+    @Test
+    void testDefaultInternColumns() {
+        PaymentBuilderProperties.Input input = new PaymentBuilderProperties.Input();
+        assertTrue(input.getInternColumns().contains("currency"));
+        assertFalse(input.getInternColumns().contains("remittance_info"));
+        assertEquals(4096, input.getInternCacheSize());
+    }
+
+    @Test
+    void testDefaultIdGenerator() {
+        PaymentBuilderProperties.Output output = new PaymentBuilderProperties.Output();
+        assertEquals(PaymentBuilderProperties.IdGeneratorType.SEQUENTIAL, output.getIdGenerator());
+        assertNull(output.getNodeId());
+    }
 }
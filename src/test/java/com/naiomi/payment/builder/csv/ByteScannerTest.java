@@ -0,0 +1,43 @@
+package com.naiomi.payment.builder.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ByteScannerTest {
+
+    private static final byte[] ALPHABET = "abc,\"\n\r xyz0123456789".getBytes();
+
+    @Test
+    void testVectorScanner_MatchesScalarScanner() {
+        ByteScanner scalar = ByteScanners.create(false);
+        ByteScanner vector = ByteScanners.create(true);
+        Random random = new Random(7);
+        for (int sparseness : new int[]{1, 40, 400}) {
+            byte[] bytes = new byte[1000];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = random.nextInt(sparseness) == 0 ? ALPHABET[random.nextInt(ALPHABET.length)] : (byte) 'a';
+            }
+            for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(bytes), ByteBuffer.allocateDirect(bytes.length).put(bytes).flip()}) {
+                for (int from = 0; from < 200; from++) {
+                    int to = bytes.length - random.nextInt(100);
+                    assertEquals(scalar.indexOfDelimiter(buffer, from, to), vector.indexOfDelimiter(buffer, from, to));
+                    assertEquals(scalar.indexOfQuoteOrLineFeed(buffer, from, to), vector.indexOfQuoteOrLineFeed(buffer, from, to));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testScalarScanner_ReturnsEndWhenNotFound() {
+        ByteBuffer buffer = ByteBuffer.wrap("abc,def\"\n".getBytes());
+        ByteScanner scanner = ByteScanners.create(false);
+        assertEquals(3, scanner.indexOfDelimiter(buffer, 0, 9));
+        assertEquals(3, scanner.indexOfDelimiter(buffer, 0, 3));
+        assertEquals(7, scanner.indexOfQuoteOrLineFeed(buffer, 0, 9));
+        assertEquals(8, scanner.indexOfQuoteOrLineFeed(buffer, 8, 9));
+    }
+}
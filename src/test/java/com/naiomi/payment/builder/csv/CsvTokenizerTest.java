@@ -0,0 +1,187 @@
+package com.naiomi.payment.builder.csv;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvTokenizerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNext_QuotedFieldsWithCommasAndEscapedQuotes() throws IOException {
+        // Given
+        String csv = "name,remittance\n\"Smith, Jane\",\"Invoice \"\"123\"\", part 2\"\n";
+
+        // When
+        List<String[]> rows = tokenize(csv, MappedCsvInput.DEFAULT_WINDOW_SIZE);
+
+        // Then
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"Smith, Jane", "Invoice \"123\", part 2"}, rows.get(1));
+    }
+
+    @Test
+    void testNext_CrLfAndMissingTrailingLineBreak() throws IOException {
+        // Given
+        String csv = "a,b,c\r\n1,,3\r\n4,5,";
+
+        // When
+        List<String[]> rows = tokenize(csv, MappedCsvInput.DEFAULT_WINDOW_SIZE);
+
+        // Then
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[]{"1", "", "3"}, rows.get(1));
+        assertArrayEquals(new String[]{"4", "5", ""}, rows.get(2));
+    }
+
+    @Test
+    void testNext_QuotedLineBreakKeepsLineNumbers() throws IOException {
+        // Given
+        String csv = "a,b\n\"line one\nline two\",x\ny,z\n";
+        Path file = write(csv);
+
+        // When
+        try (CsvTokenizer tokenizer = new CsvTokenizer(MappedCsvInput.open(file, MappedCsvInput.DEFAULT_WINDOW_SIZE))) {
+            CsvRow row = new CsvRow();
+            tokenizer.next(row);
+            tokenizer.next(row);
+
+            // Then
+            assertEquals(2, row.getLineNumber());
+            assertEquals("line one\nline two", row.getString(0));
+            tokenizer.next(row);
+            assertEquals(4, row.getLineNumber());
+            assertEquals("y", row.getString(0));
+            assertFalse(tokenizer.next(row));
+        }
+    }
+
+    @Test
+    void testNext_RecordsSpanningSmallWindows() throws IOException {
+        // Given
+        String csv = "\uFEFFname,city\n\"Müller, Jürgen\",Köln\nÅsa,\"Malmö\"\r\n";
+
+        // When
+        List<String[]> rows = tokenize(csv, 4);
+
+        // Then
+        assertEquals(3, rows.size());
+        assertArrayEquals(new String[]{"name", "city"}, rows.get(0));
+        assertArrayEquals(new String[]{"Müller, Jürgen", "Köln"}, rows.get(1));
+        assertArrayEquals(new String[]{"Åsa", "Malmö"}, rows.get(2));
+    }
+
+    @Test
+    void testNext_TrimsUnquotedWhitespaceAndDetectsBlankLines() throws IOException {
+        // Given
+        Path file = write("a,b\n  x , y \n   \n");
+
+        // When
+        try (CsvTokenizer tokenizer = new CsvTokenizer(MappedCsvInput.open(file, 64))) {
+            CsvRow row = new CsvRow();
+            tokenizer.next(row);
+            tokenizer.next(row);
+
+            // Then
+            assertEquals("x", row.getString(0));
+            assertEquals("y", row.getString(1));
+            assertFalse(row.isBlank());
+            tokenizer.next(row);
+            assertTrue(row.isBlank());
+        }
+    }
+
+    @Test
+    void testNext_UnterminatedQuote() throws IOException {
+        // Given
+        Path file = write("a,b\n\"open,1\n");
+
+        // When/Then
+        try (CsvTokenizer tokenizer = new CsvTokenizer(MappedCsvInput.open(file, 64))) {
+            CsvRow row = new CsvRow();
+            tokenizer.next(row);
+            assertThrows(IllegalArgumentException.class, () -> tokenizer.next(row));
+        }
+    }
+
+    @Test
+    void testNext_VectorScanningMatchesScalar() throws IOException {
+        // Given
+        StringBuilder csv = new StringBuilder("name,remittance,amount\r\n");
+        for (int i = 0; i < 200; i++) {
+            String remittance = i % 3 == 0 ? "\"Invoice " + i + ", \"\"quoted\"\"\nline " + "x".repeat(i % 90) + "\"" : "Invoice " + i;
+            csv.append("Name ").append("y".repeat(i % 70)).append(',').append(remittance).append(',').append(i)
+                    .append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+
+        // When
+        List<String[]> scalar = tokenize(csv.toString(), 256, false);
+        List<String[]> vector = tokenize(csv.toString(), 256, true);
+
+        // Then
+        assertEquals(201, vector.size());
+        for (int i = 0; i < scalar.size(); i++) {
+            assertArrayEquals(scalar.get(i), vector.get(i));
+        }
+    }
+
+    @Test
+    void testNext_StreamingInputMatchesMapped() throws IOException {
+        // Given
+        StringBuilder csv = new StringBuilder("\uFEFFid,note\r\n");
+        for (int i = 0; i < 50; i++) {
+            csv.append(i).append(i % 7 == 0 ? ",\"long, quoted\nnote " + "x".repeat(i) + "\"\r\n" : ",plain\n");
+        }
+        byte[] bytes = csv.toString().getBytes(StandardCharsets.UTF_8);
+        List<String[]> expected = tokenize(csv.toString(), MappedCsvInput.DEFAULT_WINDOW_SIZE);
+
+        // When
+        List<String[]> rows = new ArrayList<>();
+        try (CsvTokenizer tokenizer = new CsvTokenizer(new StreamingCsvInput(new ByteArrayInputStream(bytes), 16))) {
+            CsvRow row = new CsvRow();
+            while (tokenizer.next(row)) {
+                rows.add(row.toStrings());
+            }
+        }
+
+        // Then
+        assertEquals(51, rows.size());
+        assertArrayEquals(new String[]{"id", "note"}, rows.get(0));
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), rows.get(i));
+        }
+    }
+
+    private List<String[]> tokenize(String csv, int windowSize) throws IOException {
+        return tokenize(csv, windowSize, false);
+    }
+
+    private List<String[]> tokenize(String csv, int windowSize, boolean vectorized) throws IOException {
+        Path file = write(csv);
+        List<String[]> rows = new ArrayList<>();
+        try (CsvTokenizer tokenizer = new CsvTokenizer(MappedCsvInput.open(file, windowSize), ByteScanners.create(vectorized))) {
+            CsvRow row = new CsvRow();
+            while (tokenizer.next(row)) {
+                rows.add(row.toStrings());
+            }
+        }
+        return rows;
+    }
+
+    private Path write(String csv) throws IOException {
+        Path file = tempDir.resolve("input.csv");
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
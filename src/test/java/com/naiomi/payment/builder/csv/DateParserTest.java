@@ -0,0 +1,40 @@
+package com.naiomi.payment.builder.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DateParserTest {
+
+    @Test
+    void testParseEpochDay_MatchesLocalDate() {
+        for (LocalDate date = LocalDate.of(1899, 12, 1); date.getYear() < 2101; date = date.plusDays(13)) {
+            assertEquals(date.toEpochDay(), parse(date.toString()), date.toString());
+        }
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), parse("2024-02-29"));
+        assertEquals(LocalDate.of(2000, 12, 31).toEpochDay(), parse("2000-12-31"));
+    }
+
+    @Test
+    void testParseEpochDay_Invalid() {
+        for (String value : new String[]{"2025-13-01", "2025-00-10", "2025-11-00", "2025-11-32"}) {
+            assertEquals(DateParser.INVALID, parse(value), value);
+        }
+    }
+
+    @Test
+    void testParseEpochDay_UnsupportedFallsBack() {
+        for (String value : new String[]{"invalid-date", "2025-02-30", "2025/11/15", "2025-1-5", "0000-01-01"}) {
+            assertEquals(DateParser.UNSUPPORTED, parse(value), value);
+        }
+    }
+
+    private int parse(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return DateParser.parseEpochDay(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
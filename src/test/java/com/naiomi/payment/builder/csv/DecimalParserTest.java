@@ -0,0 +1,42 @@
+package com.naiomi.payment.builder.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecimalParserTest {
+
+    @Test
+    void testParse_MatchesBigDecimal() {
+        String[] values = {"1000.50", "5500.00", "0", "-0.00", "+12.3", "007.50", "1.", ".5",
+                "999999999999999999", "0.000000000000000000001", "12345678901234567.8"};
+        for (String value : values) {
+            ScaledDecimal result = new ScaledDecimal();
+            assertEquals(DecimalParser.OK, parse(value, result), value);
+            assertEquals(new BigDecimal(value), result.toBigDecimal(), value);
+        }
+    }
+
+    @Test
+    void testParse_Invalid() {
+        for (String value : new String[]{"invalid_amount", "", "-", ".", "1.2.3", "1,5", "+-1", "12 3"}) {
+            assertEquals(DecimalParser.INVALID, parse(value, new ScaledDecimal()), value);
+        }
+    }
+
+    @Test
+    void testParse_UnsupportedFallsBack() {
+        for (String value : new String[]{"1E+3", "2.5e-2", "1234567890123456789", "123456789012345678.9", "١٢٣"}) {
+            assertEquals(DecimalParser.UNSUPPORTED, parse(value, new ScaledDecimal()), value);
+        }
+    }
+
+    private int parse(String value, ScaledDecimal result) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return DecimalParser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, result);
+    }
+}
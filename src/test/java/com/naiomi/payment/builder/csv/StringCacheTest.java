@@ -0,0 +1,54 @@
+package com.naiomi.payment.builder.csv;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringCacheTest {
+
+    @Test
+    void testGet_ReturnsSharedInstance() {
+        StringCache cache = new StringCache(16);
+        String first = get(cache, "xxEURyy", 2, 5);
+        String second = get(cache, "EUR", 0, 3);
+
+        assertEquals("EUR", first);
+        assertSame(first, second);
+        assertNotSame(first, get(cache, "USD", 0, 3));
+    }
+
+    @Test
+    void testGet_DecodesUtf8() {
+        StringCache cache = new StringCache(16);
+        assertEquals("Zürich GmbH", get(cache, "Zürich GmbH"));
+        assertSame(get(cache, "Zürich GmbH"), get(cache, "Zürich GmbH"));
+    }
+
+    @Test
+    void testGet_FullCacheStillDecodes() {
+        StringCache cache = new StringCache(1);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("value-" + i, get(cache, "value-" + i));
+        }
+    }
+
+    @Test
+    void testGet_LongValuesNotCached() {
+        StringCache cache = new StringCache(16);
+        String value = "x".repeat(100);
+        assertEquals(value, get(cache, value));
+        assertNotSame(get(cache, value), get(cache, value));
+    }
+
+    private String get(StringCache cache, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return cache.get(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    private String get(StringCache cache, String value, int start, int end) {
+        return cache.get(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)), start, end);
+    }
+}
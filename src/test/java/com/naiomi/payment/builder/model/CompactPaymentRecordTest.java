@@ -0,0 +1,90 @@
+package com.naiomi.payment.builder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactPaymentRecordTest {
+
+    @Test
+    void testFrom_RoundTripsPaymentRecord() {
+        PaymentRecord record = new PaymentRecord();
+        record.setDebtorName("John Doe");
+        record.setDebtorCountry("DE");
+        record.setCreditorName("Jane Smith");
+        record.setCreditorCountry("GB");
+        record.setInstructedAmount(new BigDecimal("1000.50"));
+        record.setCurrency("EUR");
+        record.setRequestedExecutionDate(LocalDate.of(2025, 11, 15));
+        record.setChargeBearer("SLEV");
+
+        CompactPaymentRecord compact = CompactPaymentRecord.from(record);
+
+        assertEquals(100050, compact.getAmountUnscaled());
+        assertEquals(2, compact.getAmountScale());
+        assertEquals(LocalDate.of(2025, 11, 15).toEpochDay(), compact.getExecutionEpochDay());
+        assertEquals(record, compact.toPaymentRecord());
+    }
+
+    @Test
+    void testFrom_EmptyRecord() {
+        CompactPaymentRecord compact = CompactPaymentRecord.from(new PaymentRecord());
+
+        assertFalse(compact.hasInstructedAmount());
+        assertNull(compact.getInstructedAmount());
+        assertNull(compact.getCurrency());
+        assertNull(compact.getDebtorCountry());
+        assertNull(compact.getRequestedExecutionDate());
+    }
+
+    @Test
+    void testIsoCodes_SharedInstances() {
+        assertSame(IsoCodes.currency(IsoCodes.currencyCode("USD")), IsoCodes.currency(IsoCodes.currencyCode("USD")));
+        assertEquals("ZZ", IsoCodes.country(IsoCodes.countryCode("ZZ")));
+        assertNotEquals(IsoCodes.currencyCode("EUR"), IsoCodes.currencyCode("USD"));
+    }
+
+    @Test
+    void testIsoCodes_InvalidCode() {
+        assertEquals(IsoCodes.currencyCode("EUR"), IsoCodes.currencyCode("eur"));
+        assertEquals(IsoCodes.UNPACKED, IsoCodes.currencyCode("EURO"));
+        assertEquals(IsoCodes.UNPACKED, IsoCodes.countryCode("D1"));
+        assertThrows(IllegalArgumentException.class, () -> IsoCodes.currency(IsoCodes.UNPACKED));
+    }
+
+    @Test
+    void testBuilder_KeepsUnpackableCodes() {
+        // Given
+        CompactPaymentRecord.Builder builder = new CompactPaymentRecord.Builder();
+        builder.setCurrency("euro");
+        builder.setDebtorCountry("de");
+        builder.setCreditorCountry("D1");
+
+        // When
+        CompactPaymentRecord record = builder.build();
+        CompactPaymentRecord empty = builder.reset().build();
+
+        // Then
+        assertEquals("euro", record.getCurrency());
+        assertEquals("DE", record.getDebtorCountry());
+        assertEquals("D1", record.getCreditorCountry());
+        assertNull(empty.getCurrency());
+        assertNull(empty.getCreditorCountry());
+    }
+
+    @Test
+    void testBuilder_ResetClearsFields() {
+        CompactPaymentRecord.Builder builder = new CompactPaymentRecord.Builder();
+        builder.setCreditorName("Jane Smith");
+        builder.setInstructedAmount(5, 2);
+        builder.build();
+
+        CompactPaymentRecord empty = builder.reset().build();
+
+        assertNull(empty.getCreditorName());
+        assertFalse(empty.hasInstructedAmount());
+    }
+}
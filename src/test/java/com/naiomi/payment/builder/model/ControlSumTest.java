@@ -0,0 +1,60 @@
+package com.naiomi.payment.builder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlSumTest {
+
+    @Test
+    void testAdd_RescalesToLargestScale() {
+        ControlSum sum = new ControlSum();
+        sum.add(100050, 2);
+        sum.add(5, 3);
+        sum.add(new BigDecimal("-12"));
+
+        assertEquals(new BigDecimal("988.505"), sum.toBigDecimal());
+    }
+
+    @Test
+    void testAdd_OverflowSwitchesToBigDecimal() {
+        ControlSum sum = new ControlSum();
+        sum.add(Long.MAX_VALUE, 0);
+        sum.add(Long.MAX_VALUE, 0);
+        sum.add(1, 2);
+
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.TWO).add(new BigDecimal("0.01")),
+                sum.toBigDecimal());
+    }
+
+    @Test
+    void testAdd_Payments() {
+        ControlSum sum = new ControlSum();
+        PaymentRecord record = new PaymentRecord();
+        record.setInstructedAmount(new BigDecimal("10.10"));
+        sum.add(record);
+        sum.add(CompactPaymentRecord.from(record));
+        sum.add(new PaymentRecord());
+
+        assertEquals(new BigDecimal("20.20"), sum.toBigDecimal());
+        assertEquals(BigDecimal.ZERO, new ControlSum().toBigDecimal());
+    }
+
+    @Test
+    void testPlainLength_MatchesFormattedSum() {
+        ControlSum sum = new ControlSum();
+        assertEquals(1, sum.plainLength());
+        sum.add(5, 3);
+        assertEquals("0.005".length(), sum.plainLength());
+        sum.add(-100050, 2);
+        assertEquals("-1000.495".length(), sum.plainLength());
+        sum.add(Long.MIN_VALUE, 0);
+        sum.add(Long.MIN_VALUE, 0);
+
+        StringBuilder formatted = new StringBuilder();
+        DecimalFormatter.append(formatted, sum.toBigDecimal());
+        assertEquals(formatted.length(), sum.plainLength());
+    }
+}
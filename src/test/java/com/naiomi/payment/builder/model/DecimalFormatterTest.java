@@ -0,0 +1,59 @@
+package com.naiomi.payment.builder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecimalFormatterTest {
+
+    @Test
+    void testAppend_MatchesBigDecimalPlainString() {
+        for (String value : new String[]{"1000.50", "0.05", "0.00", "-12.3", "7", "-0.001", "123456789012345678",
+                "0.000000001", "92233720368547758.08", "-9223372036854775808", "123456789012345678901234.5678"}) {
+            BigDecimal decimal = new BigDecimal(value);
+            assertEquals(decimal.toPlainString(), format(decimal), value);
+            if (decimal.unscaledValue().bitLength() < Long.SIZE) {
+                StringBuilder out = new StringBuilder();
+                DecimalFormatter.append(out, decimal.unscaledValue().longValue(), decimal.scale());
+                assertEquals(decimal.toPlainString(), out.toString(), value);
+            }
+        }
+    }
+
+    @Test
+    void testAppend_NegativeScaleWithoutExponent() {
+        assertEquals("1000", format(new BigDecimal("1E+3")));
+        assertEquals("0", format(new BigDecimal("0E+2")));
+    }
+
+    @Test
+    void testAppend_AppendsToExistingContent() {
+        StringBuilder out = new StringBuilder("<Amt>");
+        DecimalFormatter.append(out, 5, 2);
+        assertEquals("<Amt>0.05", out.toString());
+    }
+
+    @Test
+    void testWrite_MatchesAppend() {
+        long[] values = {0, 5, -5, 100050, -1, 123456789, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            for (int scale = -3; scale <= 21; scale++) {
+                StringBuilder expected = new StringBuilder();
+                DecimalFormatter.append(expected, value, scale);
+                byte[] out = new byte[2 + (int) DecimalFormatter.maxLength(scale)];
+                int end = DecimalFormatter.write(out, 2, value, scale);
+                assertEquals(expected.toString(), new String(out, 2, end - 2, StandardCharsets.US_ASCII),
+                        value + " scale " + scale);
+            }
+        }
+    }
+
+    private String format(BigDecimal value) {
+        StringBuilder out = new StringBuilder();
+        DecimalFormatter.append(out, value);
+        return out.toString();
+    }
+}
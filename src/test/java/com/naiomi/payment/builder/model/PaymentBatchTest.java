@@ -0,0 +1,94 @@
+package com.naiomi.payment.builder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentBatchTest {
+
+    @Test
+    void testAdd_RowsReadBackAsRecords() {
+        PaymentBatch batch = new PaymentBatch();
+        List<PaymentRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            PaymentRecord record = new PaymentRecord();
+            record.setDebtorName("Acme Corporation");
+            record.setDebtorCountry("DE");
+            record.setCreditorName("Creditor " + i);
+            record.setInstructedAmount(new BigDecimal(i + ".5"));
+            record.setCurrency(i % 2 == 0 ? "EUR" : "USD");
+            record.setRequestedExecutionDate(LocalDate.of(2025, 11, 1).plusDays(i % 30));
+            record.setChargeBearer(i % 3 == 0 ? null : "SLEV");
+            records.add(record);
+            batch.add(record);
+        }
+
+        assertEquals(1000, batch.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i), CompactPaymentRecord.from(batch.get(i)).toPaymentRecord());
+        }
+    }
+
+    @Test
+    void testAdd_HighCardinalityColumnFallsBackToPlainValues() {
+        PaymentBatch batch = new PaymentBatch();
+        for (int i = 0; i < 70000; i++) {
+            PaymentRecord record = new PaymentRecord();
+            record.setEndToEndId("E2E-" + i);
+            batch.add(record);
+        }
+
+        assertEquals("E2E-0", batch.get(0).getEndToEndId());
+        assertEquals("E2E-65534", batch.get(65534).getEndToEndId());
+        assertEquals("E2E-69999", batch.get(69999).getEndToEndId());
+        assertNull(batch.get(69999).getDebtorName());
+    }
+
+    @Test
+    void testIterator_VisitsRowsInOrder() {
+        PaymentBatch batch = new PaymentBatch();
+        for (String name : new String[]{"A", "B", "C"}) {
+            PaymentRecord record = new PaymentRecord();
+            record.setCreditorName(name);
+            batch.add(record);
+        }
+
+        StringBuilder names = new StringBuilder();
+        for (FixedPointPayment payment : batch) {
+            names.append(payment.getCreditorName());
+            assertFalse(payment.hasInstructedAmount());
+        }
+        assertEquals("ABC", names.toString());
+    }
+
+    @Test
+    void testControlSum() {
+        PaymentBatch batch = new PaymentBatch();
+        for (String amount : new String[]{"1000.50", "0.005", "12", "-2.5"}) {
+            PaymentRecord record = new PaymentRecord();
+            record.setInstructedAmount(new BigDecimal(amount));
+            batch.add(record);
+        }
+        batch.add(new PaymentRecord());
+
+        assertEquals(new BigDecimal("1010.005"), batch.controlSum());
+        assertEquals(BigDecimal.ZERO, new PaymentBatch().controlSum());
+    }
+
+    @Test
+    void testControlSum_OverflowFallsBackToBigDecimal() {
+        PaymentBatch batch = new PaymentBatch();
+        for (int i = 0; i < 3; i++) {
+            PaymentRecord record = new PaymentRecord();
+            record.setInstructedAmount(new BigDecimal("9000000000000000000"));
+            batch.add(record);
+        }
+
+        assertEquals(new BigDecimal("27000000000000000000"), batch.controlSum());
+    }
+}
@@ -1,16 +1,26 @@
 package com.naiomi.payment.builder.service;
 
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
+import com.naiomi.payment.builder.model.PaymentBatch;
 import com.naiomi.payment.builder.model.PaymentRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -18,12 +28,16 @@ class CsvParserServiceTest {
 
     private CsvParserService csvParserService;
 
+    private PaymentBuilderProperties.Input input;
+
     @TempDir
     Path tempDir;
 
     @BeforeEach
     void setUp() {
-        csvParserService = new CsvParserService();
+        input = new PaymentBuilderProperties.Input();
+        PaymentBuilderProperties properties = new PaymentBuilderProperties(input, new PaymentBuilderProperties.Output());
+        csvParserService = new CsvParserService(properties);
     }
 
     @Test
@@ -215,4 +229,321 @@ class CsvParserServiceTest {
         assertNull(record.getEndToEndId());
         assertNull(record.getRemittanceInformationUnstructured());
     }
+
+    @Test
+    void testParseCsvFile_QuotedFieldsWithCommas() throws IOException {
+        // Given
+        String csvContent = """
+                debtor_name,creditor_name,creditor_address_line1,amount,currency,remittance_info
+                "Doe, John",Jane Smith,"12 High Street, Flat 3",1000.50,EUR,"Invoice ""123"", final"
+                """;
+        
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, csvContent);
+
+        // When
+        List<PaymentRecord> records = csvParserService.parseCsvFile(csvFile);
+
+        // Then
+        assertEquals(1, records.size());
+        PaymentRecord record = records.get(0);
+        assertEquals("Doe, John", record.getDebtorName());
+        assertEquals("12 High Street, Flat 3", record.getCreditorAddressLine1());
+        assertEquals(new BigDecimal("1000.50"), record.getInstructedAmount());
+        assertEquals("Invoice \"123\", final", record.getRemittanceInformationUnstructured());
+    }
+
+    @Test
+    void testParseCsvFile_ConfiguredHeaderAliases() throws IOException {
+        // Given
+        input.getHeaderAliases().put("creditor_name", List.of("beneficiary", "creditor_name"));
+        input.getHeaderAliases().put("amount", List.of("betrag"));
+        String csvContent = """
+                Beneficiary,creditor_name,Betrag,amount
+                ,Jane Smith,250.00,999.99
+                Tech Solutions,Ignored,75.10,
+                """;
+        
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, csvContent);
+
+        // When
+        List<PaymentRecord> records = csvParserService.parseCsvFile(csvFile);
+
+        // Then
+        assertEquals(2, records.size());
+        assertEquals("Jane Smith", records.get(0).getCreditorName());
+        assertEquals(new BigDecimal("250.00"), records.get(0).getInstructedAmount());
+        assertEquals("Tech Solutions", records.get(1).getCreditorName());
+        assertEquals(new BigDecimal("75.10"), records.get(1).getInstructedAmount());
+    }
+
+    @Test
+    void testParseCsvFile_UnknownAliasField() throws IOException {
+        // Given
+        input.getHeaderAliases().put("debtor_shoe_size", List.of("shoe_size"));
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, "debtor_name,amount\nJohn Doe,10.00\n");
+
+        // When/Then
+        assertThrows(IllegalArgumentException.class, () -> csvParserService.parseCsvFile(csvFile));
+    }
+
+    @Test
+    void testParseCsvFile_ParallelChunksMatchSequential() throws IOException {
+        // Given
+        StringBuilder csvContent = new StringBuilder("debtor_name,creditor_name,amount,currency,remittance_info\n");
+        for (int i = 0; i < 500; i++) {
+            String remittance = i % 7 == 0 ? "\"Invoice " + i + ",\nsecond line\"" : "Invoice " + i;
+            String creditor = i % 50 == 0 ? "Screen 27\" Ltd" : "Creditor " + i;
+            csvContent.append("Debtor ").append(i).append(',').append(creditor).append(',')
+                    .append(i).append(".50,EUR,").append(remittance).append('\n');
+        }
+        Path csvFile = tempDir.resolve("large.csv");
+        Files.writeString(csvFile, csvContent);
+        List<PaymentRecord> sequential = csvParserService.parseCsvFile(csvFile);
+
+        // When
+        enableParallelParsing();
+        List<PaymentRecord> parallel = csvParserService.parseCsvFile(csvFile);
+
+        // Then
+        assertEquals(500, sequential.size());
+        assertEquals(sequential, parallel);
+        assertEquals("Invoice 497,\nsecond line", parallel.get(497).getRemittanceInformationUnstructured());
+    }
+
+    @Test
+    void testParseCsvFile_SimdScanningMatchesScalar() throws IOException {
+        // Given
+        StringBuilder csvContent = new StringBuilder("debtor_name,creditor_name,amount,currency,remittance_info\n");
+        for (int i = 0; i < 300; i++) {
+            String remittance = i % 5 == 0 ? "\"Invoice " + i + ", \"\"part\"\"\nnext\"" : "Invoice " + i;
+            csvContent.append("Debtor ").append(i).append(",Creditor,").append(i).append(".25,EUR,")
+                    .append(remittance).append('\n');
+        }
+        Path csvFile = tempDir.resolve("large.csv");
+        Files.writeString(csvFile, csvContent);
+        List<PaymentRecord> scalar = csvParserService.parseCsvFile(csvFile);
+
+        // When
+        input.setSimdScanning(true);
+        List<PaymentRecord> sequential = csvParserService.parseCsvFile(csvFile);
+        enableParallelParsing();
+        List<PaymentRecord> parallel = csvParserService.parseCsvFile(csvFile);
+
+        // Then
+        assertEquals(300, scalar.size());
+        assertEquals(scalar, sequential);
+        assertEquals(scalar, parallel);
+    }
+
+    @Test
+    void testParseCsvFile_GzipCompressedMatchesPlain() throws IOException {
+        // Given
+        StringBuilder csvContent = new StringBuilder("debtor_name,creditor_name,amount,currency,remittance_info\n");
+        for (int i = 0; i < 300; i++) {
+            csvContent.append("Debtor ").append(i).append(",Creditor,").append(i).append(".25,EUR,\"Invoice ")
+                    .append(i).append(",\npart\"\n");
+        }
+        Path csvFile = tempDir.resolve("payments.csv");
+        Files.writeString(csvFile, csvContent);
+        Path gzipFile = tempDir.resolve("payments.csv.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipFile))) {
+            Files.copy(csvFile, out);
+        }
+        enableParallelParsing();
+
+        // When
+        List<PaymentRecord> compressed = csvParserService.parseCsvFile(gzipFile);
+
+        // Then
+        assertEquals(300, compressed.size());
+        assertEquals(csvParserService.parseCsvFile(csvFile), compressed);
+    }
+
+    @Test
+    void testParseCsvFile_ParallelErrorReportsLineNumber() throws IOException {
+        // Given
+        StringBuilder csvContent = new StringBuilder("debtor_name,creditor_name,amount,currency,remittance_info\n");
+        for (int i = 0; i < 300; i++) {
+            String amount = i == 250 ? "invalid_amount" : i + ".00";
+            csvContent.append("Debtor,Creditor,").append(amount).append(",EUR,\"multi\nline\"\n");
+        }
+        Path csvFile = tempDir.resolve("large.csv");
+        Files.writeString(csvFile, csvContent);
+        enableParallelParsing();
+
+        // When/Then
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            csvParserService.parseCsvFile(csvFile);
+        });
+        assertTrue(exception.getMessage().startsWith("Error parsing line 502:"));
+    }
+
+    @Test
+    void testStreamCsvFile_ReadsRecordsLazily() throws IOException {
+        // Given
+        String csvContent = """
+                debtor_name,creditor_name,amount,currency
+                John Doe,Jane Smith,1000.50,EUR
+                
+                Acme Corp,Tech Solutions,invalid_amount,USD
+                """;
+        
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, csvContent);
+
+        // When
+        try (Stream<PaymentRecord> records = csvParserService.streamCsvFile(csvFile)) {
+            Iterator<PaymentRecord> iterator = records.iterator();
+
+            // Then
+            assertEquals("John Doe", iterator.next().getDebtorName());
+            RuntimeException exception = assertThrows(RuntimeException.class, iterator::next);
+            assertTrue(exception.getMessage().startsWith("Error parsing line 4"));
+        }
+    }
+
+    @Test
+    void testParseCsvFile_InternedColumnsShareInstances() throws IOException {
+        // Given
+        String csvContent = """
+                debtor_name,creditor_name,amount,currency
+                John Doe,Jane Smith,1000.50,EUR
+                John Doe,Jane Smith,200.00,EUR
+                """;
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, csvContent);
+
+        // When
+        List<PaymentRecord> records = csvParserService.parseCsvFile(csvFile);
+
+        // Then
+        assertSame(records.get(0).getCurrency(), records.get(1).getCurrency());
+        assertSame(records.get(0).getDebtorName(), records.get(1).getDebtorName());
+        assertNotSame(records.get(0).getCreditorName(), records.get(1).getCreditorName());
+        assertEquals("Jane Smith", records.get(1).getCreditorName());
+    }
+
+    @Test
+    void testParseCsvFile_UnpackableCurrencyCode() throws IOException {
+        // Given
+        String csvContent = """
+                debtor_name,creditor_name,amount,currency
+                John Doe,Jane Smith,1000.50,euro
+                John Doe,Jane Smith,1000.50,usd
+                """;
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, csvContent);
+
+        // When
+        List<PaymentRecord> records = csvParserService.parseCsvFile(csvFile);
+        PaymentBatch batch = csvParserService.parseBatch(csvFile);
+
+        // Then
+        assertEquals("euro", records.get(0).getCurrency());
+        assertEquals("USD", records.get(1).getCurrency());
+        assertEquals("euro", batch.get(0).getCurrency());
+        assertEquals("USD", batch.get(1).getCurrency());
+    }
+
+    @Test
+    void testParseBatch_MatchesRecordList() throws IOException {
+        // Given
+        String csvContent = """
+                debtor_name,creditor_name,amount,currency,execution_date,debtor_country
+                John Doe,Jane Smith,1000.50,EUR,2025-11-15,DE
+                
+                John Doe,Tech Solutions,75.10,USD,,
+                """;
+        Path csvFile = tempDir.resolve("test.csv");
+        Files.writeString(csvFile, csvContent);
+
+        // When
+        List<PaymentRecord> records = csvParserService.parseCsvFile(csvFile);
+        PaymentBatch batch = csvParserService.parseBatch(csvFile);
+
+        // Then
+        assertEquals(2, batch.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(records.get(i), CompactPaymentRecord.from(batch.get(i)).toPaymentRecord());
+        }
+        assertEquals(new BigDecimal("1075.60"), batch.controlSum());
+    }
+
+    @Test
+    void testOpenPayments_ContinuesFromCursorPosition() throws IOException {
+        // Given
+        StringBuilder csvContent = new StringBuilder("debtor_name,creditor_name,amount,currency,remittance_info\n");
+        for (int i = 0; i < 500; i++) {
+            String remittance = i % 7 == 0 ? "\"Invoice " + i + ",\nsecond line\"" : "Invoice " + i;
+            csvContent.append("Debtor ").append(i).append(",Creditor ").append(i).append(',')
+                    .append(i).append(".50,EUR,").append(remittance).append('\n');
+        }
+        Path csvFile = tempDir.resolve("large.csv");
+        Files.writeString(csvFile, csvContent);
+        List<PaymentRecord> expected = csvParserService.parseCsvFile(csvFile);
+        enableParallelParsing();
+
+        // When
+        long offset = -1;
+        long lineNumber = 0;
+        int read = 0;
+        try (CsvParserService.RecordCursor cursor = csvParserService.openPayments(csvFile, 0, 0)) {
+            while (read < 250 || offset < 0) {
+                cursor.next();
+                read++;
+                offset = cursor.offset();
+                lineNumber = cursor.lineNumber();
+            }
+        }
+        List<PaymentRecord> remaining = new ArrayList<>();
+        try (CsvParserService.RecordCursor cursor = csvParserService.openPayments(csvFile, offset, lineNumber)) {
+            cursor.forEachRemaining(record -> remaining.add(record.toPaymentRecord()));
+        }
+
+        // Then
+        assertTrue(read < 500);
+        assertEquals(expected.subList(read, 500), remaining);
+    }
+
+    @Test
+    void testTailPayments_ReadsOnlyCompleteRecords() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("ledger.csv");
+        Files.writeString(csvFile, """
+                debtor_name,creditor_name,amount,currency,remittance_info
+                Debtor 0,Creditor 0,10.00,EUR,Invoice 0
+                Debtor 1,Creditor 1,11.00,EUR,"Invoice 1,
+                second line""");
+
+        // When
+        long offset;
+        long lineNumber;
+        List<String> before = new ArrayList<>();
+        try (CsvParserService.RecordCursor cursor = csvParserService.tailPayments(csvFile, 0, 0)) {
+            cursor.forEachRemaining(record -> before.add(record.getDebtorName()));
+            offset = cursor.offset();
+            lineNumber = cursor.lineNumber();
+        }
+        Files.writeString(csvFile, "\"\nDebtor 2,Creditor 2,1", StandardOpenOption.APPEND);
+        List<PaymentRecord> after = new ArrayList<>();
+        try (CsvParserService.RecordCursor cursor = csvParserService.tailPayments(csvFile, offset, lineNumber)) {
+            cursor.forEachRemaining(record -> after.add(record.toPaymentRecord()));
+        }
+
+        // Then
+        assertEquals(List.of("Debtor 0"), before);
+        assertEquals(3, lineNumber);
+        assertEquals(1, after.size());
+        assertEquals("Debtor 1", after.get(0).getDebtorName());
+        assertEquals("Invoice 1,\nsecond line", after.get(0).getRemittanceInformationUnstructured());
+    }
+
+    private void enableParallelParsing() {
+        input.setParallelism(4);
+        input.setParallelThreshold(DataSize.ofBytes(0));
+        input.setParallelChunkSize(DataSize.ofBytes(256));
+    }
 }
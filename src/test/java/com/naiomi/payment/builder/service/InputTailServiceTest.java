@@ -0,0 +1,120 @@
+package com.naiomi.payment.builder.service;
+
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InputTailServiceTest {
+
+    private static final long WINDOW_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private PaymentBuilderProperties properties;
+    private PaymentBuilderService paymentBuilderService;
+    private InputTailService tailer;
+    private Path inputDir;
+    private Path outputDir;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        properties = new PaymentBuilderProperties(
+                new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output());
+        inputDir = Files.createDirectories(tempDir.resolve("input"));
+        outputDir = Files.createDirectories(tempDir.resolve("output"));
+        paymentBuilderService = mock(PaymentBuilderService.class);
+        tailer = new InputTailService(properties, paymentBuilderService);
+    }
+
+    @Test
+    void testPoll_GrownFileWritesFullMessagesAndFlushesAfterWindow() throws Exception {
+        // Given
+        Path csvFile = Files.writeString(inputDir.resolve("ledger.csv"), "header\nrow\n");
+        Files.writeString(inputDir.resolve("ledger.csv.gz"), "compressed");
+
+        // When
+        tailer.poll(inputDir, outputDir, 0);
+        tailer.poll(inputDir, outputDir, WINDOW_NANOS - 1);
+        tailer.poll(inputDir, outputDir, WINDOW_NANOS);
+        tailer.poll(inputDir, outputDir, 2 * WINDOW_NANOS);
+
+        // Then
+        verify(paymentBuilderService).processAppendedRecords(csvFile, outputDir, false);
+        verify(paymentBuilderService).processAppendedRecords(csvFile, outputDir, true);
+        verifyNoMoreInteractions(paymentBuilderService);
+    }
+
+    @Test
+    void testPoll_OnlyFilesMatchingGlobAreTailed() throws Exception {
+        // Given
+        properties.getInput().setFileGlob("ledger-*.csv");
+        Path csvFile = Files.writeString(inputDir.resolve("ledger-1.csv"), "header\nrow\n");
+        Files.writeString(inputDir.resolve("archive.csv"), "header\nrow\n");
+
+        // When
+        tailer.poll(inputDir, outputDir, 0);
+
+        // Then
+        verify(paymentBuilderService).processAppendedRecords(csvFile, outputDir, false);
+        verifyNoMoreInteractions(paymentBuilderService);
+    }
+
+    @Test
+    void testTail_RejectsInputShardLevels() {
+        // Given
+        properties.getInput().setShardLevels(1);
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> tailer.tail());
+    }
+
+    @Test
+    void testPoll_WindowStartsWithFirstPendingAppend() throws Exception {
+        // Given
+        Path csvFile = Files.writeString(inputDir.resolve("ledger.csv"), "header\nrow\n");
+        tailer.poll(inputDir, outputDir, 0);
+        tailer.poll(inputDir, outputDir, WINDOW_NANOS);
+
+        // When
+        Files.writeString(csvFile, "row\n", StandardOpenOption.APPEND);
+        tailer.poll(inputDir, outputDir, 2 * WINDOW_NANOS);
+        Files.writeString(csvFile, "row\n", StandardOpenOption.APPEND);
+        tailer.poll(inputDir, outputDir, 3 * WINDOW_NANOS - 1);
+        tailer.poll(inputDir, outputDir, 3 * WINDOW_NANOS);
+
+        // Then
+        verify(paymentBuilderService, times(3)).processAppendedRecords(csvFile, outputDir, false);
+        verify(paymentBuilderService, times(2)).processAppendedRecords(csvFile, outputDir, true);
+    }
+
+    @Test
+    void testPoll_FailedFileIsRetriedOnlyWhenItGrows() throws Exception {
+        // Given
+        Path csvFile = Files.writeString(inputDir.resolve("ledger.csv"), "header\nrow\n");
+        when(paymentBuilderService.processAppendedRecords(any(), any(), anyBoolean()))
+                .thenThrow(new IllegalArgumentException("Error parsing line 2"));
+
+        // When
+        tailer.poll(inputDir, outputDir, 0);
+        tailer.poll(inputDir, outputDir, 2 * WINDOW_NANOS);
+        Files.writeString(csvFile, "row\n", StandardOpenOption.APPEND);
+        tailer.poll(inputDir, outputDir, 3 * WINDOW_NANOS);
+
+        // Then
+        verify(paymentBuilderService, times(2)).processAppendedRecords(eq(csvFile), eq(outputDir), eq(false));
+        verifyNoMoreInteractions(paymentBuilderService);
+    }
+}
@@ -0,0 +1,167 @@
+package com.naiomi.payment.builder.service;
+
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.config.PaymentBuilderProperties.FileCompletion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class InputWatcherServiceTest {
+
+    private static final long STABLE_NANOS = Duration.ofSeconds(2).toNanos();
+
+    private PaymentBuilderProperties properties;
+    private PaymentBuilderService paymentBuilderService;
+    private InputWatcherService watcher;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        properties = new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output());
+        properties.getInput().setDirectory(tempDir.resolve("input").toString());
+        properties.getOutput().setDirectory(tempDir.resolve("output").toString());
+        paymentBuilderService = mock(PaymentBuilderService.class);
+        watcher = new InputWatcherService(properties, paymentBuilderService);
+    }
+
+    @Test
+    void testPoll_SizeStableFileIsReadyAfterStableTime() throws Exception {
+        // Given
+        Path csvFile = Files.writeString(tempDir.resolve("payments.csv"), "header\n");
+        watcher.offer(csvFile);
+        watcher.offer(tempDir.resolve("notes.txt"));
+
+        // When / Then
+        assertTrue(watcher.poll(0).isEmpty());
+        assertTrue(watcher.poll(STABLE_NANOS - 1).isEmpty());
+        assertEquals(List.of(csvFile), watcher.poll(STABLE_NANOS));
+        assertTrue(watcher.poll(2 * STABLE_NANOS).isEmpty());
+    }
+
+    @Test
+    void testPoll_GrowingFileWaitsUntilUnchanged() throws Exception {
+        // Given
+        Path csvFile = Files.writeString(tempDir.resolve("payments.csv"), "header\n");
+        watcher.offer(csvFile);
+        assertTrue(watcher.poll(0).isEmpty());
+
+        // When
+        Files.writeString(csvFile, "row\n", StandardOpenOption.APPEND);
+
+        // Then
+        assertTrue(watcher.poll(STABLE_NANOS).isEmpty());
+        assertTrue(watcher.poll(2 * STABLE_NANOS - 1).isEmpty());
+        assertEquals(List.of(csvFile), watcher.poll(2 * STABLE_NANOS));
+    }
+
+    @Test
+    void testPoll_UnchangedFileIsNotProcessedAgain() throws Exception {
+        // Given
+        Path csvFile = Files.writeString(tempDir.resolve("payments.csv"), "header\n");
+        watcher.offer(csvFile);
+        watcher.poll(0);
+        assertEquals(List.of(csvFile), watcher.poll(STABLE_NANOS));
+
+        // When
+        watcher.rescan(tempDir);
+        watcher.poll(2 * STABLE_NANOS);
+
+        // Then
+        assertTrue(watcher.poll(3 * STABLE_NANOS).isEmpty());
+    }
+
+    @Test
+    void testPoll_OnlyFilesMatchingGlobAreReady() throws Exception {
+        // Given
+        properties.getInput().setFileGlob("payments-*.csv");
+        Path csvFile = Files.writeString(tempDir.resolve("payments-1.csv"), "header\n");
+        Path excluded = Files.writeString(tempDir.resolve("refunds-1.csv"), "header\n");
+
+        // When
+        watcher.offer(csvFile);
+        watcher.offer(excluded);
+        watcher.poll(0);
+
+        // Then
+        assertEquals(List.of(csvFile), watcher.poll(STABLE_NANOS));
+    }
+
+    @Test
+    void testWatch_RejectsInputShardLevels() {
+        // Given
+        properties.getInput().setShardLevels(2);
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> watcher.watch());
+    }
+
+    @Test
+    void testPoll_DoneMarkerMakesFileReady() throws Exception {
+        // Given
+        properties.getInput().setCompletion(FileCompletion.DONE_MARKER);
+        Path csvFile = Files.writeString(tempDir.resolve("payments.csv"), "header\n");
+        watcher.offer(csvFile);
+        assertTrue(watcher.poll(STABLE_NANOS).isEmpty());
+
+        // When
+        Path marker = Files.createFile(tempDir.resolve("payments.csv.done"));
+        watcher.offer(marker);
+
+        // Then
+        assertEquals(List.of(csvFile), watcher.poll(0));
+    }
+
+    @Test
+    void testWatch_ProcessesFileThatLandsAndConsumesMarker() throws Exception {
+        // Given
+        properties.getInput().setCompletion(FileCompletion.DONE_MARKER);
+        Path inputDir = tempDir.resolve("input");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(inputDir);
+        CountDownLatch processed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            processed.countDown();
+            return 1;
+        }).when(paymentBuilderService).processFiles(any(), any());
+        Thread watching = Thread.ofVirtual().start(() -> {
+            try {
+                watcher.watch();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        try {
+            // When
+            Path csvFile = Files.writeString(inputDir.resolve("payments.csv"), "header\n");
+            Path marker = Files.createFile(inputDir.resolve("payments.csv.done"));
+
+            // Then
+            assertTrue(processed.await(10, TimeUnit.SECONDS));
+            verify(paymentBuilderService).processFiles(eq(List.of(csvFile)), eq(outputDir));
+            for (int i = 0; i < 100 && Files.exists(marker); i++) {
+                Thread.sleep(50);
+            }
+            assertFalse(Files.exists(marker));
+        } finally {
+            watcher.stop();
+            watching.join(10_000);
+        }
+        assertFalse(watching.isAlive());
+    }
+}
@@ -1,19 +1,31 @@
 package com.naiomi.payment.builder.service;
 
 import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
 import com.naiomi.payment.builder.model.PaymentRecord;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
+import org.springframework.util.unit.DataSize;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -68,17 +80,17 @@ class PaymentBuilderServiceTest {
         when(input.getDirectory()).thenReturn(inputDir.toString());
         when(output.getDirectory()).thenReturn(outputDir.toString());
         
-        List<PaymentRecord> records = createSampleRecords();
-        when(csvParserService.parseCsvFile(any())).thenReturn(records);
-        when(messageGeneratorService.generatePaymentMessage(any())).thenReturn("<xml>test</xml>");
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
 
         // When
         int processedCount = paymentBuilderService.processInputFiles();
 
         // Then
         assertEquals(1, processedCount);
-        verify(csvParserService, times(1)).parseCsvFile(any());
-        verify(messageGeneratorService, times(1)).generatePaymentMessage(any());
+        verify(csvParserService, times(1)).streamPayments(any());
+        verify(messageGeneratorService, times(1)).writePaymentMessage(any(Iterator.class), any(FileChannel.class));
         
         // Verify output file was created
         Path outputFile = outputDir.resolve("payments_pain013.xml");
@@ -103,17 +115,17 @@ class PaymentBuilderServiceTest {
         when(input.getDirectory()).thenReturn(inputDir.toString());
         when(output.getDirectory()).thenReturn(outputDir.toString());
         
-        List<PaymentRecord> records = createSampleRecords();
-        when(csvParserService.parseCsvFile(any())).thenReturn(records);
-        when(messageGeneratorService.generatePaymentMessage(any())).thenReturn("<xml>test</xml>");
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
 
         // When
         int processedCount = paymentBuilderService.processInputFiles();
 
         // Then
         assertEquals(3, processedCount);
-        verify(csvParserService, times(3)).parseCsvFile(any());
-        verify(messageGeneratorService, times(3)).generatePaymentMessage(any());
+        verify(csvParserService, times(3)).streamPayments(any());
+        verify(messageGeneratorService, times(3)).writePaymentMessage(any(Iterator.class), any(FileChannel.class));
     }
 
     @Test
@@ -131,8 +143,8 @@ class PaymentBuilderServiceTest {
 
         // Then
         assertEquals(0, processedCount);
-        verify(csvParserService, never()).parseCsvFile(any());
-        verify(messageGeneratorService, never()).generatePaymentMessage(any());
+        verify(csvParserService, never()).streamPayments(any());
+        verify(messageGeneratorService, never()).writePaymentMessage(any(Iterator.class), any(FileChannel.class));
     }
 
     @Test
@@ -155,7 +167,7 @@ class PaymentBuilderServiceTest {
 
         // Then
         assertEquals(0, processedCount);
-        verify(csvParserService, never()).parseCsvFile(any());
+        verify(csvParserService, never()).streamPayments(any());
     }
 
     @Test
@@ -194,26 +206,205 @@ class PaymentBuilderServiceTest {
         when(input.getDirectory()).thenReturn(inputDir.toString());
         when(output.getDirectory()).thenReturn(outputDir.toString());
         
-        List<PaymentRecord> records = createSampleRecords();
+        List<CompactPaymentRecord> records = createSampleRecords();
         
         // Mock to throw exception for bad.csv
-        when(csvParserService.parseCsvFile(any())).thenAnswer(invocation -> {
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> {
             Path path = invocation.getArgument(0);
             if (path.getFileName().toString().equals("bad.csv")) {
                 throw new RuntimeException("Invalid CSV format");
             }
-            return records;
+            return records.stream();
         });
         
-        when(messageGeneratorService.generatePaymentMessage(any())).thenReturn("<xml>test</xml>");
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
 
         // When
         int processedCount = paymentBuilderService.processInputFiles();
 
         // Then
         assertEquals(2, processedCount); // Only good.csv and good2.csv processed
-        verify(csvParserService, times(3)).parseCsvFile(any());
-        verify(messageGeneratorService, times(2)).generatePaymentMessage(any());
+        verify(csvParserService, times(3)).streamPayments(any());
+        verify(messageGeneratorService, times(2)).writePaymentMessage(any(Iterator.class), any(FileChannel.class));
+    }
+
+    @Test
+    void testProcessInputFiles_CompressedFileNextToPlainFileFails() throws IOException {
+        // Given
+        Path inputDir = tempDir.resolve("input");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(inputDir);
+        
+        Path plainFile = inputDir.resolve("payments.csv");
+        Path compressedFile = inputDir.resolve("payments.csv.gz");
+        Files.writeString(plainFile, "test,data\n");
+        Files.writeString(compressedFile, "test,data\n");
+        
+        when(input.getDirectory()).thenReturn(inputDir.toString());
+        when(output.getDirectory()).thenReturn(outputDir.toString());
+        when(input.getMaxConcurrentFiles()).thenReturn(4);
+        
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
+
+        // When
+        int processedCount = paymentBuilderService.processInputFiles();
+
+        // Then
+        assertEquals(1, processedCount);
+        verify(csvParserService).streamPayments(plainFile);
+        verify(csvParserService, never()).streamPayments(compressedFile);
+        assertEquals("<xml>test</xml>", Files.readString(outputDir.resolve("payments_pain013.xml")));
+    }
+
+    @Test
+    void testProcessInputFiles_ConcurrentFilesWithErrors() throws IOException {
+        // Given
+        Path inputDir = tempDir.resolve("input");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(inputDir);
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(inputDir.resolve((i % 7 == 3 ? "bad" : "good") + i + ".csv"), "test,data\n");
+        }
+        
+        when(input.getDirectory()).thenReturn(inputDir.toString());
+        when(output.getDirectory()).thenReturn(outputDir.toString());
+        when(input.getMaxConcurrentFiles()).thenReturn(4);
+        
+        List<CompactPaymentRecord> records = createSampleRecords();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } finally {
+                running.decrementAndGet();
+            }
+            Path path = invocation.getArgument(0);
+            if (path.getFileName().toString().startsWith("bad")) {
+                throw new RuntimeException("Invalid CSV format");
+            }
+            return records.stream();
+        });
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
+
+        // When
+        int processedCount = paymentBuilderService.processInputFiles();
+
+        // Then
+        assertEquals(17, processedCount);
+        assertTrue(maxRunning.get() > 1);
+        assertTrue(maxRunning.get() <= 4);
+        verify(csvParserService, times(20)).streamPayments(any());
+        try (Stream<Path> files = Files.list(outputDir)) {
+            assertEquals(17, files.count());
+        }
+    }
+
+    @Test
+    void testProcessInputFiles_SkipsUnchangedFiles() throws IOException {
+        // Given
+        Path inputDir = tempDir.resolve("input");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(inputDir);
+        Path unchanged = Files.writeString(inputDir.resolve("unchanged.csv"), "test,data\n");
+        Path changed = Files.writeString(inputDir.resolve("changed.csv"), "test,data\n");
+
+        when(input.getDirectory()).thenReturn(inputDir.toString());
+        when(output.getDirectory()).thenReturn(outputDir.toString());
+        when(output.isSkipUnchanged()).thenReturn(true);
+
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
+        assertEquals(2, paymentBuilderService.processInputFiles());
+
+        // When
+        Files.writeString(changed, "test,data,more\n");
+        int processedCount = paymentBuilderService.processInputFiles();
+
+        // Then
+        assertEquals(1, processedCount);
+        verify(csvParserService, times(1)).streamPayments(unchanged);
+        verify(csvParserService, times(2)).streamPayments(changed);
+        assertTrue(Files.exists(outputDir.resolve(RunManifest.FILE_NAME)));
+    }
+
+    @Test
+    void testProcessInputFiles_StopsAfterMaxFilesPerRun() throws IOException {
+        // Given
+        Path inputDir = tempDir.resolve("input");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(inputDir);
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(inputDir.resolve("payments" + i + ".csv"), "test,data\n");
+        }
+        // Not a file, so never claimed
+        Files.createDirectories(inputDir.resolve("directory.csv"));
+
+        when(input.getDirectory()).thenReturn(inputDir.toString());
+        when(output.getDirectory()).thenReturn(outputDir.toString());
+        when(output.isSkipUnchanged()).thenReturn(true);
+        when(input.getMaxFilesPerRun()).thenReturn(2);
+
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
+
+        // When
+        List<Integer> processedCounts = new ArrayList<>();
+        for (int run = 0; run < 4; run++) {
+            processedCounts.add(paymentBuilderService.processInputFiles());
+        }
+
+        // Then
+        assertEquals(List.of(2, 2, 1, 0), processedCounts);
+        verify(csvParserService, times(5)).streamPayments(any());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(Files.exists(outputDir.resolve("payments" + i + "_pain013.xml")));
+        }
+    }
+
+    @Test
+    void testProcessInputFiles_ShardedInputAndOutputDirectories() throws IOException {
+        // Given
+        Path inputDir = tempDir.resolve("input");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(inputDir.resolve("3f").resolve("a1"));
+        Path top = Files.writeString(inputDir.resolve("payments-top.csv"), "test,data\n");
+        Path sharded = Files.writeString(inputDir.resolve("3f").resolve("payments-sharded.csv"), "test,data\n");
+        Path tooDeep = Files.writeString(inputDir.resolve("3f").resolve("a1").resolve("payments-deep.csv"), "test,data\n");
+        Path notMatching = Files.writeString(inputDir.resolve("3f").resolve("refunds.csv"), "test,data\n");
+
+        when(input.getDirectory()).thenReturn(inputDir.toString());
+        when(output.getDirectory()).thenReturn(outputDir.toString());
+        when(output.isSkipUnchanged()).thenReturn(true);
+        when(input.getFileGlob()).thenReturn("payments-*.csv");
+        when(input.getShardLevels()).thenReturn(1);
+        when(output.getShardLevels()).thenReturn(2);
+
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(any())).thenAnswer(invocation -> records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
+
+        // When
+        int processedCount = paymentBuilderService.processInputFiles();
+        int reprocessedCount = paymentBuilderService.processInputFiles();
+
+        // Then
+        assertEquals(2, processedCount);
+        assertEquals(0, reprocessedCount);
+        verify(csvParserService, times(1)).streamPayments(top);
+        verify(csvParserService, times(1)).streamPayments(sharded);
+        verify(csvParserService, never()).streamPayments(tooDeep);
+        verify(csvParserService, never()).streamPayments(notMatching);
+        Path topShard = PaymentBuilderService.shardDirectory(outputDir, "payments-top.csv", 2);
+        Path shardedShard = PaymentBuilderService.shardDirectory(outputDir, "payments-sharded.csv", 2);
+        assertEquals(2, outputDir.relativize(topShard).getNameCount());
+        assertTrue(Files.exists(topShard.resolve("payments-top_pain013.xml")));
+        assertTrue(Files.exists(shardedShard.resolve("payments-sharded_pain013.xml")));
     }
 
     @Test
@@ -224,9 +415,9 @@ class PaymentBuilderServiceTest {
         Files.createDirectories(outputDir);
         Files.writeString(csvFile, "test,data\n");
         
-        List<PaymentRecord> records = createSampleRecords();
-        when(csvParserService.parseCsvFile(csvFile)).thenReturn(records);
-        when(messageGeneratorService.generatePaymentMessage(records)).thenReturn("<xml>payment</xml>");
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(csvFile)).thenReturn(records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>payment</xml>"));
 
         // When
         paymentBuilderService.processFile(csvFile, outputDir);
@@ -245,13 +436,13 @@ class PaymentBuilderServiceTest {
         Files.createDirectories(outputDir);
         Files.writeString(csvFile, "header\n");
         
-        when(csvParserService.parseCsvFile(csvFile)).thenReturn(new ArrayList<>());
+        when(csvParserService.streamPayments(csvFile)).thenReturn(Stream.empty());
 
         // When
         paymentBuilderService.processFile(csvFile, outputDir);
 
         // Then
-        verify(messageGeneratorService, never()).generatePaymentMessage(any());
+        verify(messageGeneratorService, never()).writePaymentMessage(any(Iterator.class), any(FileChannel.class));
         
         Path outputFile = outputDir.resolve("empty_pain013.xml");
         assertFalse(Files.exists(outputFile));
@@ -265,9 +456,9 @@ class PaymentBuilderServiceTest {
         Files.createDirectories(outputDir);
         Files.writeString(csvFile, "test,data\n");
         
-        List<PaymentRecord> records = createSampleRecords();
-        when(csvParserService.parseCsvFile(csvFile)).thenReturn(records);
-        when(messageGeneratorService.generatePaymentMessage(records)).thenReturn("<xml>test</xml>");
+        List<CompactPaymentRecord> records = createSampleRecords();
+        when(csvParserService.streamPayments(csvFile)).thenReturn(records.stream());
+        when(messageGeneratorService.writePaymentMessage(any(Iterator.class), any(FileChannel.class))).thenAnswer(writeXml("<xml>test</xml>"));
 
         // When
         paymentBuilderService.processFile(csvFile, outputDir);
@@ -277,15 +468,231 @@ class PaymentBuilderServiceTest {
         assertTrue(Files.exists(outputFile));
     }
 
-    // Helper method
-    private List<PaymentRecord> createSampleRecords() {
-        List<PaymentRecord> records = new ArrayList<>();
+    @Test
+    void testProcessFile_SplitsIntoNumberedParts() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("test.csv");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(outputDir);
+        Files.writeString(csvFile, "test,data\n");
+        
+        List<CompactPaymentRecord> records = createNumberedRecords(5);
+        when(csvParserService.streamPayments(csvFile)).thenReturn(records.stream());
+        when(output.getMaxTransactionsPerMessage()).thenReturn(2);
+        when(output.getParallelism()).thenReturn(4);
+        PaymentBuilderService splittingService = new PaymentBuilderService(
+                properties, csvParserService, new PaymentMessageGeneratorService(new PaymentBuilderProperties(
+                        new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output())));
+
+        // When
+        splittingService.processFile(csvFile, outputDir);
+
+        // Then
+        try (Stream<Path> files = Files.list(outputDir)) {
+            assertEquals(List.of("test_pain013_0001.xml", "test_pain013_0002.xml", "test_pain013_0003.xml"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+        String first = Files.readString(outputDir.resolve("test_pain013_0001.xml"));
+        String last = Files.readString(outputDir.resolve("test_pain013_0003.xml"));
+        assertTrue(first.contains("<NbOfTxs>2</NbOfTxs>"));
+        assertTrue(first.contains("<EndToEndId>E2E-1</EndToEndId>"));
+        assertTrue(last.contains("<NbOfTxs>1</NbOfTxs>"));
+        assertTrue(last.contains("<EndToEndId>E2E-4</EndToEndId>"));
+    }
+
+    @Test
+    void testProcessFile_SplitOutputFittingOneMessageKeepsName() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("test.csv");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(outputDir);
+        Files.writeString(csvFile, "test,data\n");
+        
+        List<CompactPaymentRecord> records = createNumberedRecords(3);
+        when(csvParserService.streamPayments(csvFile)).thenReturn(records.stream());
+        when(output.getMaxTransactionsPerMessage()).thenReturn(10);
+        PaymentBuilderService splittingService = new PaymentBuilderService(
+                properties, csvParserService, new PaymentMessageGeneratorService(new PaymentBuilderProperties(
+                        new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output())));
+
+        // When
+        splittingService.processFile(csvFile, outputDir);
+
+        // Then
+        try (Stream<Path> files = Files.list(outputDir)) {
+            assertEquals(List.of("test_pain013.xml"), files.map(file -> file.getFileName().toString()).toList());
+        }
+        assertTrue(Files.readString(outputDir.resolve("test_pain013.xml")).contains("<NbOfTxs>3</NbOfTxs>"));
+    }
+
+    @Test
+    void testProcessFile_RerunDeletesOutputsOfEarlierRun() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("test.csv");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(outputDir);
+        Files.writeString(csvFile, "test,data\n");
+        
+        List<CompactPaymentRecord> records = createNumberedRecords(5);
+        when(csvParserService.streamPayments(csvFile)).thenAnswer(invocation -> records.stream());
+        PaymentBuilderService splittingService = new PaymentBuilderService(
+                properties, csvParserService, new PaymentMessageGeneratorService(new PaymentBuilderProperties(
+                        new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output())));
+
+        // When
+        splittingService.processFile(csvFile, outputDir);
+        when(output.getMaxTransactionsPerMessage()).thenReturn(2);
+        List<Path> split = splittingService.processFile(csvFile, outputDir);
+        when(output.getMaxTransactionsPerMessage()).thenReturn(3);
+        List<Path> rerun = splittingService.processFile(csvFile, outputDir);
+
+        // Then
+        assertEquals(3, split.size());
+        assertEquals(List.of(outputDir.resolve("test_pain013_0001.xml"), outputDir.resolve("test_pain013_0002.xml")),
+                rerun);
+        try (Stream<Path> files = Files.list(outputDir)) {
+            assertEquals(List.of("test_pain013_0001.xml", "test_pain013_0002.xml"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+        assertTrue(Files.readString(outputDir.resolve("test_pain013_0002.xml")).contains("<NbOfTxs>2</NbOfTxs>"));
+    }
+
+    @Test
+    void testProcessFile_GzipInputAndOutput() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("test.csv.gz");
+        Path outputDir = tempDir.resolve("output");
+        Files.createDirectories(outputDir);
+        Files.writeString(csvFile, "test,data\n");
+        
+        List<CompactPaymentRecord> records = createNumberedRecords(3);
+        when(csvParserService.streamPayments(csvFile)).thenAnswer(invocation -> records.stream());
+        when(output.isGzip()).thenReturn(true);
+        when(output.getGzipLevel()).thenReturn(9);
+        when(output.getGzipBufferSize()).thenReturn(DataSize.ofKilobytes(8));
+        PaymentBuilderService compressingService = new PaymentBuilderService(
+                properties, csvParserService, new PaymentMessageGeneratorService(new PaymentBuilderProperties(
+                        new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output())));
+
+        // When
+        compressingService.processFile(csvFile, outputDir);
+
+        // Then
+        Path outputFile = outputDir.resolve("test_pain013.xml.gz");
+        assertTrue(Files.exists(outputFile));
+        String xml;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(outputFile))) {
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertTrue(xml.contains("<NbOfTxs>3</NbOfTxs>"));
+        assertTrue(xml.contains("<CtrlSum>3000.00</CtrlSum>"));
+        assertTrue(xml.endsWith("</Document>"));
+        verify(csvParserService, times(2)).streamPayments(csvFile);
+    }
+
+    @Test
+    void testProcessAppendedRecords_WritesIncrementalMessages() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("ledger.csv");
+        Path outputDir = Files.createDirectories(tempDir.resolve("output"));
+        Files.writeString(csvFile, """
+                debtor_name,creditor_name,amount,currency,end_to_end_id
+                Debtor 0,Creditor 0,10.00,EUR,E2E-0
+                Debtor 1,Creditor 1,11.00,EUR,E2E-1
+                Debtor 2,Creditor 2,12.00,EUR,E2E-2
+                Debtor 3,Creditor 3,1""");
+        when(input.getTailMaxRecords()).thenReturn(2);
+        PaymentBuilderProperties defaults = new PaymentBuilderProperties(
+                new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output());
+        PaymentBuilderService tailingService = new PaymentBuilderService(
+                properties, new CsvParserService(defaults), new PaymentMessageGeneratorService(defaults));
+
+        // When
+        List<Path> first = tailingService.processAppendedRecords(csvFile, outputDir, false);
+        List<Path> waiting = tailingService.processAppendedRecords(csvFile, outputDir, false);
+        Files.writeString(csvFile, "3.00,EUR,E2E-3\nDebtor 4,Creditor 4,14.00,EUR,E2E-4\n", StandardOpenOption.APPEND);
+        List<Path> flushed = tailingService.processAppendedRecords(csvFile, outputDir, true);
+
+        // Then
+        assertEquals(List.of(outputDir.resolve("ledger_pain013_000001.xml")), first);
+        assertTrue(waiting.isEmpty());
+        assertEquals(List.of(outputDir.resolve("ledger_pain013_000002.xml"),
+                outputDir.resolve("ledger_pain013_000003.xml")), flushed);
+        String firstXml = Files.readString(first.get(0));
+        assertTrue(firstXml.contains("<NbOfTxs>2</NbOfTxs>"));
+        assertTrue(firstXml.contains("<EndToEndId>E2E-1</EndToEndId>"));
+        String secondXml = Files.readString(flushed.get(0));
+        assertTrue(secondXml.contains("<EndToEndId>E2E-2</EndToEndId>"));
+        assertTrue(secondXml.contains("<CtrlSum>25.00</CtrlSum>"));
+        String lastXml = Files.readString(flushed.get(1));
+        assertTrue(lastXml.contains("<NbOfTxs>1</NbOfTxs>"));
+        assertTrue(lastXml.contains("<EndToEndId>E2E-4</EndToEndId>"));
+        assertTrue(tailingService.processAppendedRecords(csvFile, outputDir, true).isEmpty());
+    }
+
+    @Test
+    void testProcessAppendedRecords_WritesCompressedMessages() throws IOException {
+        // Given
+        Path csvFile = tempDir.resolve("ledger.csv");
+        Path outputDir = Files.createDirectories(tempDir.resolve("output"));
+        Files.writeString(csvFile, """
+                debtor_name,creditor_name,amount,currency,end_to_end_id
+                Debtor 0,Creditor 0,10.00,EUR,E2E-0
+                Debtor 1,Creditor 1,11.00,EUR,E2E-1
+                """);
+        when(input.getTailMaxRecords()).thenReturn(2);
+        when(output.isGzip()).thenReturn(true);
+        when(output.getGzipLevel()).thenReturn(9);
+        when(output.getGzipBufferSize()).thenReturn(DataSize.ofKilobytes(8));
+        PaymentBuilderProperties defaults = new PaymentBuilderProperties(
+                new PaymentBuilderProperties.Input(), new PaymentBuilderProperties.Output());
+        PaymentBuilderService tailingService = new PaymentBuilderService(
+                properties, new CsvParserService(defaults), new PaymentMessageGeneratorService(defaults));
+
+        // When
+        List<Path> written = tailingService.processAppendedRecords(csvFile, outputDir, false);
+
+        // Then
+        assertEquals(List.of(outputDir.resolve("ledger_pain013_000001.xml.gz")), written);
+        String xml;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(written.get(0)))) {
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertTrue(xml.contains("<NbOfTxs>2</NbOfTxs>"));
+        assertTrue(xml.endsWith("</Document>"));
+    }
+
+    // Helper methods
+    private Answer<Long> writeXml(String xml) {
+        return invocation -> {
+            FileChannel channel = invocation.getArgument(1);
+            channel.write(ByteBuffer.wrap(xml.getBytes(StandardCharsets.UTF_8)));
+            return 1L;
+        };
+    }
+
+    private List<CompactPaymentRecord> createSampleRecords() {
+        List<CompactPaymentRecord> records = new ArrayList<>();
         PaymentRecord record = new PaymentRecord();
         record.setCreditorName("Test Creditor");
         record.setCreditorAccountIBAN("GB29NWBK60161331926819");
         record.setInstructedAmount(new BigDecimal("1000.00"));
         record.setCurrency("EUR");
-        records.add(record);
+        records.add(CompactPaymentRecord.from(record));
+        return records;
+    }
+
+    private List<CompactPaymentRecord> createNumberedRecords(int count) {
+        List<CompactPaymentRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            PaymentRecord record = new PaymentRecord();
+            record.setCreditorName("Test Creditor");
+            record.setCreditorAccountIBAN("GB29NWBK60161331926819");
+            record.setInstructedAmount(new BigDecimal("1000.00"));
+            record.setCurrency("EUR");
+            record.setEndToEndId("E2E-" + i);
+            records.add(CompactPaymentRecord.from(record));
+        }
         return records;
     }
 }
@@ -1,13 +1,44 @@
 package com.naiomi.payment.builder.service;
 
+import com.naiomi.payment.builder.config.PaymentBuilderProperties;
+import com.naiomi.payment.builder.model.CompactPaymentRecord;
+import com.naiomi.payment.builder.model.PaymentBatch;
 import com.naiomi.payment.builder.model.PaymentRecord;
+import com.naiomi.payment.builder.xml.GroupTotals;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -15,9 +46,16 @@ class PaymentMessageGeneratorServiceTest {
 
     private PaymentMessageGeneratorService generatorService;
 
+    @TempDir
+    Path tempDir;
+
+    private PaymentBuilderProperties.Output output;
+
     @BeforeEach
     void setUp() {
-        generatorService = new PaymentMessageGeneratorService();
+        output = new PaymentBuilderProperties.Output();
+        generatorService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
     }
 
     @Test
@@ -102,6 +140,438 @@ class PaymentMessageGeneratorServiceTest {
         assertTrue(xmlContent.contains("<InstdAmt Ccy=\"USD\">5500.75</InstdAmt>"));
     }
 
+    @Test
+    void testGeneratePaymentMessage_CompactRecordAmount() {
+        // Given
+        PaymentRecord record = createMinimalRecord();
+        record.setInstructedAmount(new BigDecimal("0.05"));
+        record.setCurrency("USD");
+
+        // When
+        String xmlContent = generatorService.generatePaymentMessage(List.of(CompactPaymentRecord.from(record)));
+
+        // Then
+        assertTrue(xmlContent.contains("<InstdAmt Ccy=\"USD\">0.05</InstdAmt>"));
+    }
+
+    @Test
+    void testGeneratePaymentMessage_BatchMatchesList() {
+        // Given
+        List<PaymentRecord> records = new ArrayList<>();
+        PaymentBatch batch = new PaymentBatch();
+        for (int i = 0; i < 3; i++) {
+            PaymentRecord record = createMinimalRecord();
+            record.setInstructedAmount(new BigDecimal(i + "00.25"));
+            record.setEndToEndId("E2E-" + i);
+            record.setChargeBearer("SLEV");
+            records.add(record);
+            batch.add(record);
+        }
+
+        // When
+        String fromList = generatorService.generatePaymentMessage(records);
+        String fromBatch = generatorService.generateBatchMessage(batch);
+
+        // Then
+        assertEquals(withoutGeneratedIds(fromList), withoutGeneratedIds(fromBatch));
+        assertTrue(fromBatch.contains("<NbOfTxs>3</NbOfTxs>"));
+        assertTrue(fromBatch.contains("<InstdAmt Ccy=\"EUR\">200.25</InstdAmt>"));
+    }
+
+    @Test
+    void testWritePaymentMessage_MatchesStringOutput() throws IOException {
+        // Given
+        List<PaymentRecord> records = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            PaymentRecord record = createSampleRecord();
+            record.setCreditorName("Créditeur Müller " + i);
+            record.setRemittanceInformationUnstructured("Invoice € " + i + " & co");
+            records.add(record);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        String expected = generatorService.generatePaymentMessage(records);
+        generatorService.writePaymentMessage(records, out);
+
+        // Then
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertEquals(expected.getBytes(StandardCharsets.UTF_8).length, out.size());
+        assertEquals(withoutGeneratedIds(expected), withoutGeneratedIds(written));
+    }
+
+    @Test
+    void testWritePaymentMessage_ToChannel() throws IOException {
+        // Given
+        List<PaymentRecord> records = List.of(createSampleRecord());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        generatorService.writePaymentMessage(records, Channels.newChannel(out));
+
+        // Then
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertTrue(written.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+        assertTrue(written.endsWith("</Document>"));
+        assertTrue(written.contains("<InstdAmt Ccy=\"EUR\">1000.50</InstdAmt>"));
+    }
+
+    @Test
+    void testGeneratePaymentMessage_ControlSum() {
+        // Given
+        List<PaymentRecord> records = new ArrayList<>();
+        for (String amount : new String[]{"1000.50", "0.005", "12"}) {
+            PaymentRecord record = createMinimalRecord();
+            record.setInstructedAmount(new BigDecimal(amount));
+            records.add(record);
+        }
+
+        // When
+        String xmlContent = generatorService.generatePaymentMessage(records);
+
+        // Then
+        assertTrue(xmlContent.contains("      <NbOfTxs>3</NbOfTxs>\n      <CtrlSum>1012.505</CtrlSum>\n      <InitgPty>"));
+    }
+
+    @Test
+    void testWritePaymentMessage_BackpatchesHeaderTotals() throws IOException {
+        // Given
+        List<PaymentRecord> records = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            PaymentRecord record = createSampleRecord();
+            record.setInstructedAmount(new BigDecimal(i + ".25"));
+            records.add(record);
+        }
+        Path outputFile = tempDir.resolve("streamed.xml");
+
+        // When
+        long written;
+        try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            written = generatorService.writePaymentMessage(records.iterator(), channel);
+        }
+
+        // Then
+        String streamed = Files.readString(outputFile);
+        String expected = generatorService.generatePaymentMessage(records);
+        assertEquals(2000, written);
+        assertTrue(streamed.contains("<NbOfTxs>2000</NbOfTxs>"));
+        assertTrue(streamed.contains("<CtrlSum>1999500.00</CtrlSum>"));
+        assertEquals(withoutGeneratedIds(expected), withoutGeneratedIds(streamed.replaceAll(" +\n", "\n")));
+    }
+
+    @Test
+    void testWritePaymentMessage_ControlSumOverflowFailsBeforeMessageIsWritten() throws IOException {
+        // Given
+        AtomicInteger consumed = new AtomicInteger();
+        Iterator<PaymentRecord> records = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return consumed.get() < 100_000;
+            }
+
+            @Override
+            public PaymentRecord next() {
+                consumed.incrementAndGet();
+                PaymentRecord record = createSampleRecord();
+                record.setInstructedAmount(new BigDecimal("10000000000000000.00"));
+                return record;
+            }
+        };
+        Path outputFile = tempDir.resolve("overflow.xml");
+
+        // When / Then
+        try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            IllegalStateException error = assertThrows(IllegalStateException.class,
+                    () -> generatorService.writePaymentMessage(records, channel));
+            assertEquals("CtrlSum does not fit its header placeholder: 100000000000000000.00", error.getMessage());
+        }
+        assertEquals(10, consumed.get());
+    }
+
+    @Test
+    void testWritePaymentMessages_SplitsByTransactionCount() throws IOException {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(25);
+        List<Path> parts = new ArrayList<>();
+
+        // When
+        List<Long> counts = generatorService.writePaymentMessages(records.iterator(), 10, 0, part -> openPart(parts, part));
+
+        // Then
+        assertEquals(List.of(10L, 10L, 5L), counts);
+        assertEquals(3, parts.size());
+        String last = Files.readString(parts.get(2));
+        assertTrue(last.contains("<NbOfTxs>5</NbOfTxs>"));
+        assertTrue(last.contains("<EndToEndId>E2E-20</EndToEndId>"));
+        assertTrue(last.endsWith("</Document>"));
+    }
+
+    @Test
+    void testWritePaymentMessages_SplitsBySize() throws IOException {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(40);
+        long maxBytes = 4096;
+        List<Path> parts = new ArrayList<>();
+
+        // When
+        List<Long> counts = generatorService.writePaymentMessages(records.iterator(), 0, maxBytes, part -> openPart(parts, part));
+
+        // Then
+        assertTrue(counts.size() > 1);
+        assertEquals(40, counts.stream().mapToLong(Long::longValue).sum());
+        int next = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            String xml = Files.readString(parts.get(i));
+            assertTrue(Files.size(parts.get(i)) <= maxBytes);
+            assertTrue(xml.contains("<NbOfTxs>" + counts.get(i) + "</NbOfTxs>"));
+            assertTrue(xml.endsWith("</Document>"));
+            for (long t = 0; t < counts.get(i); t++, next++) {
+                assertTrue(xml.contains("<EndToEndId>E2E-" + next + "</EndToEndId>"));
+            }
+        }
+    }
+
+    @Test
+    void testWritePaymentMessages_OversizedTransactionGetsOwnMessage() throws IOException {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(3);
+        records.get(1).setRemittanceInformationUnstructured("x".repeat(5000));
+        List<Path> parts = new ArrayList<>();
+
+        // When
+        List<Long> counts = generatorService.writePaymentMessages(records.iterator(), 0, 3000, part -> openPart(parts, part));
+
+        // Then
+        assertEquals(List.of(1L, 1L, 1L), counts);
+    }
+
+    @Test
+    void testGeneratePaymentMessage_ParallelFragmentsMatchSequential() {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(5000);
+        output.setParallelism(4);
+        PaymentMessageGeneratorService parallelService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+
+        // When
+        String parallel = parallelService.generatePaymentMessage(records);
+
+        // Then
+        assertTrue(parallel.contains("<NbOfTxs>5000</NbOfTxs>"));
+        assertTrue(parallel.endsWith("</Document>"));
+        assertEquals(withoutGeneratedIds(generatorService.generatePaymentMessage(records)), withoutGeneratedIds(parallel));
+    }
+
+    @Test
+    void testWritePaymentMessage_ParallelFragmentsBackpatchHeaderTotals() throws IOException {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(3000);
+        output.setParallelism(3);
+        PaymentMessageGeneratorService parallelService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+        Path outputFile = tempDir.resolve("parallel.xml");
+
+        // When
+        long written;
+        try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            written = parallelService.writePaymentMessage(records.iterator(), channel);
+        }
+
+        // Then
+        String streamed = Files.readString(outputFile);
+        assertEquals(3000, written);
+        assertTrue(streamed.contains("<NbOfTxs>3000</NbOfTxs>"));
+        assertEquals(withoutGeneratedIds(generatorService.generatePaymentMessage(records)),
+                withoutGeneratedIds(streamed.replaceAll(" +\n", "\n")));
+    }
+
+    @Test
+    void testWritePaymentMessage_PipelinedMatchesSequential() throws IOException {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(4500);
+        output.setPipelined(false);
+        PaymentMessageGeneratorService sequentialService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+        output.setPipelined(true);
+        output.setPipelineQueueCapacity(1);
+        PaymentMessageGeneratorService pipelinedService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+        Path sequentialFile = tempDir.resolve("sequential.xml");
+        Path pipelinedFile = tempDir.resolve("pipelined.xml");
+
+        // When
+        try (FileChannel channel = FileChannel.open(sequentialFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            sequentialService.writePaymentMessage(records.iterator(), channel);
+        }
+        long written;
+        try (FileChannel channel = FileChannel.open(pipelinedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            written = pipelinedService.writePaymentMessage(records.iterator(), channel);
+        }
+
+        // Then
+        String pipelined = Files.readString(pipelinedFile);
+        assertEquals(4500, written);
+        assertTrue(pipelined.contains("<NbOfTxs>4500</NbOfTxs>"));
+        assertEquals(withoutGeneratedIds(Files.readString(sequentialFile)), withoutGeneratedIds(pipelined));
+    }
+
+    @Test
+    void testWritePaymentMessage_PipelinedParseErrorPropagates() throws IOException {
+        // Given
+        Iterator<PaymentRecord> records = new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public PaymentRecord next() {
+                if (next == 3000) {
+                    throw new IllegalArgumentException("Error parsing line 3001");
+                }
+                PaymentRecord record = createSampleRecord();
+                record.setEndToEndId("E2E-" + next++);
+                return record;
+            }
+        };
+        Path outputFile = tempDir.resolve("failed.xml");
+
+        // When / Then
+        try (FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> generatorService.writePaymentMessage(records, channel));
+            assertEquals("Error parsing line 3001", error.getMessage());
+        }
+    }
+
+    @Test
+    @Timeout(value = 30, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void testWritePaymentMessage_PipelinedWriteErrorPropagates() throws IOException, InterruptedException {
+        // Given
+        Iterator<PaymentRecord> numbered = createNumberedRecords(20000).iterator();
+        AtomicReference<Thread> parseThread = new AtomicReference<>();
+        Iterator<PaymentRecord> records = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return numbered.hasNext();
+            }
+
+            @Override
+            public PaymentRecord next() {
+                parseThread.set(Thread.currentThread());
+                return numbered.next();
+            }
+        };
+        output.setPipelined(true);
+        output.setPipelineQueueCapacity(1);
+        output.setParallelism(2);
+        PaymentMessageGeneratorService pipelinedService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+        Path outputFile = tempDir.resolve("full.xml");
+
+        // When / Then
+        try (FileChannel channel = new FullDiskChannel(
+                FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE), 256 * 1024)) {
+            IOException error = assertThrows(IOException.class,
+                    () -> pipelinedService.writePaymentMessage(records, channel));
+            assertEquals("No space left on device", error.getMessage());
+        }
+        // The cancelled stages must not stay blocked on their full queues
+        assertTrue(parseThread.get().join(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    void testWritePaymentMessage_ResumedFromCheckpointMatchesUninterrupted() throws IOException {
+        // Given
+        StringBuilder csvContent = new StringBuilder("debtor_name,creditor_name,amount,currency,end_to_end_id\n");
+        for (int i = 0; i < 5000; i++) {
+            csvContent.append("Debtor ").append(i).append(",Creditor ").append(i).append(',')
+                    .append(i).append(".25,EUR,E2E-").append(i).append('\n');
+        }
+        Path csvFile = Files.writeString(tempDir.resolve("payments.csv"), csvContent);
+        Path outputFile = tempDir.resolve("payments_pain013.xml");
+        CsvParserService parser = new CsvParserService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+        MessageCheckpoint start = MessageCheckpoint.start(csvFile);
+        try (CsvParserService.RecordCursor records = parser.openPayments(csvFile, 0, 0);
+             FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            generatorService.writePaymentMessage(records, channel, outputFile, start, 64 * 1024);
+        }
+        String uninterrupted = Files.readString(outputFile);
+        // The last checkpoint is left behind, with transactions written after it as if the run was killed
+        MessageCheckpoint checkpoint = MessageCheckpoint.load(outputFile, start);
+        assertNotNull(checkpoint);
+        assertTrue(checkpoint.numberOfTransactions() > 0 && checkpoint.numberOfTransactions() < 5000);
+
+        // When
+        long written;
+        try (CsvParserService.RecordCursor records = parser.openPayments(csvFile, checkpoint.inputOffset(),
+                checkpoint.lineNumber());
+             FileChannel channel = FileChannel.open(outputFile, StandardOpenOption.WRITE)) {
+            written = generatorService.writePaymentMessage(records, channel, outputFile, checkpoint, 64 * 1024);
+        }
+
+        // Then
+        assertEquals(5000, written);
+        assertTrue(uninterrupted.contains("<NbOfTxs>5000</NbOfTxs>"));
+        assertEquals(uninterrupted, Files.readString(outputFile));
+    }
+
+    @Test
+    void testGeneratePaymentMessage_CompactFormat() {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(3);
+        records.get(0).setCreditorAddressLine1("1  Main   Street");
+        output.setFormat(PaymentBuilderProperties.OutputFormat.COMPACT);
+        PaymentMessageGeneratorService compactService = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+
+        // When
+        String compact = compactService.generatePaymentMessage(records);
+        String pretty = generatorService.generatePaymentMessage(records);
+
+        // Then
+        assertFalse(compact.contains("\n"));
+        assertTrue(compact.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Document"));
+        assertTrue(compact.contains("<AdrLine>1  Main   Street</AdrLine>"));
+        assertTrue(compact.length() < pretty.length() * 3 / 4);
+        assertEquals(withoutGeneratedIds(pretty.replaceAll(">\\s+<", "><")), withoutGeneratedIds(compact));
+    }
+
+    @Test
+    void testWritePaymentMessage_PrecomputedTotalsToCompressedStream() throws IOException {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(50);
+        GroupTotals totals = GroupTotals.of(records);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        // When
+        try (WritableByteChannel channel = Channels.newChannel(new GZIPOutputStream(compressed))) {
+            generatorService.writePaymentMessage(totals, records.iterator(), channel);
+        }
+
+        // Then
+        String xml;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertTrue(xml.contains("<NbOfTxs>50</NbOfTxs>"));
+        assertEquals(withoutGeneratedIds(generatorService.generatePaymentMessage(records)), withoutGeneratedIds(xml));
+    }
+
+    @Test
+    void testWritePaymentMessage_PrecomputedTotalsMismatch() {
+        // Given
+        List<PaymentRecord> records = createNumberedRecords(5);
+        GroupTotals totals = GroupTotals.of(records.subList(0, 4));
+
+        // When / Then
+        assertThrows(IllegalStateException.class, () -> generatorService.writePaymentMessage(
+                totals, records.iterator(), Channels.newChannel(new ByteArrayOutputStream())));
+    }
+
     @Test
     void testGeneratePaymentMessage_DefaultCurrency() {
         // Given
@@ -136,6 +606,47 @@ class PaymentMessageGeneratorServiceTest {
         assertTrue(xmlContent.contains("<EndToEndId>E2E-456</EndToEndId>"));
     }
 
+    @Test
+    void testGeneratePaymentMessage_GeneratedIdsAreUnique() {
+        // Given
+        List<PaymentRecord> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            records.add(createMinimalRecord());
+        }
+
+        // When
+        String xmlContent = generatorService.generatePaymentMessage(records);
+
+        // Then
+        Matcher ids = Pattern.compile("<(MsgId|PmtInfId|EndToEndId)>([^<]*)<").matcher(xmlContent);
+        Set<String> unique = new HashSet<>();
+        int count = 0;
+        while (ids.find()) {
+            count++;
+            unique.add(ids.group(2));
+            assertTrue(ids.group(2).length() <= 35, ids.group(2));
+        }
+        assertEquals(1002, count);
+        assertEquals(1002, unique.size());
+        assertTrue(xmlContent.matches("(?s).*<MsgId>MSG-[0-9A-Z]{14,26}</MsgId>.*"));
+    }
+
+    @Test
+    void testGeneratePaymentMessage_RandomIdGeneratorSelectable() {
+        // Given
+        output.setIdGenerator(PaymentBuilderProperties.IdGeneratorType.RANDOM);
+        PaymentMessageGeneratorService randomIds = new PaymentMessageGeneratorService(
+                new PaymentBuilderProperties(new PaymentBuilderProperties.Input(), output));
+
+        // When
+        String xmlContent = randomIds.generatePaymentMessage(List.of(createMinimalRecord()));
+
+        // Then
+        assertTrue(xmlContent.matches("(?s).*<MsgId>MSG-[0-9A-F]{8}</MsgId>.*"));
+        assertTrue(xmlContent.matches("(?s).*<PmtInfId>PMTINF-[0-9A-F]{8}</PmtInfId>.*"));
+        assertTrue(xmlContent.matches("(?s).*<EndToEndId>E2E-[0-9A-F]{8}</EndToEndId>.*"));
+    }
+
     @Test
     void testGeneratePaymentMessage_RemittanceInformation() {
         // Given
@@ -288,4 +799,144 @@ class PaymentMessageGeneratorServiceTest {
         record.setCurrency("EUR");
         return record;
     }
+
+    private List<PaymentRecord> createNumberedRecords(int count) {
+        List<PaymentRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            PaymentRecord record = createSampleRecord();
+            record.setEndToEndId("E2E-" + i);
+            records.add(record);
+        }
+        return records;
+    }
+
+    private FileChannel openPart(List<Path> parts, int part) throws IOException {
+        assertEquals(parts.size() + 1, part);
+        Path file = tempDir.resolve("part" + part + ".xml");
+        parts.add(file);
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private String withoutGeneratedIds(String xml) {
+        return xml.replaceAll("<(MsgId|CreDtTm|PmtInfId)>[^<]*<", "<$1><");
+    }
+
+    /**
+     * File channel that fails like a full disk once a number of bytes were written
+     */
+    private static final class FullDiskChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private long capacity;
+
+        FullDiskChannel(FileChannel delegate, long capacity) {
+            this.delegate = delegate;
+            this.capacity = capacity;
+        }
+
+        private void reserve(long bytes) throws IOException {
+            if (bytes > capacity) {
+                throw new IOException("No space left on device");
+            }
+            capacity -= bytes;
+        }
+
+        private static long remaining(ByteBuffer[] buffers, int offset, int length) {
+            long remaining = 0;
+            for (int i = offset; i < offset + length; i++) {
+                remaining += buffers[i].remaining();
+            }
+            return remaining;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            reserve(src.remaining());
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            reserve(remaining(srcs, offset, length));
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            reserve(src.remaining());
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.naiomi.payment.builder.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path outputDir;
+    private Path inputFile;
+    private Path outputFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        outputDir = Files.createDirectories(tempDir.resolve("output"));
+        inputFile = Files.writeString(tempDir.resolve("payments.csv"), "header\nrow\n");
+        outputFile = Files.writeString(outputDir.resolve("payments_pain013.xml"), "<Document/>");
+    }
+
+    @Test
+    void testIsUnchanged_RecordedInputAfterReopen() throws IOException {
+        // Given
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            assertFalse(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+            manifest.record(RunManifest.fingerprint(inputFile), List.of(outputFile));
+        }
+
+        // When
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            // Then
+            assertEquals(1, manifest.size());
+            assertTrue(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+        }
+    }
+
+    @Test
+    void testIsUnchanged_ComparesContentsWhenOnlyModificationTimeDiffers() throws IOException {
+        // Given
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            manifest.record(RunManifest.fingerprint(inputFile), List.of(outputFile));
+        }
+        FileTime recorded = Files.getLastModifiedTime(inputFile);
+
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            // When / Then
+            // Recorded without reading its contents, so there is no checksum to compare yet
+            Files.setLastModifiedTime(inputFile, FileTime.fromMillis(recorded.toMillis() + 60_000));
+            RunManifest.Fingerprint touched = RunManifest.fingerprint(inputFile);
+            assertFalse(manifest.isUnchanged(touched));
+            manifest.record(touched, List.of(outputFile));
+
+            Files.setLastModifiedTime(inputFile, FileTime.fromMillis(recorded.toMillis() + 120_000));
+            assertTrue(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+
+            Files.writeString(inputFile, "header\nwor\n");
+            Files.setLastModifiedTime(inputFile, FileTime.fromMillis(recorded.toMillis() + 180_000));
+            assertFalse(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+        }
+    }
+
+    @Test
+    void testIsUnchanged_FalseWhenOutputIsMissing() throws IOException {
+        // Given
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            manifest.record(RunManifest.fingerprint(inputFile), List.of(outputFile));
+        }
+
+        // When
+        Files.delete(outputFile);
+
+        // Then
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            assertFalse(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+        }
+    }
+
+    @Test
+    void testOpen_CutsOffTornEntry() throws IOException {
+        // Given
+        Path otherFile = Files.writeString(tempDir.resolve("other.csv"), "header\n");
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            manifest.record(RunManifest.fingerprint(inputFile), List.of(outputFile));
+        }
+        Path manifestFile = outputDir.resolve(RunManifest.FILE_NAME);
+        long complete = Files.size(manifestFile);
+        Files.write(manifestFile, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        // When
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            assertEquals(1, manifest.size());
+            assertEquals(complete, Files.size(manifestFile));
+            manifest.record(RunManifest.fingerprint(otherFile), List.of());
+        }
+
+        // Then
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            assertEquals(2, manifest.size());
+            assertTrue(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+            assertTrue(manifest.isUnchanged(RunManifest.fingerprint(otherFile)));
+        }
+    }
+
+    @Test
+    void testOpen_CompactsSupersededEntries() throws IOException {
+        // Given
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            for (int i = 0; i < 2000; i++) {
+                manifest.record(RunManifest.fingerprint(inputFile), List.of(outputFile));
+            }
+        }
+        Path manifestFile = outputDir.resolve(RunManifest.FILE_NAME);
+        long appended = Files.size(manifestFile);
+
+        // When
+        try (RunManifest manifest = RunManifest.open(outputDir)) {
+            // Then
+            assertEquals(1, manifest.size());
+            assertTrue(Files.size(manifestFile) < appended / 1000);
+            assertTrue(manifest.isUnchanged(RunManifest.fingerprint(inputFile)));
+        }
+    }
+}
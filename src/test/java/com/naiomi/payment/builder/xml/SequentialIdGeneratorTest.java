@@ -0,0 +1,74 @@
+package com.naiomi.payment.builder.xml;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SequentialIdGeneratorTest {
+
+    @Test
+    void testWriteId_UniqueAcrossThreads() throws Exception {
+        SequentialIdGenerator generator = new SequentialIdGenerator(42);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> generate(generator, IdGenerator.Kind.END_TO_END, 5000)));
+            }
+            Set<String> ids = new HashSet<>();
+            for (Future<List<String>> future : futures) {
+                ids.addAll(future.get());
+            }
+            assertEquals(20000, ids.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWriteId_FormatAndLength() throws IOException {
+        SequentialIdGenerator generator = new SequentialIdGenerator(SequentialIdGenerator.MAX_NODE_ID);
+        String id = generate(generator, IdGenerator.Kind.PAYMENT_INFORMATION, 1).get(0);
+        assertTrue(id.matches("PMTINF-ZZZZ[0-9A-HJKMNP-TV-Z]{9}0"), id);
+        assertTrue(id.length() <= IdGenerator.MAX_LENGTH);
+    }
+
+    @Test
+    void testWriteId_GeneratorsOnSameNodeDiffer() throws IOException {
+        String first = generate(new SequentialIdGenerator(1), IdGenerator.Kind.MESSAGE, 1).get(0);
+        String second = generate(new SequentialIdGenerator(1), IdGenerator.Kind.MESSAGE, 1).get(0);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void testConstructor_NodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new SequentialIdGenerator(-1));
+        assertThrows(IllegalArgumentException.class, () -> new SequentialIdGenerator(SequentialIdGenerator.MAX_NODE_ID + 1));
+    }
+
+    private List<String> generate(IdGenerator generator, IdGenerator.Kind kind, int count) throws IOException {
+        List<String> ids = new ArrayList<>(count);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(ByteBuffer.allocate(64), Channels.newChannel(out));
+        for (int i = 0; i < count; i++) {
+            out.reset();
+            generator.writeId(kind, sink);
+            sink.flush();
+            ids.add(out.toString(StandardCharsets.US_ASCII));
+        }
+        return ids;
+    }
+}
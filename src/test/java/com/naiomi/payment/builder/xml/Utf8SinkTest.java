@@ -0,0 +1,92 @@
+package com.naiomi.payment.builder.xml;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Utf8SinkTest {
+
+    @Test
+    void testWriteText_MatchesStringEncoding() throws IOException {
+        String text = "Zürich € 😀 lone \ud800 and \udc00 end \ud83d";
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), write(16, sink -> sink.writeText(text)));
+    }
+
+    @Test
+    void testWriteEscaped_ReplacesSpecialCharacters() throws IOException {
+        byte[] bytes = write(8, sink -> sink.writeEscaped("A & B <x> \"q\" 'a' é"));
+        assertEquals("A &amp; B &lt;x&gt; &quot;q&quot; &apos;a&apos; é", new String(bytes, StandardCharsets.UTF_8));
+        assertEquals(0, write(8, sink -> sink.writeEscaped(null)).length);
+    }
+
+    @Test
+    void testWriteEscaped_MatchesXmlEscaper() throws IOException {
+        String text = "ctrl\u0001\u001F tab\t cr\r & \uFFFE\uFFFF 😀 \udc00 " + "long clean run ".repeat(10);
+        byte[] bytes = write(8, sink -> sink.writeEscaped(text));
+        assertEquals(XmlEscaper.escape(text), new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWriteText_ReplacesInvalidCharactersOnly() throws IOException {
+        byte[] bytes = write(8, sink -> sink.writeText("A&B\u0000<\u000B>"));
+        assertEquals("A&B?<?>", new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWrite_FragmentsLargerThanBuffer() throws IOException {
+        byte[] fragment = "<CdtTrfTxInf>".repeat(50).getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(fragment, write(16, sink -> sink.write(fragment)));
+    }
+
+    @Test
+    void testWriteDecimal_PlainNotation() throws IOException {
+        byte[] bytes = write(32, sink -> {
+            sink.writeDecimal(100050, 2);
+            sink.write((byte) ' ');
+            sink.writeDecimal(new BigDecimal("1E+3"));
+            sink.write((byte) ' ');
+            sink.writeDecimal(new BigDecimal("123456789012345678901234.5678"));
+            sink.write((byte) ' ');
+            sink.writeLong(-42);
+        });
+        assertEquals("1000.50 1000 123456789012345678901234.5678 -42", new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testPosition_CountsDrainedAndBufferedBytes() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(ByteBuffer.allocate(8), Channels.newChannel(out));
+        sink.writeText("0123456789€");
+        assertEquals(13, sink.position());
+        assertTrue(out.size() > 0 && out.size() < 13);
+        sink.flush();
+        assertEquals(13, out.size());
+    }
+
+    @Test
+    void testUnsuitableBuffer_Rejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new Utf8Sink(ByteBuffer.allocateDirect(8), Channels.newChannel(new ByteArrayOutputStream())));
+        assertThrows(IllegalArgumentException.class,
+                () -> new Utf8Sink(ByteBuffer.allocate(4), Channels.newChannel(new ByteArrayOutputStream())));
+    }
+
+    private byte[] write(int bufferSize, SinkAction action) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8Sink sink = new Utf8Sink(ByteBuffer.allocate(bufferSize), Channels.newChannel(out));
+        action.accept(sink);
+        sink.flush();
+        return out.toByteArray();
+    }
+
+    private interface SinkAction {
+        void accept(Utf8Sink sink) throws IOException;
+    }
+}
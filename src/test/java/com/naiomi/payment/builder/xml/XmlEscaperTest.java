@@ -0,0 +1,47 @@
+package com.naiomi.payment.builder.xml;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class XmlEscaperTest {
+
+    @Test
+    void testEscape_CleanValueReturnedUnchanged() {
+        String value = "Zürich Müller GmbH, Invoice 2024-001 😀";
+        assertSame(value, XmlEscaper.escape(value));
+        assertEquals(-1, XmlEscaper.indexOfUnsafe("ACME Corp"));
+        assertEquals("", XmlEscaper.escape(null));
+    }
+
+    @Test
+    void testEscape_SpecialCharacters() {
+        assertEquals("A &amp; B &lt;x&gt; &quot;q&quot; &apos;a&apos;", XmlEscaper.escape("A & B <x> \"q\" 'a'"));
+    }
+
+    @Test
+    void testEscape_MatchesChainedReplace() {
+        String value = "&amp; already & <&>";
+        String chained = value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+        assertEquals(chained, XmlEscaper.escape(value));
+    }
+
+    @Test
+    void testEscape_ReplacesCharactersInvalidInXml() {
+        assertEquals("a?b?c", XmlEscaper.escape("a\u0000b\u001Fc"));
+        assertEquals("tab\there\nline\rend", XmlEscaper.escape("tab\there\nline\rend"));
+        assertEquals("??", XmlEscaper.escape("￾￿"));
+        assertEquals("lone ? and ?", XmlEscaper.escape("lone \ud800 and \udc00"));
+        assertEquals("pair 😀", XmlEscaper.escape("pair 😀"));
+    }
+
+    @Test
+    void testIsXmlChar() {
+        assertTrue(XmlEscaper.isXmlChar('\t'));
+        assertTrue(XmlEscaper.isXmlChar('é'));
+        assertTrue(XmlEscaper.isXmlChar('�'));
+        assertFalse(XmlEscaper.isXmlChar('\u0007'));
+        assertFalse(XmlEscaper.isXmlChar('\ud800'));
+        assertFalse(XmlEscaper.isXmlChar('￿'));
+    }
+}